@@ -92,6 +92,45 @@ public class Bag implements Comparable<Bag>{
     incidentSeparators.add(separator);
   }
 
+  /**
+   * Makes the decomposition of this bag into its nested bags and
+   * separators a copy of that of the given bag, whose local graph
+   * is mapped to that of this bag by the given isomorphism.
+   * The given bag is not flattened, so that its nested bags and
+   * separators are in its local numbering; it is left unchanged.
+   * @param source the bag decomposed
+   * @param map the map from the local vertices of {@code source}
+   * to those of this bag, or {@code null} for the identity
+   */
+  public void copyDecompositionOf(Bag source, int[] map) {
+    lowerBound = source.lowerBound;
+    if (source.nestedBags == null) {
+      nestedBags = null;
+      separators = null;
+      return;
+    }
+    nestedBags = new ArrayList<>();
+    separators = new ArrayList<>();
+    for (Bag bag: source.nestedBags) {
+      addNestedBag(copy(bag.vertexSet, map));
+    }
+    for (Separator separator: source.separators) {
+      Separator copied = addSeparator(copy(separator.vertexSet, map));
+      for (Bag bag: separator.incidentBags) {
+        Bag nested = nestedBags.get(source.nestedBags.indexOf(bag));
+        copied.incidentBags.add(nested);
+        nested.incidentSeparators.add(copied);
+      }
+    }
+  }
+
+  private XBitSet copy(XBitSet s, int[] map) {
+    if (map == null) {
+      return (XBitSet) s.clone();
+    }
+    return convert(s, map);
+  }
+
   private void makeLocalGraph() {
     graph = new Graph(size);
     conv = new int[parent.size];
@@ -0,0 +1,478 @@
+/*
+ * Copyright (c) 2017, Hisao Tamaki
+ */
+package tw.exact;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+
+/**
+ * Connected-component engine for a fixed {@code Graph}.
+ * <p>
+ * For a graph whose adjacency rows are short in words compared with
+ * the adjacency lists, the rows are copied into one flat
+ * {@code long[]} and a component is grown a frontier at a time:
+ * the rows of the frontier vertices are OR-ed word by word into a
+ * reach buffer, and the next frontier is the part of the reach not
+ * visited yet.
+ * For a large sparse graph the components are found instead by
+ * union-find over the adjacency lists, so that the work is linear in
+ * the edges rather than in {@code n / 64} per vertex.
+ * <p>
+ * All the working sets are per-thread buffers allocated once, so
+ * that only the resulting sets are allocated.
+ * The components are always reported in the increasing order of
+ * their smallest vertices; the batched
+ * {@link #components(XBitSet, ArrayList, ArrayList)} also
+ * reports the open neighborhood of each component, which, for
+ * the components of the removal of a separator, is the part of
+ * the separator it is adjacent to.
+ * <p>
+ * The engine takes a snapshot of the adjacencies: the graph must
+ * not be modified while the engine is in use
+ * (see {@link Graph#componentFinder()}).
+ *
+ * @author  Hisao Tamaki
+ */
+public class ComponentFinder {
+  /**
+   * the limit on the words of the flat adjacency rows
+   */
+  private static final long DENSE_WORDS = 1L << 22;
+
+  private final Graph g;
+  private final int n;
+  private final int words;
+
+  /**
+   * adjacency rows, {@code words} words per vertex;
+   * null if the union-find path is taken
+   */
+  private final long[] rows;
+
+  /**
+   * the words of the vertex set of the graph
+   */
+  private final long[] all;
+
+  private final ThreadLocal<Buffers> buffers;
+
+  private static class Buffers {
+    final long[] rest;
+    final long[] comp;
+    final long[] frontier;
+    final long[] reach;
+    final long[] mask;
+    final int[] parent;
+
+    Buffers(int n, int words, boolean sparse) {
+      rest = new long[words];
+      comp = new long[words];
+      frontier = new long[words];
+      reach = new long[words];
+      mask = new long[words];
+      parent = sparse ? new int[n] : null;
+    }
+  }
+
+  public ComponentFinder(Graph g) {
+    this.g = g;
+    this.n = g.n;
+    this.words = Math.max(1, (n + 63) >>> 6);
+    this.all = g.all.toLongArray();
+    long adjacencies = 0;
+    for (int v = 0; v < n; v++) {
+      adjacencies += g.degree[v];
+    }
+    if ((long) n * words <= DENSE_WORDS &&
+        4 * adjacencies >= (long) n * words) {
+      rows = new long[n * words];
+      for (int v = 0; v < n; v++) {
+        int base = v * words;
+        for (int i = 0; i < g.degree[v]; i++) {
+          int w = g.neighbor[v][i];
+          rows[base + (w >>> 6)] |= 1L << w;
+        }
+      }
+    }
+    else {
+      rows = null;
+    }
+    final boolean sparse = rows == null;
+    buffers = new ThreadLocal<Buffers>() {
+      @Override
+      protected Buffers initialValue() {
+        return new Buffers(n, words, sparse);
+      }
+    };
+  }
+
+  /**
+   * Returns {@code true} if the components are found by union-find.
+   */
+  public boolean isSparse() {
+    return rows == null;
+  }
+
+  /**
+   * Computes the connected components of the graph after the removal
+   * of the given separator.
+   * @param separator set of vertices to be removed
+   * @return the list of the components
+   */
+  public ArrayList<XBitSet> components(XBitSet separator) {
+    ArrayList<XBitSet> result = new ArrayList<>();
+    components(separator, result, null);
+    return result;
+  }
+
+  /**
+   * Computes the connected components of the graph after the removal
+   * of the given separator, together with their neighborhoods,
+   * in one pass.
+   * @param separator set of vertices to be removed
+   * @param components the list to which the components are added
+   * @param neighbors the list to which the open neighborhood of each
+   * component is added, in the same order; null if not needed
+   */
+  public void components(XBitSet separator,
+      ArrayList<XBitSet> components, ArrayList<XBitSet> neighbors) {
+    Buffers b = buffers.get();
+    if (rows == null) {
+      sparseComponents(b, separator, components, neighbors, null);
+      return;
+    }
+    long[] sep = separator.toLongArray();
+    copy(b.rest, all);
+    clear(b.rest, sep);
+    copy(b.mask, sep);
+    for (int v = first(b.rest, 0); v >= 0; v = first(b.rest, v >>> 6)) {
+      grow(b, v);
+      components.add(toXBitSet(b.comp));
+      if (neighbors != null) {
+        and(b.reach, b.mask);
+        neighbors.add(toXBitSet(b.reach));
+      }
+    }
+  }
+
+  /**
+   * Computes the full components of the given separator, the
+   * components of its removal that are adjacent to all of it.
+   * @param separator set of vertices to be removed
+   * @return the list of the full components
+   */
+  public ArrayList<XBitSet> fullComponents(XBitSet separator) {
+    ArrayList<XBitSet> result = new ArrayList<>();
+    Buffers b = buffers.get();
+    int size = separator.cardinality();
+    if (rows == null) {
+      ArrayList<XBitSet> components = new ArrayList<>();
+      ArrayList<XBitSet> neighbors = new ArrayList<>();
+      sparseComponents(b, separator, components, neighbors, null);
+      for (int i = 0; i < components.size(); i++) {
+        if (neighbors.get(i).cardinality() == size) {
+          result.add(components.get(i));
+        }
+      }
+      return result;
+    }
+    long[] sep = separator.toLongArray();
+    copy(b.rest, all);
+    clear(b.rest, sep);
+    copy(b.mask, sep);
+    for (int v = first(b.rest, 0); v >= 0; v = first(b.rest, v >>> 6)) {
+      grow(b, v);
+      if (andCount(b.reach, b.mask) == size) {
+        result.add(toXBitSet(b.comp));
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Finds, among the components of the graph after the removal of
+   * the separator and of the excluded vertices, the full component
+   * of the separator with the smallest vertex.
+   * @param separator the separator
+   * @param excluded vertices to be removed as well
+   * @return the full component found; null if there is none
+   */
+  public XBitSet firstFullComponent(XBitSet separator, XBitSet excluded) {
+    Buffers b = buffers.get();
+    int size = separator.cardinality();
+    if (rows == null) {
+      ArrayList<XBitSet> components = new ArrayList<>();
+      ArrayList<XBitSet> neighbors = new ArrayList<>();
+      sparseComponents(b, separator, components, neighbors, excluded);
+      for (int i = 0; i < components.size(); i++) {
+        if (neighbors.get(i).cardinality() == size) {
+          return components.get(i);
+        }
+      }
+      return null;
+    }
+    long[] sep = separator.toLongArray();
+    copy(b.rest, all);
+    clear(b.rest, sep);
+    clear(b.rest, excluded.toLongArray());
+    copy(b.mask, sep);
+    for (int v = first(b.rest, 0); v >= 0; v = first(b.rest, v >>> 6)) {
+      grow(b, v);
+      if (andCount(b.reach, b.mask) == size) {
+        return toXBitSet(b.comp);
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Checks if the subgraph induced by the given vertices is connected.
+   * @param vertices the set of vertices inducing the subgraph
+   * @return {@code true} if the subgraph is connected
+   */
+  public boolean isConnected(XBitSet vertices) {
+    int v = vertices.nextSetBit(0);
+    if (v < 0) {
+      return true;
+    }
+    Buffers b = buffers.get();
+    if (rows == null) {
+      int[] parent = b.parent;
+      for (int u = v; u >= 0; u = vertices.nextSetBit(u + 1)) {
+        parent[u] = u;
+      }
+      for (int u = v; u >= 0; u = vertices.nextSetBit(u + 1)) {
+        for (int i = 0; i < g.degree[u]; i++) {
+          int w = g.neighbor[u][i];
+          if (w < u && vertices.get(w)) {
+            union(parent, u, w);
+          }
+        }
+      }
+      for (int u = v; u >= 0; u = vertices.nextSetBit(u + 1)) {
+        if (find(parent, u) != v) {
+          return false;
+        }
+      }
+      return true;
+    }
+    copy(b.rest, vertices.toLongArray());
+    grow(b, v);
+    for (int i = 0; i < words; i++) {
+      if (b.rest[i] != 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Grows the component of {@code v} within {@code b.rest}, leaving
+   * it in {@code b.comp} and removing it from {@code b.rest};
+   * {@code b.reach} is left with the closed neighborhood of the
+   * component.
+   */
+  private void grow(Buffers b, int v) {
+    long[] rest = b.rest;
+    long[] comp = b.comp;
+    long[] frontier = b.frontier;
+    long[] reach = b.reach;
+    for (int i = 0; i < words; i++) {
+      comp[i] = 0;
+      frontier[i] = 0;
+      reach[i] = 0;
+    }
+    comp[v >>> 6] = frontier[v >>> 6] = 1L << v;
+    rest[v >>> 6] &= ~(1L << v);
+    reach[v >>> 6] = 1L << v;
+    // the words in which the frontier may have members
+    int lo = v >>> 6;
+    int hi = lo;
+    while (lo <= hi) {
+      for (int i = lo; i <= hi; i++) {
+        long f = frontier[i];
+        while (f != 0) {
+          int base = ((i << 6) + Long.numberOfTrailingZeros(f)) * words;
+          for (int j = 0; j < words; j++) {
+            reach[j] |= rows[base + j];
+          }
+          f &= f - 1;
+        }
+      }
+      int nlo = words;
+      int nhi = -1;
+      for (int i = 0; i < words; i++) {
+        long f = reach[i] & rest[i];
+        frontier[i] = f;
+        if (f != 0) {
+          rest[i] &= ~f;
+          comp[i] |= f;
+          if (nlo == words) {
+            nlo = i;
+          }
+          nhi = i;
+        }
+      }
+      lo = nlo;
+      hi = nhi;
+    }
+  }
+
+  /**
+   * Computes the components of the removal of the separator and of
+   * the excluded vertices, if any, by union-find.
+   */
+  private void sparseComponents(Buffers b, XBitSet separator,
+      ArrayList<XBitSet> components, ArrayList<XBitSet> neighbors,
+      XBitSet excluded) {
+    long[] rest = b.rest;
+    int[] parent = b.parent;
+    copy(rest, all);
+    clear(rest, separator.toLongArray());
+    if (excluded != null) {
+      clear(rest, excluded.toLongArray());
+    }
+    for (int v = first(rest, 0); v >= 0; v = next(rest, v + 1)) {
+      parent[v] = v;
+    }
+    for (int v = first(rest, 0); v >= 0; v = next(rest, v + 1)) {
+      for (int i = 0; i < g.degree[v]; i++) {
+        int w = g.neighbor[v][i];
+        if (w < v && (rest[w >>> 6] & (1L << w)) != 0) {
+          union(parent, v, w);
+        }
+      }
+    }
+    // the root of each component is its smallest vertex, so the
+    // components are met in the order of their roots; parent[root]
+    // is turned into the complement of the component index
+    int base = components.size();
+    for (int v = first(rest, 0); v >= 0; v = next(rest, v + 1)) {
+      int r = parent[v];
+      if (r == v) {
+        parent[v] = ~(components.size() - base);
+        components.add(new XBitSet(n));
+        if (neighbors != null) {
+          neighbors.add(new XBitSet(n));
+        }
+        r = v;
+      }
+      else {
+        r = find(parent, r);
+      }
+      int c = base + ~parent[r];
+      components.get(c).set(v);
+      if (neighbors != null) {
+        XBitSet nb = neighbors.get(c);
+        for (int i = 0; i < g.degree[v]; i++) {
+          int w = g.neighbor[v][i];
+          if (separator.get(w)) {
+            nb.set(w);
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Follows the parent links, halving the path, up to the root,
+   * which is either a vertex that is its own parent or, after the
+   * labelling in {@code sparseComponents}, a vertex whose parent
+   * value is negative.
+   */
+  private static int find(int[] parent, int v) {
+    while (parent[v] >= 0 && parent[v] != v) {
+      int p = parent[v];
+      if (parent[p] >= 0 && parent[p] != p) {
+        parent[v] = parent[p];
+      }
+      v = p;
+    }
+    return v;
+  }
+
+  /**
+   * Unites the trees of {@code u} and {@code v}, the larger root
+   * being linked under the smaller one.
+   */
+  private static void union(int[] parent, int u, int v) {
+    int ru = find(parent, u);
+    int rv = find(parent, v);
+    if (ru < rv) {
+      parent[rv] = ru;
+    }
+    else if (rv < ru) {
+      parent[ru] = rv;
+    }
+  }
+
+  /**
+   * the sets are moved in and out of the buffers a word at a time,
+   * through {@code toLongArray}, whose words beyond the last
+   * member are omitted
+   */
+  private void copy(long[] target, long[] set) {
+    int m = Math.min(set.length, words);
+    for (int i = 0; i < m; i++) {
+      target[i] = set[i];
+    }
+    for (int i = m; i < words; i++) {
+      target[i] = 0;
+    }
+  }
+
+  private void clear(long[] target, long[] set) {
+    int m = Math.min(set.length, words);
+    for (int i = 0; i < m; i++) {
+      target[i] &= ~set[i];
+    }
+  }
+
+  private void and(long[] target, long[] mask) {
+    for (int i = 0; i < words; i++) {
+      target[i] &= mask[i];
+    }
+  }
+
+  private int andCount(long[] a, long[] b) {
+    int count = 0;
+    for (int i = 0; i < words; i++) {
+      count += Long.bitCount(a[i] & b[i]);
+    }
+    return count;
+  }
+
+  /**
+   * returns the first member in the words from the i-th on; -1 if none
+   */
+  private int first(long[] set, int i) {
+    for (; i < words; i++) {
+      if (set[i] != 0) {
+        return (i << 6) + Long.numberOfTrailingZeros(set[i]);
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * returns the first member not smaller than v; -1 if none
+   */
+  private int next(long[] set, int v) {
+    int i = v >>> 6;
+    if (i >= words) {
+      return -1;
+    }
+    long w = set[i] & (-1L << v);
+    if (w != 0) {
+      return (i << 6) + Long.numberOfTrailingZeros(w);
+    }
+    return first(set, i + 1);
+  }
+
+  private XBitSet toXBitSet(long[] set) {
+    XBitSet result = new XBitSet(n);
+    result.or(BitSet.valueOf(set));
+    return result;
+  }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2017, Hisao Tamaki
+ */
+
+package tw.exact;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Long-lived server mode of {@code MainDecomposer}.
+ * Graph requests are read one after another from the standard input
+ * and answered on the standard output, so that the JIT-compiled code
+ * and the heap of a single JVM are reused across instances.
+ * <p>
+ * A request consists of a header line {@code r length}
+ * followed by exactly {@code length} bytes holding the graph in
+ * {@code gr} format.
+ * The response is the optimal tree decomposition in {@code td} format,
+ * terminated by the line {@code c done}.
+ * The server exits at the end of the input.
+ */
+public class DecompositionServer {
+  public static final String END_OF_RESPONSE = "c done";
+
+  private InputStream in;
+
+  public DecompositionServer(InputStream in) {
+    this.in = new BufferedInputStream(in);
+  }
+
+  public void serve() throws IOException {
+    String header;
+    while ((header = readLine()) != null) {
+      header = header.trim();
+      if (header.isEmpty() || header.startsWith("c")) {
+        continue;
+      }
+      String[] s = header.split("\\s+");
+      if (!"r".equals(s[0]) || s.length < 2) {
+        throw new RuntimeException("!!Invalid request header: " + header);
+      }
+      int length = Integer.parseInt(s[1]);
+
+      byte[] request = in.readNBytes(length);
+      if (request.length < length) {
+        throw new RuntimeException("!!Truncated request: " +
+            request.length + " of " + length + " bytes");
+      }
+
+      try {
+        Graph g = Graph.readGraph(new ByteArrayInputStream(request));
+        if (g == null) {
+          throw new RuntimeException("!!Unreadable graph");
+        }
+        TreeDecomposition td = MainDecomposer.decompose(g);
+        td.writeTo(System.out);
+      } catch (RuntimeException e) {
+        System.out.println("c error: " + e.getMessage());
+      }
+      System.out.println(END_OF_RESPONSE);
+      System.out.flush();
+    }
+  }
+
+  private String readLine() throws IOException {
+    StringBuilder sb = new StringBuilder();
+    int c = in.read();
+    if (c < 0) {
+      return null;
+    }
+    while (c >= 0 && c != '\n') {
+      sb.append((char) c);
+      c = in.read();
+    }
+    return sb.toString();
+  }
+}
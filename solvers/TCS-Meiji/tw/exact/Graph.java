@@ -3,15 +3,11 @@
  */
 package tw.exact;
 
-import java.io.BufferedReader;
-
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
-import java.io.FileReader;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.io.PrintStream;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -74,8 +70,20 @@ public class Graph {
   private int dfn[];
   private int low[];
   private int dfCount;
+  /*
+   * the explicit stack of the depth-first searches and, for each
+   * vertex on it, the index of the next neighbor to look at
+   */
+  private int dfsStack[];
+  private int nextIndex[];
   private XBitSet articulationSet;
 
+  /**
+   * the component engine over the current adjacencies;
+   * null until needed and whenever an edge has been added since
+   */
+  private ComponentFinder componentFinder;
+
   /**
    * Construct a graph with the specified number of
    * vertices and no edges.  Edges will be added by
@@ -95,6 +103,28 @@ public class Graph {
       all.set(i);
     }
   }
+  /**
+   * Construct a graph from adjacency lists in compressed form:
+   * the neighbors of vertex {@code v} are
+   * {@code adjacent[start[v]]}, ..., {@code adjacent[start[v + 1] - 1]}.
+   * The lists are assumed to be symmetric and free of duplicates.
+   * @param n the number of vertices
+   * @param start offsets of the adjacency lists, of length {@code n + 1}
+   * @param adjacent concatenated adjacency lists
+   */
+  public Graph(int n, int[] start, int[] adjacent) {
+    this(n);
+    for (int v = 0; v < n; v++) {
+      degree[v] = start[v + 1] - start[v];
+      if (degree[v] > 0) {
+        neighbor[v] = Arrays.copyOfRange(adjacent, start[v], start[v + 1]);
+        for (int w: neighbor[v]) {
+          neighborSet[v].set(w);
+        }
+      }
+    }
+  }
+
 
   /**
    * Add an edge between two specified vertices.
@@ -118,6 +148,7 @@ public class Graph {
     if (indexOf(v, neighbor[u]) >= 0) {
       return;
     }
+    componentFinder = null;
     degree[u]++;
     if (neighbor[u] == null) {
       neighbor[u] = new int[]{v};
@@ -194,36 +225,7 @@ public class Graph {
    */
   public static Graph readGraphDgf(File file) {
     try {
-      BufferedReader br = new BufferedReader(new FileReader(file));
-      String line = br.readLine();
-      while (line.startsWith("c")) {
-        line = br.readLine();
-      }
-      if (line.startsWith("p")) {
-        String s[] = line.split(" ");
-        int n = Integer.parseInt(s[2]);
-        // m is twice the number of edges explicitly listed
-        int m = Integer.parseInt(s[3]);
-        Graph g = new Graph(n);
-
-        for (int i = 0; i < m; i++) {
-          line = br.readLine();
-          while (!line.startsWith("e")) {
-            line = br.readLine();
-          }
-          s = line.split(" ");
-          int u = Integer.parseInt(s[1]) - 1;
-          int v = Integer.parseInt(s[2]) - 1;
-          g.addEdge(u, v);
-        }
-        return g;
-      }
-      else {
-        throw new RuntimeException("!!No problem descrioption");
-      }
-
-    } catch (FileNotFoundException e) {
-      e.printStackTrace();
+      return GraphReader.read(file, null);
     } catch (IOException e) {
       e.printStackTrace();
     }
@@ -240,39 +242,7 @@ public class Graph {
   public static Graph readGraphCol(String path, String name) {
     File file = new File(path + "/" + name + ".col");
     try {
-      BufferedReader br = new BufferedReader(new FileReader(file));
-      String line = br.readLine();
-      while (line.startsWith("c")) {
-        line = br.readLine();
-      }
-      if (line.startsWith("p")) {
-        String s[] = line.split(" ");
-        int n = Integer.parseInt(s[2]);
-        // m is twice the number of edges in this format
-        int m = Integer.parseInt(s[3]);
-        Graph g = new Graph(n);
-
-        for (int i = 0; i < m; i++) {
-          line = br.readLine();
-          while (line != null && !line.startsWith("e")) {
-            line = br.readLine();
-          }
-          if (line == null) {
-            break;
-          }
-          s = line.split(" ");
-          int u = Integer.parseInt(s[1]);
-          int v = Integer.parseInt(s[2]);
-          g.addEdge(u - 1, v - 1);
-        }
-        return g;
-      }
-      else {
-        throw new RuntimeException("!!No problem descrioption");
-      }
-
-    } catch (FileNotFoundException e) {
-      e.printStackTrace();
+      return GraphReader.read(file, null);
     } catch (IOException e) {
       e.printStackTrace();
     }
@@ -303,38 +273,7 @@ public class Graph {
    */
   public static Graph readGraph(File file) {
     try {
-      BufferedReader br = new BufferedReader(new FileReader(file));
-      String line = br.readLine();
-      while (line.startsWith("c")) {
-        line = br.readLine();
-      }
-      if (line.startsWith("p")) {
-        String s[] = line.split(" ");
-        if (!s[1].equals("tw")) {
-          throw new RuntimeException("!!Not treewidth instance");
-        }
-        int n = Integer.parseInt(s[2]);
-        int m = Integer.parseInt(s[3]);
-        Graph g = new Graph(n);
-
-        for (int i = 0; i < m; i++) {
-          line = br.readLine();
-          while (line.startsWith("c")) {
-            line = br.readLine();
-          }
-          s = line.split(" ");
-          int u = Integer.parseInt(s[0]);
-          int v = Integer.parseInt(s[1]);
-          g.addEdge(u - 1, v - 1);
-        }
-        return g;
-      }
-      else {
-        throw new RuntimeException("!!No problem descrioption");
-      }
-
-    } catch (FileNotFoundException e) {
-      e.printStackTrace();
+      return GraphReader.read(file, "tw");
     } catch (IOException e) {
       e.printStackTrace();
     }
@@ -351,41 +290,7 @@ public class Graph {
    */
   public static Graph readGraph(InputStream is) {
     try {
-      BufferedReader br = new BufferedReader(
-          new InputStreamReader(is));
-      String line = br.readLine();
-      while (line.startsWith("c")) {
-        line = br.readLine();
-      }
-      if (line.startsWith("p")) {
-        String s[] = line.split(" ");
-        if (!s[1].equals("tw")) {
-          throw new RuntimeException("!!Not treewidth instance");
-        }
-        int n = Integer.parseInt(s[2]);
-        int m = Integer.parseInt(s[3]);
-        Graph g = new Graph(n);
-
-        for (int i = 0; i < m; i++) {
-          line = br.readLine();
-          while (line.startsWith("c")) {
-            line = br.readLine();
-          }
-          s = line.split(" ");
-          int u = Integer.parseInt(s[0]);
-          int v = Integer.parseInt(s[1]);
-          g.addEdge(u - 1, v - 1);
-        }
-        
-        br.close();
-        return g;
-      }
-      else {
-        throw new RuntimeException("!!No problem descrioption");
-      }
-
-    } catch (FileNotFoundException e) {
-      e.printStackTrace();
+      return GraphReader.read(is, "tw");
     } catch (IOException e) {
       e.printStackTrace();
     }
@@ -492,10 +397,11 @@ public class Graph {
 
     nc = 0;
 
+    int[] stack = new int[n];
     for (int v = 0; v < n; v++) {
       if (mark[v] == 0) {
         nc++;
-        markFrom(v);
+        markFrom(v, stack);
       }
     }
 
@@ -513,85 +419,70 @@ public class Graph {
   }
 
   /**
-   * Recursive method for depth-first search
+   * Depth-first search with an explicit stack:
    * vertices reachable from the given vertex,
    * passing through only unmarked vertices (vertices
    * with the mark[] value being 0 or -1),
    * are marked by the value of {@code nc} which
    * is a positive integer
    * @param v vertex to be visited
+   * @param stack work array of length {@code n}
    */
-  private void markFrom(int v) {
+  private void markFrom(int v, int[] stack) {
     if (mark[v] != 0) return;
     mark[v] = nc;
-    for (int i = 0; i < degree[v]; i++) {
-      int w = neighbor[v][i];
-      markFrom(w);
+    stack[0] = v;
+    int top = 1;
+    while (top > 0) {
+      int u = stack[--top];
+      for (int i = 0; i < degree[u]; i++) {
+        int w = neighbor[u][i];
+        if (mark[w] == 0) {
+          mark[w] = nc;
+          stack[top++] = w;
+        }
+      }
     }
   }
 
+  /**
+   * Returns the component engine for the current adjacencies of
+   * this graph, creating it if needed.
+   * The engine is dropped when an edge is added.  Racing threads
+   * may each create one; the engine is immutable apart from its
+   * per-thread buffers, so either may be used.
+   * @return the component engine
+   */
+  public ComponentFinder componentFinder() {
+    ComponentFinder finder = componentFinder;
+    if (finder == null) {
+      finder = new ComponentFinder(this);
+      componentFinder = finder;
+    }
+    return finder;
+  }
+
   /**
    * Compute connected components of this target graph after
    * the removal of the vertices in the given separator,
-   * by means of iterated bit operations
+   * by means of the component engine
    * @param separator set of vertices to be removed
    * @return the arrayList of connected components,
    * the vertex set of each component represented by a {@code XBitSet}
    */
   public ArrayList<XBitSet> getComponents(XBitSet separator) {
-    ArrayList<XBitSet> result = new ArrayList<XBitSet>();
-    XBitSet rest = all.subtract(separator);
-    for (int v = rest.nextSetBit(0); v >= 0;
-        v = rest.nextSetBit(v + 1)) {
-      XBitSet c = (XBitSet) neighborSet[v].clone();
-      XBitSet toBeScanned = c.subtract(separator);
-      c.set(v);
-      while (!toBeScanned.isEmpty()) {
-        XBitSet save = (XBitSet) c.clone();
-        for (int w = toBeScanned.nextSetBit(0); w >= 0;
-            w = toBeScanned.nextSetBit(w + 1)) {
-          c.or(neighborSet[w]);
-        }
-        toBeScanned = c.subtract(save);
-        toBeScanned.andNot(separator);
-      }
-      result.add(c.subtract(separator));
-      rest.andNot(c);
-    }
-
-    return result;
+    return componentFinder().components(separator);
   }
 
   /**
    * Compute the full components associated with the given separator,
-   * by means of iterated bit operations
+   * by means of the component engine
    * @param separator set of vertices to be removed
    * @return the arrayList of full components,
    * the vertex set of each component represented by a {@code XBitSet}
    */
   public ArrayList<XBitSet> getFullComponents(XBitSet separator) {
-    ArrayList<XBitSet> result = new ArrayList<XBitSet>();
-    XBitSet rest = all.subtract(separator);
-    for (int v = rest.nextSetBit(0); v >= 0;
-        v = rest.nextSetBit(v + 1)) {
-      XBitSet c = (XBitSet) neighborSet[v].clone();
-      XBitSet toBeScanned = c.subtract(separator);
-      c.set(v);
-      while (!toBeScanned.isEmpty()) {
-        XBitSet save = (XBitSet) c.clone();
-        for (int w = toBeScanned.nextSetBit(0); w >= 0;
-          w = toBeScanned.nextSetBit(w + 1)) {
-          c.or(neighborSet[w]);
-        }
-        toBeScanned = c.subtract(save);
-        toBeScanned.andNot(separator);
-      }
-      if (separator.isSubset(c)) {
-        result.add(c.subtract(separator));
-      }
-      rest.andNot(c);
-    }
-    return result;
+    return componentFinder().fullComponents(separator);
   }
 
   /**
@@ -601,24 +492,7 @@ public class Graph {
    */
 
   public boolean isConnected(XBitSet vertices) {
-    int v = vertices.nextSetBit(0);
-    if (v < 0) {
-      return true;
-    }
-
-    XBitSet c = (XBitSet) neighborSet[v].clone();
-    XBitSet toScan = c.intersectWith(vertices);
-    c.set(v);
-    while (!toScan.isEmpty()) {
-      XBitSet save = (XBitSet) c.clone();
-      for (int w = toScan.nextSetBit(0); w >= 0;
-        w = toScan.nextSetBit(w + 1)) {
-        c.or(neighborSet[w]);
-      }
-      toScan = c.subtract(save);
-      toScan.and(vertices);
-    }
-    return vertices.isSubset(c);
+    return componentFinder().isConnected(vertices);
   }
 
   /**
@@ -633,6 +507,8 @@ public class Graph {
     dfCount = 1;
     dfn = new int[n];
     low = new int[n];
+    dfsStack = new int[n];
+    nextIndex = new int[n];
 
     for (int v = 0; v < n; v++) {
       if (!vertices.get(v)) {
@@ -663,29 +539,42 @@ public class Graph {
   }
 
   /**
-   * Depth-first search for deciding biconnectivigy.
-   * @param v vertex to be visited
-   * @return {@code true} if articulation point is found
-   * in the search starting from {@cod v}, {@false} otherwise
-   */
-  private boolean dfsForBiconnectedness(int v) {
-    dfn[v] = dfCount++;
-    low[v] = dfn[v];
-    for (int i = 0; i < degree[v]; i++) {
-      int w = neighbor[v][i];
-      if (dfn[w] > 0 && dfn[w] < low[v]) {
-        low[v] = dfn[w];
-      }
-      else if (dfn[w] == 0) {
-        boolean b = dfsForBiconnectedness(w);
-        if (!b) {
-          return false;
+   * Depth-first search for deciding biconnectivity,
+   * with an explicit stack.
+   * @param r vertex to start the search from
+   * @return {@code false} if an articulation point is found
+   * in the search starting from {@code r}, {@code true} otherwise
+   */
+  private boolean dfsForBiconnectedness(int r) {
+    dfn[r] = dfCount++;
+    low[r] = dfn[r];
+    nextIndex[r] = 0;
+    dfsStack[0] = r;
+    int top = 1;
+    while (top > 0) {
+      int v = dfsStack[top - 1];
+      if (nextIndex[v] < degree[v]) {
+        int w = neighbor[v][nextIndex[v]++];
+        if (dfn[w] > 0 && dfn[w] < low[v]) {
+          low[v] = dfn[w];
+        }
+        else if (dfn[w] == 0) {
+          dfn[w] = dfCount++;
+          low[w] = dfn[w];
+          nextIndex[w] = 0;
+          dfsStack[top++] = w;
         }
-        if (low[w] >= dfn[v]) {
+        continue;
+      }
+      // the search from v is over: back to its parent u
+      top--;
+      if (top > 0) {
+        int u = dfsStack[top - 1];
+        if (low[v] >= dfn[u]) {
           return false;
         }
-        if (low[w] < low[v]) {
-          low[v] = low[w];
+        if (low[v] < low[u]) {
+          low[u] = low[v];
         }
       }
     }
@@ -736,6 +625,8 @@ public class Graph {
     dfCount = 1;
     dfn = new int[n];
     low = new int[n];
+    dfsStack = new int[n];
+    nextIndex = new int[n];
 
     for (int v = 0; v < n; v++) {
       if (!vertices.get(v)) {
@@ -748,26 +639,43 @@ public class Graph {
   }
 
   /**
-   * Depth-first search for listing articulation vertices.
+   * Depth-first search for listing articulation vertices,
+   * with an explicit stack.
    * The articulations found in the search are
    * added to the {@code XBitSet articulationSet}.
-   * @param v vertex to be visited
-   */
-  private void depthFirst(int v) {
-    dfn[v] = dfCount++;
-    low[v] = dfn[v];
-    for (int i = 0; i < degree[v]; i++) {
-      int w = neighbor[v][i];
-      if (dfn[w] > 0) {
-        low[v] = Math.min(low[v], dfn[w]);
+   * @param r vertex to start the search from
+   */
+  private void depthFirst(int r) {
+    dfn[r] = dfCount++;
+    low[r] = dfn[r];
+    nextIndex[r] = 0;
+    dfsStack[0] = r;
+    int top = 1;
+    while (top > 0) {
+      int v = dfsStack[top - 1];
+      if (nextIndex[v] < degree[v]) {
+        int w = neighbor[v][nextIndex[v]++];
+        if (dfn[w] > 0) {
+          low[v] = Math.min(low[v], dfn[w]);
+        }
+        else if (dfn[w] == 0) {
+          dfn[w] = dfCount++;
+          low[w] = dfn[w];
+          nextIndex[w] = 0;
+          dfsStack[top++] = w;
+        }
+        continue;
       }
-      else if (dfn[w] == 0) {
-        depthFirst(w);
-        if (low[w] >= dfn[v] &&
-            (dfn[v] > 1 || !lastNeighborIndex(v, i))){
-          articulationSet.set(v);
+      // the search from v is over: back to its parent u, for which
+      // v was reached at index nextIndex[u] - 1
+      top--;
+      if (top > 0) {
+        int u = dfsStack[top - 1];
+        if (low[v] >= dfn[u] &&
+            (dfn[u] > 1 || !lastNeighborIndex(u, nextIndex[u] - 1))){
+          articulationSet.set(u);
         }
-        low[v] = Math.min(low[v], low[w]);
+        low[u] = Math.min(low[u], low[v]);
       }
     }
   }
@@ -926,9 +834,10 @@ public class Graph {
   public Graph copy() {
     Graph tmp = new Graph(n);
     for (int v = 0; v < n; v++) {
-      for (int j = 0; j < neighbor[v].length; j++) {
-        int w = neighbor[v][j];
-        tmp.addEdge(v, w);
+      if (neighbor[v] != null) {
+        tmp.degree[v] = degree[v];
+        tmp.neighbor[v] = Arrays.copyOf(neighbor[v], degree[v]);
+        tmp.neighborSet[v] = (XBitSet) neighborSet[v].clone();
       }
     }
     return tmp;
@@ -0,0 +1,277 @@
+/*
+ * Copyright (c) 2016, Hisao Tamaki
+ */
+package tw.exact;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Byte-level reader for graphs in the DIMACS-like formats
+ * {@code gr}, {@code dgf} and {@code col}.
+ * Files are memory-mapped and streams are consumed in large chunks;
+ * integers are parsed directly from the bytes without creating Strings.
+ * The edge list is scanned once; the degree array is built in a first
+ * pass over the edges and a compressed adjacency layout is filled in
+ * a second pass, so that no per-edge array copying takes place.
+ * <p>
+ * The accepted input consists of comment lines starting with {@code c},
+ * a problem line {@code p <format> n m}, and edge lines of the form
+ * {@code u v} or {@code e u v} with vertices numbered from 1 to n.
+ * Self loops are dropped and parallel edges are merged.
+ *
+ * @author  Hisao Tamaki
+ */
+class GraphReader {
+  private static final int CHUNK_SIZE = 1 << 20;
+  private static final long MAP_WINDOW = 1L << 30;
+
+  private InputStream is;
+  private byte[] chunk;
+
+  private FileChannel channel;
+  private long mapped;
+
+  private ByteBuffer buf;
+
+  private GraphReader(InputStream is) {
+    this.is = is;
+    this.chunk = new byte[CHUNK_SIZE];
+    this.buf = ByteBuffer.wrap(chunk, 0, 0);
+  }
+
+  private GraphReader(FileChannel channel) {
+    this.channel = channel;
+    this.buf = ByteBuffer.allocate(0);
+  }
+
+  /**
+   * Read a graph from the specified file, mapping it into memory.
+   * @param file the file to read
+   * @param format the format name required on the problem line,
+   * such as "tw"; null if any format name is accepted
+   * @return the resulting {@code Graph} object
+   * @throws IOException if the reading fails
+   */
+  static Graph read(File file, String format) throws IOException {
+    try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+      return new GraphReader(raf.getChannel()).parse(format);
+    }
+  }
+
+  /**
+   * Read a graph from the specified input stream, buffering it
+   * in large chunks.
+   * @param is the input stream to read
+   * @param format the format name required on the problem line,
+   * such as "tw"; null if any format name is accepted
+   * @return the resulting {@code Graph} object
+   * @throws IOException if the reading fails
+   */
+  static Graph read(InputStream is, String format) throws IOException {
+    return new GraphReader(is).parse(format);
+  }
+
+  private boolean refill() throws IOException {
+    if (channel != null) {
+      long size = channel.size();
+      if (mapped >= size) {
+        return false;
+      }
+      long len = Math.min(MAP_WINDOW, size - mapped);
+      buf = channel.map(FileChannel.MapMode.READ_ONLY, mapped, len);
+      mapped += len;
+      return true;
+    }
+    int len = is.read(chunk);
+    while (len == 0) {
+      len = is.read(chunk);
+    }
+    if (len < 0) {
+      return false;
+    }
+    buf.clear();
+    buf.limit(len);
+    return true;
+  }
+
+  /**
+   * returns the next byte, as an unsigned value, without consuming it;
+   * -1 at the end of input
+   */
+  private int peek() throws IOException {
+    if (!buf.hasRemaining() && !refill()) {
+      return -1;
+    }
+    return buf.get(buf.position()) & 0xff;
+  }
+
+  /**
+   * consumes and returns the next byte, as an unsigned value;
+   * -1 at the end of input
+   */
+  private int next() throws IOException {
+    if (!buf.hasRemaining() && !refill()) {
+      return -1;
+    }
+    return buf.get() & 0xff;
+  }
+
+  private void skipBlanks() throws IOException {
+    int c = peek();
+    while (c == ' ' || c == '\t' || c == '\r') {
+      buf.get();
+      c = peek();
+    }
+  }
+
+  private void skipLine() throws IOException {
+    int c = next();
+    while (c != '\n' && c >= 0) {
+      c = next();
+    }
+  }
+
+  private int nextInt() throws IOException {
+    skipBlanks();
+    int c = peek();
+    if (c < '0' || c > '9') {
+      throw new RuntimeException("!!Integer expected");
+    }
+    int x = 0;
+    while (c >= '0' && c <= '9') {
+      buf.get();
+      x = x * 10 + (c - '0');
+      c = peek();
+    }
+    return x;
+  }
+
+  private String nextWord() throws IOException {
+    skipBlanks();
+    StringBuilder sb = new StringBuilder();
+    int c = peek();
+    while (c > ' ') {
+      buf.get();
+      sb.append((char) c);
+      c = peek();
+    }
+    return sb.toString();
+  }
+
+  private Graph parse(String format) throws IOException {
+    int n = -1;
+    int m = 0;
+    int[] ends = null;
+    int count = 0;
+
+    while (n < 0 || count < m) {
+      skipBlanks();
+      int c = peek();
+      if (c < 0) {
+        break;
+      }
+      if (c == 'p') {
+        if (n >= 0) {
+          throw new RuntimeException("!!Duplicate problem description");
+        }
+        buf.get();
+        String word = nextWord();
+        if (format != null && !word.equals(format)) {
+          throw new RuntimeException("!!Not treewidth instance");
+        }
+        n = nextInt();
+        m = nextInt();
+        ends = new int[2 * m];
+      }
+      else if (c == 'e' || c >= '0' && c <= '9') {
+        if (n < 0) {
+          throw new RuntimeException("!!No problem descrioption");
+        }
+        if (c == 'e') {
+          buf.get();
+        }
+        int u = nextInt();
+        int v = nextInt();
+        if (u < 1 || u > n || v < 1 || v > n) {
+          throw new RuntimeException("!!Vertex out of range: " +
+              u + " " + v);
+        }
+        ends[2 * count] = u - 1;
+        ends[2 * count + 1] = v - 1;
+        count++;
+      }
+      // comments, empty lines and other line types of dgf/col files
+      // such as vertex weights are skipped
+      skipLine();
+    }
+    if (n < 0) {
+      throw new RuntimeException("!!No problem descrioption");
+    }
+    // in the dgf and col formats, m may be twice the number of
+    // edges, so the edge list is read up to the end of the input;
+    // a gr file, whose format is named, must list all the m edges
+    if (format != null && count < m) {
+      throw new EOFException("Input ended after " + count + 
+          " of " + m + " edges");
+    }
+    return buildGraph(n, ends, count);
+  }
+
+  /**
+   * Build the graph from the list of edges in two passes:
+   * count the degrees, then fill the compressed adjacency
+   * arrays in the order of appearance, merging parallel edges.
+   */
+  private static Graph buildGraph(int n, int[] ends, int m) {
+    int[] start = new int[n + 1];
+    for (int i = 0; i < m; i++) {
+      int u = ends[2 * i];
+      int v = ends[2 * i + 1];
+      if (u != v) {
+        start[u + 1]++;
+        start[v + 1]++;
+      }
+    }
+    for (int v = 0; v < n; v++) {
+      start[v + 1] += start[v];
+    }
+
+    int[] adjacent = new int[start[n]];
+    int[] fill = Arrays.copyOf(start, n);
+    for (int i = 0; i < m; i++) {
+      int u = ends[2 * i];
+      int v = ends[2 * i + 1];
+      if (u != v) {
+        adjacent[fill[u]++] = v;
+        adjacent[fill[v]++] = u;
+      }
+    }
+
+    // remove duplicates in place, keeping the first occurrences
+    int[] stamp = new int[n];
+    int k = 0;
+    int from = 0;
+    for (int v = 0; v < n; v++) {
+      int to = start[v + 1];
+      start[v] = k;
+      for (int i = from; i < to; i++) {
+        int w = adjacent[i];
+        if (stamp[w] != v + 1) {
+          stamp[w] = v + 1;
+          adjacent[k++] = w;
+        }
+      }
+      from = to;
+    }
+    start[n] = k;
+
+    return new Graph(n, start, adjacent);
+  }
+}
@@ -199,7 +199,7 @@ public class GreedyDecomposer {
     XBitSet ns = g.neighborSet[v].intersectWith(remaining);
     for (int w = ns.nextSetBit(0); w >= 0; 
         w = ns.nextSetBit(w + 1)) {
-      if (ns.subtract(g.neighborSet[w]).cardinality() > 1) {
+      if (ns.differenceCardinality(g.neighborSet[w]) > 1) {
         count++;
       }
     }
@@ -211,13 +211,12 @@ public class GreedyDecomposer {
     XBitSet ns = g.neighborSet[v].intersectWith(remaining);
     for (int w = ns.nextSetBit(0); w >= 0; 
         w = ns.nextSetBit(w + 1)) {
-      count += ns.subtract(g.neighborSet[w]).cardinality() - 1;
+      count += ns.differenceCardinality(g.neighborSet[w]) - 1;
     }
     return count / 2;
   }
 
   int degreeOf(int v) {
-    XBitSet ns = g.neighborSet[v].intersectWith(remaining);
-    return ns.cardinality();
+    return g.neighborSet[v].intersectionCardinality(remaining);
   }
 }
@@ -16,9 +16,12 @@ import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
-import java.util.Map;
 import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class IODecomposer {
 
@@ -39,11 +42,16 @@ public class IODecomposer {
 
 //  Set<XBitSet> processed;
 
-  Map<XBitSet, Oblock> oBlockCache;
+  XBitSetMap<Oblock> oBlockCache;
 
-  Map<XBitSet, Block> blockCache;
+  XBitSetMap<Block> blockCache;
+
+  /**
+   * compact storage of the outbound components of the blocks
+   */
+  SetArena outboundArena;
   
-  Map<XBitSet, IBlock> iBlockCache;
+  XBitSetMap<IBlock> iBlockCache;
   
   Set<XBitSet> pmcCache;
   
@@ -52,12 +60,41 @@ public class IODecomposer {
   
   int targetWidth;
 
+  /**
+   * the width already required by another part of the whole
+   * decomposition, shared among the decomposers of its bags;
+   * null if not shared
+   */
+  AtomicInteger sharedWidth;
+
+  /**
+   * whether the O-blocks are carried over from one target width
+   * to the next
+   */
+  boolean incremental = true;
+
+  /**
+   * the target width of the previous iteration of the search;
+   * -1 if none
+   */
+  int previousWidth = -1;
+
   PMC solution;
   
   SafeSeparator ss;
 
   static int TIMEOUT_CHECK = 100;
 
+  /**
+   * the smallest number of independent work items
+   * for which the pool is used
+   */
+  static final int MIN_PARALLEL_TASKS = 4;
+
+  int parallelism = 1;
+
+  ForkJoinPool pool;
+
   public IODecomposer(Bag bag, 
       int lowerBound, int upperBound) {
 
@@ -71,16 +108,78 @@ public class IODecomposer {
     
     ss = new SafeSeparator(g);
   }
-  
+
+  /**
+   * Sets the number of threads used for the search.
+   * The candidate combinations arising from each I-block and
+   * O-block are evaluated in parallel on a work-stealing pool,
+   * while their effects on the search state are applied in
+   * the sequential order, so that the solution found does not
+   * depend on the number of threads.
+   * @param parallelism the number of threads
+   */
+  public void setParallelism(int parallelism) {
+    this.parallelism = parallelism;
+  }
+
+  /**
+   * Sets the width shared with the decomposers of the other
+   * bags of the same decomposition, which raise it as they
+   * find their solutions. The search starts from this width
+   * and jumps to it whenever it exceeds the current target width,
+   * since the narrower widths are of no use for the whole
+   * decomposition.
+   * @param sharedWidth the shared width
+   */
+  public void setSharedWidth(AtomicInteger sharedWidth) {
+    this.sharedWidth = sharedWidth;
+  }
+
+  /**
+   * Sets whether the O-blocks found for a target width are
+   * carried over to the next target width.
+   * In the incremental mode, an O-block derived again for the new
+   * width is re-layered into the sieve of that width rather than
+   * rebuilt, and it is crowned only with the potential maximal
+   * cliques newly allowed by the larger width; likewise, only the
+   * closed neighborhoods newly allowed are tried.
+   * @param incremental true for the incremental mode
+   */
+  public void setIncremental(boolean incremental) {
+    this.incremental = incremental;
+  }
+
   public void decompose() {
-    blockCache = new HashMap<>();
-    iBlockCache = new HashMap<>();
+    if (parallelism > 1) {
+      pool = new ForkJoinPool(parallelism);
+    }
+    try {
+      decomposeInPool();
+    } finally {
+      if (pool != null) {
+        pool.shutdown();
+        pool = null;
+      }
+    }
+  }
+
+  private void decomposeInPool() {
+    blockCache = new XBitSetMap<>(parallelism > 1);
+    outboundArena = new SetArena(g.n, parallelism > 1);
+    iBlockCache = new XBitSetMap<>(parallelism > 1);
 
     pendingEndorsers = new ArrayList<>();
     pmcCache = new HashSet<>();
 
+    // the widths below the lower bound are of no use
+    if (targetWidth < lowerBound) {
+      targetWidth = lowerBound;
+    }
 
     while (targetWidth <= upperBound) {
+      if (sharedWidth != null && sharedWidth.get() > targetWidth) {
+        targetWidth = sharedWidth.get();
+      }
       if (VERBOSE) {
         System.out.println("deompose loop, n = " + currentBag.size + 
             ", targetWidth = " + targetWidth);
@@ -95,37 +194,45 @@ public class IODecomposer {
 
       // endorserMap = new HashMap<>();
 
+      if (!incremental) {
+        previousWidth = -1;
+      }
+
+      // in the incremental mode, the O-blocks of the previous widths
+      // are kept in the cache and are put into the new sieve
+      // when they are derived again
       oBlockSieve = new LayeredSieve(g.n, targetWidth);
-      oBlockCache = new HashMap<>();
+      if (previousWidth < 0) {
+        oBlockCache = new XBitSetMap<>(parallelism > 1);
+      }
 
       readyQueue = new LinkedList<>();
 
       readyQueue.addAll(iBlockCache.values());
 
+      ArrayList<Callable<PMC>> tasks = new ArrayList<>();
       for (int v = 0; v < g.n; v++) {
-        XBitSet cnb = (XBitSet) g.neighborSet[v].clone();
+        final XBitSet cnb = (XBitSet) g.neighborSet[v].clone();
         cnb.set(v);
 
         if (DEBUG) {
           System.out.println(v + ":" + cnb.cardinality() + ", " + cnb);
         }
 
-        if (cnb.cardinality() > targetWidth + 1) {
+        if (cnb.cardinality() > targetWidth + 1 ||
+            cnb.cardinality() <= previousWidth + 1) {
           continue;
         }
 
-        //      if (!pmcCache.contains(cnb)) {
-        PMC pmc = new PMC(cnb, getBlocks(cnb));
-        if (pmc.isValid) {
-          //          pmcCache.add(cnb);
-          if (pmc.isReady()) {
-            pmc.endorse();
+        tasks.add(new Callable<PMC>() {
+          @Override
+          public PMC call() {
+            return new PMC(cnb, getBlocks(cnb));
           }
-          else {
-            pendingEndorsers.add(pmc);
-          }
-          //        }
-        }
+        });
+      }
+      for (PMC pmc: evaluate(tasks)) {
+        admit(pmc);
       }
 
       while (true) {
@@ -165,11 +272,55 @@ public class IODecomposer {
 
       log("failed");
 
+      previousWidth = targetWidth;
       targetWidth++;
     }
     return;
   }
 
+  /**
+   * Evaluates the given tasks, in parallel if the pool is available
+   * and there are enough tasks.
+   * The tasks must not change the search state except for
+   * the block cache.
+   * @return the results in the order of the tasks
+   */
+  <T> ArrayList<T> evaluate(ArrayList<Callable<T>> tasks) {
+    ArrayList<T> results = new ArrayList<>(tasks.size());
+    try {
+      if (pool == null || tasks.size() < MIN_PARALLEL_TASKS) {
+        for (Callable<T> task: tasks) {
+          results.add(task.call());
+        }
+      }
+      else {
+        for (Future<T> future: pool.invokeAll(tasks)) {
+          results.add(future.get());
+        }
+      }
+    } catch (RuntimeException e) {
+      throw e;
+    } catch (Exception e) {
+      throw new RuntimeException(e);
+    }
+    return results;
+  }
+
+  /**
+   * Registers a newly found potential maximal clique:
+   * endorses it if ready, otherwise keeps it pending.
+   */
+  void admit(PMC pmc) {
+    if (pmc.isValid) {
+      if (pmc.isReady()) {
+        pmc.endorse();
+      }
+      else {
+        pendingEndorsers.add(pmc);
+      }
+    }
+  }
+
   boolean crossesOrSubsumes(XBitSet separator1, XBitSet endorsed, XBitSet separator2) {
     ArrayList<XBitSet> components = g.getComponents(separator1);
     for (XBitSet compo: components) {
@@ -189,10 +340,23 @@ public class IODecomposer {
   }
 
   Block getBlock(XBitSet component) {
+    return getBlock(component, null);
+  }
+
+  /**
+   * @param separator the neighborhood of the component if already
+   * known; null otherwise
+   */
+  Block getBlock(XBitSet component, XBitSet separator) {
+    // frozen here so that its fingerprint is computed only once
+    // for the lookup and the insertion
     Block block = blockCache.get(component);
     if (block == null) {
-      block = new Block(component);
-      blockCache.put(component, block);
+      block = new Block(component, separator);
+      Block existing = blockCache.putIfAbsent(component, block);
+      if (existing != null) {
+        block = existing;
+      }
     }
     return block;
   }
@@ -220,83 +384,95 @@ public class IODecomposer {
   }
 
   ArrayList<Block> getBlocks(XBitSet separator) {
-    ArrayList<Block> result = new ArrayList<Block>();
-    XBitSet rest = g.all.subtract(separator);
-    for (int v = rest.nextSetBit(0); v >= 0; v = rest.nextSetBit(v + 1)) {
-      XBitSet c = g.neighborSet[v].subtract(separator);
-      XBitSet toBeScanned = (XBitSet) c.clone();
-      c.set(v);
-      while (!toBeScanned.isEmpty()) {
-        XBitSet save = (XBitSet) c.clone();
-        for (int w = toBeScanned.nextSetBit(0); w >= 0; w = toBeScanned
-            .nextSetBit(w + 1)) {
-          c.or(g.neighborSet[w]);
-        }
-        c.andNot(separator);
-        toBeScanned = c.subtract(save);
-      }
-
-      Block block = getBlock(c);
-      result.add(block);
-      rest.andNot(c);
+    ArrayList<XBitSet> components = new ArrayList<>();
+    ArrayList<XBitSet> neighbors = new ArrayList<>();
+    g.componentFinder().components(separator, components, neighbors);
+    ArrayList<Block> result = new ArrayList<Block>(components.size());
+    for (int i = 0; i < components.size(); i++) {
+      result.add(getBlock(components.get(i), neighbors.get(i)));
     }
     return result;
   }
 
+  /**
+   * values of {@code Block.outbound} other than arena handles
+   */
+  static final int NO_OUTBOUND = -1;
+  static final int SELF_OUTBOUND = -2;
+
   class Block implements Comparable<Block> {
     XBitSet component;
     XBitSet separator;
-    XBitSet outbound;
 
-    Block(XBitSet component) {
+    /**
+     * the outbound full component of the separator:
+     * {@code SELF_OUTBOUND} if it is the component of this block,
+     * {@code NO_OUTBOUND} if the separator is not minimal, and
+     * otherwise the handle of the component in {@code outboundArena},
+     * as it is needed only when this block is endorsed
+     */
+    int outbound = NO_OUTBOUND;
+
+    Block(XBitSet component, XBitSet separator) {
       this.component = component;
-      this.separator = g.neighborSet(component);
-
-      XBitSet rest = g.all.subtract(component);
-      rest.andNot(separator);
-
-      int minCompo = component.nextSetBit(0);
-
-      // the scanning order ensures that the first full component
-      // encountered is the outbound one
-      for (int v = rest.nextSetBit(0); v >= 0; v = rest.nextSetBit(v + 1)) {
-        XBitSet c = (XBitSet) g.neighborSet[v].clone();
-        XBitSet toBeScanned = c.subtract(separator);
-        c.set(v);
-        while (!toBeScanned.isEmpty()) {
-          XBitSet save = (XBitSet) c.clone();
-          for (int w = toBeScanned.nextSetBit(0); w >= 0; 
-              w = toBeScanned.nextSetBit(w + 1)) {
-            c.or(g.neighborSet[w]);
-          }
-          toBeScanned = c.subtract(save).subtract(separator);
+      this.separator = separator != null ? separator :
+        g.neighborSet(component);
+
+      // the first full component other than "component" in the
+      // order of the smallest vertices is the outbound one if it
+      // comes before "component"
+      XBitSet c = g.componentFinder().firstFullComponent(
+          this.separator, component);
+      if (c != null) {
+        if (c.nextSetBit(0) < component.nextSetBit(0)) {
+          outbound = outboundArena.add(c);
         }
-        if (separator.isSubset(c)) {
-          // full block other than "component" found
-          if (v < minCompo) {
-            outbound = c.subtract(separator);
-          }
-          else {
-            // v > minCompo
-            outbound = component;
-          }
-          return;
+        else {
+          outbound = SELF_OUTBOUND;
         }
-        rest.andNot(c);
       }
     }
 
     boolean isOutbound() {
-      return outbound == component;
+      return outbound == SELF_OUTBOUND;
     }
 
     boolean ofMinimalSeparator() {
-      return outbound != null;
+      return outbound != NO_OUTBOUND;
+    }
+
+    /**
+     * Returns the outbound full component of the separator;
+     * null if the separator is not minimal.
+     */
+    XBitSet outbound() {
+      if (outbound == SELF_OUTBOUND) {
+        return component;
+      }
+      if (outbound == NO_OUTBOUND) {
+        return null;
+      }
+      return outboundArena.toXBitSet(outbound);
+    }
+
+    /**
+     * Returns {@code true} if the given set is the outbound full
+     * component of the separator, without rebuilding the component
+     * from the arena.
+     */
+    boolean outboundEquals(XBitSet set) {
+      if (outbound == SELF_OUTBOUND) {
+        return component.equals(set);
+      }
+      if (outbound == NO_OUTBOUND) {
+        return false;
+      }
+      return outboundArena.equals(outbound, set);
     }
 
     public String toString() {
       StringBuilder sb = new StringBuilder();
-      if (outbound == component) {
+      if (isOutbound()) {
         sb.append("o");
       } 
       else {
@@ -341,9 +517,21 @@ public class IODecomposer {
       oBlockSieve.collectSuperblocks(
           block.component, block.separator, oBlockSeparators);
 
+      ArrayList<Callable<Combination>> tasks = new ArrayList<>();
       for (XBitSet tsep : oBlockSeparators) {
-        Oblock oBlock = oBlockCache.get(tsep);
-        oBlock.plugin(this);
+        final Oblock oBlock = oBlockCache.get(tsep);
+        tasks.add(new Callable<Combination>() {
+          @Override
+          public Combination call() {
+            return oBlock.combine(IBlock.this);
+          }
+        });
+      }
+
+      for (Combination combination: evaluate(tasks)) {
+        if (combination != null) {
+          combination.apply();
+        }
       }
     }
 
@@ -353,12 +541,14 @@ public class IODecomposer {
         System.out.print("makeSimple: " + this);
       }
 
+      // the outbound component is rebuilt from the arena only if
+      // the O-block is new or was derived from another component
       Oblock oBlock = oBlockCache.get(block.separator);
-      if (oBlock == null) {
-        oBlock = new Oblock(block.separator, block.outbound);
-        oBlockCache.put(block.separator, oBlock);
-        oBlockSieve.put(block.outbound, block.separator);
-        oBlock.crown();
+      if (oBlock != null && block.outboundEquals(oBlock.openComponent)) {
+        makeOblock(block.separator, oBlock.openComponent);
+      }
+      else {
+        makeOblock(block.separator, block.outbound());
       }
     }
 
@@ -366,32 +556,79 @@ public class IODecomposer {
       StringBuilder sb = new StringBuilder();
       sb.append("IBlock:" + block.separator + "\n");
       sb.append("  in  :" + block.component + "\n");
-      sb.append("  out :" + block.outbound + "\n");
+      sb.append("  out :" + block.outbound() + "\n");
       return sb.toString();
     }
   }
 
+  /**
+   * Registers the O-block with the given separator and open
+   * component for the current target width, unless already
+   * registered: puts it into the sieve and crowns it.
+   * An O-block carried over from a previous width is crowned only
+   * with the potential maximal cliques newly allowed by the
+   * current width.
+   */
+  void makeOblock(XBitSet separator, XBitSet openComponent) {
+    Oblock oBlock = oBlockCache.get(separator);
+    if (oBlock == null) {
+      oBlock = new Oblock(separator, openComponent);
+      oBlockCache.put(separator, oBlock);
+    }
+    else if (oBlock.width == targetWidth) {
+      return;
+    }
+    else if (!oBlock.openComponent.equals(openComponent)) {
+      // derived from another full component this time
+      oBlock = new Oblock(separator, openComponent);
+      oBlockCache.put(separator, oBlock);
+    }
+    int crowned = oBlock.width;
+    oBlock.width = targetWidth;
+    oBlockSieve.put(openComponent, separator);
+    oBlock.crown(crowned + 2);
+  }
+
   class Oblock {
     XBitSet separator;
     XBitSet openComponent;
 
+    /**
+     * the latest target width for which this O-block has been
+     * put into the sieve and crowned; -1 if none
+     */
+    int width = -1;
+
     Oblock(XBitSet separator, XBitSet openComponent) {
       this.separator = separator;
       this.openComponent = openComponent;
     }
 
     void plugin(IBlock iBlock) {
+      Combination combination = combine(iBlock);
+      if (combination != null) {
+        combination.apply();
+      }
+    }
+
+    /**
+     * Computes the result of plugging the given I-block into
+     * this O-block without changing the search state.
+     * @return the resulting combination; null if nothing results
+     */
+    Combination combine(IBlock iBlock) {
       if (DEBUG) {
         System.out.println("plugin " + iBlock);
         System.out.println("  to " + this);
       }
 
-      XBitSet newsep = separator.unionWith(iBlock.block.separator);
-
-      if (newsep.cardinality() > targetWidth + 1) {
-        return;
+      if (separator.unionCardinalityExceeds(
+            iBlock.block.separator, targetWidth + 1)) {
+        return null;
       }
 
+      XBitSet newsep = separator.unionWith(iBlock.block.separator);
+
       ArrayList<Block> blockList = getBlocks(newsep);
 
       Block fullBlock = null;
@@ -401,69 +638,59 @@ public class IODecomposer {
         if (block.separator.cardinality() == nSep) {
           if (fullBlock != null) {
 //             minimal separator: treated elsewhere
-            return;
+            return null;
           }
           fullBlock = block;
         }
       }
 
       if (fullBlock == null) {
-//        if (!pmcCache.contains(newsep)) {  
-          PMC pmc = new PMC(newsep, blockList);
-          if (pmc.isValid) {
-//            pmcCache.add(newsep);
-            if (pmc.isReady()) {
-              pmc.endorse();
-            } 
-            else {
-              pendingEndorsers.add(pmc);
-            }
-//          }
-        }
+        return new Combination(newsep, new PMC(newsep, blockList), null);
       }
-
       else {
         if (newsep.cardinality() > targetWidth) {
-          return;
-        }
-        Oblock oBlock = oBlockCache.get(newsep);
-        if (oBlock == null) {
-          oBlock = new Oblock(newsep, fullBlock.component);
-          oBlockCache.put(newsep, oBlock);
-          oBlockSieve.put(fullBlock.component, newsep);
-          oBlock.crown();
+          return null;
         }
+        return new Combination(newsep, null, fullBlock);
       }
     }
 
-    void crown() {
+    /**
+     * Crowns this O-block with the potential maximal cliques
+     * of cardinality at least the given one.
+     */
+    void crown(int minCardinality) {
+      ArrayList<Callable<PMC>> tasks = new ArrayList<>();
+      int nSep = separator.cardinality();
       for (int v = separator.nextSetBit(0); v >= 0; 
           v = separator.nextSetBit(v + 1)) {
         if (DEBUG) {
           System.out.println("try crowing by " + v);
         }
 
-        XBitSet newsep = separator.unionWith(
-          g.neighborSet[v].intersectWith(openComponent));
-        if (newsep.cardinality() <= targetWidth + 1) {
+        // the separator is disjoint from the open component, so
+        // the size of the candidate is known before it is created
+        int size = nSep +
+          g.neighborSet[v].intersectionCardinality(openComponent);
+        if (size <= targetWidth + 1 && size >= minCardinality) {
+          final XBitSet newsep = separator.unionWith(
+            g.neighborSet[v].intersectWith(openComponent));
 
           if (DEBUG) {
             System.out.println("crowing by " + v + ":" + this);
           }
-//          if (!pmcCache.contains(newsep)) {  
-            PMC pmc = new PMC(newsep);
-            if (pmc.isValid) {
-//              pmcCache.add(newsep);
-              if (pmc.isReady()) {
-                pmc.endorse();
-              } 
-              else {
-                pendingEndorsers.add(pmc);
-              }
-//            }
-          }
+          tasks.add(new Callable<PMC>() {
+            @Override
+            public PMC call() {
+              return new PMC(newsep);
+            }
+          });
         }
       }
+
+      for (PMC pmc: evaluate(tasks)) {
+        admit(pmc);
+      }
     }
 
     public String toString() {
@@ -475,6 +702,31 @@ public class IODecomposer {
     }
   }
 
+  /**
+   * The outcome of plugging an I-block into an O-block:
+   * either a potential maximal clique or a new O-block
+   * with the given full block.
+   */
+  class Combination {
+    XBitSet separator;
+    PMC pmc;
+    Block fullBlock;
+
+    Combination(XBitSet separator, PMC pmc, Block fullBlock) {
+      this.separator = separator;
+      this.pmc = pmc;
+      this.fullBlock = fullBlock;
+    }
+
+    void apply() {
+      if (pmc != null) {
+        admit(pmc);
+        return;
+      }
+      makeOblock(separator, fullBlock.component);
+    }
+  }
+
   class PMC {
     XBitSet vertexSet;
     Block inbounds[];
@@ -10,6 +10,7 @@ import java.io.File;
 
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.PrintStream;
 import java.lang.management.GarbageCollectorMXBean;
 import java.lang.management.ManagementFactory;
@@ -17,7 +18,13 @@ import java.lang.management.ThreadMXBean;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class MainDecomposer {
   private static boolean VERBOSE = false;
@@ -27,6 +34,58 @@ public class MainDecomposer {
 
   private static long time0;
 
+  /**
+   * the number of threads used for solving the bags
+   */
+  private static int parallelism = 1;
+
+  /**
+   * Sets the number of threads, capped by the number of available
+   * processors: threads beyond them only add the overhead of the
+   * pools, and with one thread the search runs sequentially,
+   * without pools or synchronized maps.
+   * @param parallelism the number of threads
+   */
+  public static void setParallelism(int parallelism) {
+    MainDecomposer.parallelism = Math.max(1, Math.min(parallelism,
+        Runtime.getRuntime().availableProcessors()));
+  }
+
+  /**
+   * the greedy modes raced with the default ones for the
+   * initial decomposition
+   */
+  private static ArrayList<GreedyDecomposer.Mode> extraModes = 
+      new ArrayList<>();
+
+  public static void addGreedyMode(GreedyDecomposer.Mode mode) {
+    if (!extraModes.contains(mode)) {
+      extraModes.add(mode);
+    }
+  }
+
+  /**
+   * the ordering in which the vertices of each connected component
+   * are renumbered before it is decomposed; the input numbering
+   * is kept by default
+   */
+  private static VertexOrdering.Strategy ordering = 
+      VertexOrdering.Strategy.input;
+
+  public static void setOrdering(VertexOrdering.Strategy ordering) {
+    MainDecomposer.ordering = ordering;
+  }
+
+  /**
+   * whether a component or a bag isomorphic to one already solved
+   * in the same decomposition reuses its solution
+   */
+  private static boolean reuseIsomorphic = true;
+
+  public static void setReuseIsomorphic(boolean reuseIsomorphic) {
+    MainDecomposer.reuseIsomorphic = reuseIsomorphic;
+  }
+
   public static TreeDecomposition decompose(Graph g) {
     log("decompose n = " + g.n);
     if (g.n == 0) {
@@ -34,11 +93,43 @@ public class MainDecomposer {
       return td;
     }
 
+    Reducer reducer = new Reducer(g, LowerBound.of(g));
+    if (reducer.reduce() > 0) {
+      Graph kernel = reducer.getKernel();
+      log(reducer.eliminatedCount() + 
+          " vertices eliminated by the reduction rules, kernel n = " +
+          kernel.n + ", lower bound = " + reducer.lowerBound());
+      TreeDecomposition td = 
+          decomposeComponents(kernel, reducer.lowerBound());
+      if (td == null) {
+        return null;
+      }
+      return reducer.liftBack(td);
+    }
+    return decomposeComponents(g, reducer.lowerBound());
+  }
+
+  /**
+   * Decomposes each connected component of the graph, renumbered
+   * in the ordering.
+   * A component isomorphic to one already decomposed is not
+   * decomposed again: the decomposition of the other is mapped
+   * to it.  The bags of the components share a cache in the same way.
+   * @param lowerBound the width up to which the decomposition
+   * need not be improved
+   */
+  private static TreeDecomposition decomposeComponents(Graph g,
+      int lowerBound) {
+    if (g.n == 0) {
+      return new TreeDecomposition(0, -1, g);
+    }
+
     ArrayList<XBitSet> components = g.getComponents(new XBitSet());
+    IsomorphismCache<Bag> bagCache = new IsomorphismCache<>();
     
     int nc = components.size();
-    if (nc == 1) {
-      return decomposeConnected(g);      
+    if (nc == 1 && ordering == VertexOrdering.Strategy.input) {
+      return decomposeConnected(g, lowerBound, bagCache);      
     }
     
     int invs[][] = new int[nc][];
@@ -48,35 +139,94 @@ public class MainDecomposer {
       XBitSet compo = components.get(i);
       int nv = compo.cardinality();
       graphs[i] = new Graph(nv);
-      invs[i] = new int[nv];
+      invs[i] = VertexOrdering.order(g, compo, ordering);
       int conv[] = new int[g.n];
-      int k = 0;
-      for (int v = 0; v < g.n; v++) {
-        if (compo.get(v)) {
-          conv[v] = k;
-          invs[i][k] = v;
-          k++;
-        }
-        else {
-          conv[v] = -1;
-        }
+      Arrays.fill(conv, -1);
+      for (int k = 0; k < nv; k++) {
+        conv[invs[i][k]] = k;
       }
       graphs[i].inheritEdges(g, conv, invs[i]);
     }
 
+    if (nc == 1) {
+      TreeDecomposition td = 
+          decomposeConnected(graphs[0], lowerBound, bagCache);
+      if (td == null) {
+        return null;
+      }
+      return renumberBack(td, invs[0], g);
+    }
+
     TreeDecomposition td = new TreeDecomposition(0, 0, g);
+    IsomorphismCache<TreeDecomposition> cache = new IsomorphismCache<>();
     
     for (int i = 0; i < nc; i++) {
-      TreeDecomposition td1 = decomposeConnected(graphs[i]);
+      IsomorphismCache.Hit<TreeDecomposition> hit = 
+          reuseIsomorphic ? cache.get(graphs[i]) : null;
+      if (hit != null) {
+        log("component " + i + " is isomorphic to one decomposed");
+        int conv[] = new int[hit.map.length];
+        for (int v = 0; v < conv.length; v++) {
+          conv[v] = invs[i][hit.map[v]];
+        }
+        td.combineWith(hit.value, conv, null);
+        continue;
+      }
+      TreeDecomposition td1 = 
+          decomposeConnected(graphs[i], lowerBound, bagCache);
       if (td1 == null) {
         return null;
       }
+      if (reuseIsomorphic) {
+        cache.put(graphs[i], td1);
+      }
       td.combineWith(td1, invs[i], null);
     }
     return td;
   }
   
+  /**
+   * Renumbers the vertices in the bags of a decomposition of
+   * a renumbered copy of g back to those of g, in place.
+   */
+  private static TreeDecomposition renumberBack(TreeDecomposition td,
+      int inv[], Graph g) {
+    for (int i = 1; i <= td.nb; i++) {
+      int[] bag = td.bags[i];
+      for (int j = 0; j < bag.length; j++) {
+        bag[j] = inv[bag[j]];
+      }
+    }
+    td.bagSets = null;
+    td.g = g;
+    return td;
+  }
+
   public static TreeDecomposition decomposeConnected(Graph g) {
+    return decomposeConnected(g, 0);
+  }
+
+  /**
+   * Decomposes the connected graph, not trying to bring the width
+   * below the given bound, which is typically a lower bound on the
+   * treewidth of the graph this one is a kernel of.
+   * The bound is raised to the lower bound computed for this graph.
+   * @param g the connected graph
+   * @param lowerBound the width up to which the decomposition
+   * need not be improved
+   */
+  public static TreeDecomposition decomposeConnected(Graph g, 
+      int lowerBound) {
+    return decomposeConnected(g, lowerBound, 
+        new IsomorphismCache<Bag>());
+  }
+
+  /**
+   * Decomposes the connected graph, reusing the solutions of
+   * the bags in the cache for the bags isomorphic to them.
+   */
+  private static TreeDecomposition decomposeConnected(Graph g, 
+      int lowerBound, IsomorphismCache<Bag> bagCache) {
     log("decomposeConnected: n = " + g.n);
 
     if (g.n <= 2) {
@@ -84,43 +234,24 @@ public class MainDecomposer {
       td.addBag(g.all.toArray());
       return td;
     }
+
+    lowerBound = Math.max(lowerBound, LowerBound.of(g));
+    log("lower bound = " + lowerBound);
     
     Bag best = null;
     
-    GreedyDecomposer.Mode[] modes = 
-        new GreedyDecomposer.Mode[]{
+    ArrayList<GreedyDecomposer.Mode> modes = new ArrayList<>(Arrays.asList( 
             GreedyDecomposer.Mode.fill,
             GreedyDecomposer.Mode.defect,
             GreedyDecomposer.Mode.degree
-            };
+            ));
+    for (GreedyDecomposer.Mode mode: extraModes) {
+      if (!modes.contains(mode)) {
+        modes.add(mode);
+      }
+    }
     
-    for (GreedyDecomposer.Mode mode: modes) { 
-      Bag whole = new Bag(g); 
-
-      GreedyDecomposer mfd = new GreedyDecomposer(whole, mode);
-//      GreedyDecomposer mfd = new GreedyDecomposer(whole);
-
-      mfd.decompose();
-
-      log("greedy decomposition (" + mode + ") obtained with " +
-            whole.nestedBags.size() + " bags and width " + 
-            whole.width);
-
-      whole.detectSafeSeparators();
-
-      log(whole.countSafeSeparators() + " safe separators found ");
-
-      whole.validate();
-      
-      whole.pack();
-      
-      whole.validate();
-
-      log("the decomposition packed into " +
-            whole.nestedBags.size() + " bags, separatorWidth = " + 
-            whole.separatorWidth + ", max bag size = " + 
-            whole.maxNestedBagSize());
-
+    for (Bag whole: packGreedily(g, modes)) { 
       if (best == null ||
           whole.maxNestedBagSize() < best.maxNestedBagSize()) {
         best = whole;
@@ -130,19 +261,7 @@ public class MainDecomposer {
    
     //    whole.dump();
 
-    int lowestPossible = best.separatorWidth;
-    
-    for (Bag bag: best.nestedBags) {
-      if (bag.getWidth() > lowestPossible) {
-        bag.makeRefinable();
-        IODecomposer mtd = new IODecomposer(bag, g.minDegree(), g.n - 1);
-        mtd.decompose();
-        int w = bag.getWidth();
-        if (w > lowestPossible) {
-          lowestPossible = w;
-        }
-      }
-    }
+    solveBags(best, lowerBound, g.n - 1, bagCache);
     
     log("flattening");
     
@@ -156,6 +275,207 @@ public class MainDecomposer {
     return best.toTreeDecomposition();
   }
   
+  /**
+   * Computes a greedy decomposition of the graph in each of the
+   * given modes and packs it along its safe separators.
+   * The modes are run concurrently, each on its own copy of
+   * the graph, if more than one thread is allowed.
+   * @return the packed decompositions in the order of the modes
+   */
+  private static ArrayList<Bag> packGreedily(final Graph g, 
+      ArrayList<GreedyDecomposer.Mode> modes) {
+    ArrayList<Bag> result = new ArrayList<>();
+    if (parallelism <= 1) {
+      for (GreedyDecomposer.Mode mode: modes) {
+        result.add(packGreedily(g, mode));
+      }
+      return result;
+    }
+
+    ArrayList<Callable<Bag>> tasks = new ArrayList<>();
+    for (final GreedyDecomposer.Mode mode: modes) {
+      tasks.add(new Callable<Bag>() {
+        @Override
+        public Bag call() {
+          return packGreedily(g.copy(), mode);
+        }
+      });
+    }
+
+    ForkJoinPool pool = new ForkJoinPool(parallelism);
+    try {
+      for (Future<Bag> future: pool.invokeAll(tasks)) {
+        result.add(future.get());
+      }
+    } catch (InterruptedException | ExecutionException e) {
+      throw new RuntimeException(e);
+    } finally {
+      pool.shutdown();
+    }
+    return result;
+  }
+
+  private static Bag packGreedily(Graph g, GreedyDecomposer.Mode mode) {
+    Bag whole = new Bag(g); 
+
+    GreedyDecomposer mfd = new GreedyDecomposer(whole, mode);
+//    GreedyDecomposer mfd = new GreedyDecomposer(whole);
+
+    mfd.decompose();
+
+    log("greedy decomposition (" + mode + ") obtained with " +
+          whole.nestedBags.size() + " bags and width " + 
+          whole.width);
+
+    whole.detectSafeSeparators();
+
+    log(whole.countSafeSeparators() + " safe separators found ");
+
+    whole.validate();
+    
+    whole.pack();
+    
+    whole.validate();
+
+    log("the decomposition packed into " +
+          whole.nestedBags.size() + " bags, separatorWidth = " + 
+          whole.separatorWidth + ", max bag size = " + 
+          whole.maxNestedBagSize());
+
+    return whole;
+  }
+
+  /**
+   * Decomposes the nested bags of the packed decomposition
+   * that are wider than needed.
+   * The bags are independent of each other and are solved
+   * largest first, on a pool if more than one thread is allowed.
+   * The width required so far is shared among the bags so that
+   * each search starts from that width, skipping the widths
+   * that cannot reduce the width of the whole decomposition.
+   * The widths up to the lower bound are skipped in the same way,
+   * and so are those up to the lower bound computed for each bag,
+   * since the treewidth of the graph is the largest treewidth
+   * of the bags along the safe separators.
+   * A bag whose local graph is isomorphic to that of a bag solved
+   * before, or to be solved here, is not solved: the solution of
+   * the other is copied to it once available.
+   * The solution of a bag, valid for any target width, is cached
+   * as a copy since the bag itself is flattened afterwards.
+   */
+  private static void solveBags(Bag whole, final int lowerBound, 
+      final int upperBound, IsomorphismCache<Bag> cache) {
+    final AtomicInteger lowestPossible = 
+        new AtomicInteger(Math.max(whole.separatorWidth, lowerBound));
+
+    ArrayList<Bag> candidates = new ArrayList<>();
+    for (Bag bag: whole.nestedBags) {
+      if (bag.getWidth() > lowestPossible.get()) {
+        candidates.add(bag);
+      }
+    }
+    Collections.sort(candidates, new Comparator<Bag>() {
+      @Override
+      public int compare(Bag b1, Bag b2) {
+        return b2.size - b1.size;
+      }
+    });
+
+    ArrayList<Bag> bags = new ArrayList<>();
+    ArrayList<Bag> solutions = new ArrayList<>();
+    ArrayList<Bag> copies = new ArrayList<>();
+    ArrayList<IsomorphismCache.Hit<Bag>> hits = new ArrayList<>();
+    for (Bag bag: candidates) {
+      bag.makeRefinable();
+      IsomorphismCache.Hit<Bag> hit = 
+          reuseIsomorphic ? cache.get(bag.graph) : null;
+      if (hit != null) {
+        copies.add(bag);
+        hits.add(hit);
+        continue;
+      }
+      bags.add(bag);
+      if (reuseIsomorphic) {
+        Bag solution = new Bag(bag.graph);
+        cache.put(bag.graph, solution);
+        solutions.add(solution);
+      }
+    }
+    if (!copies.isEmpty()) {
+      log(copies.size() + " bags isomorphic to others, " + 
+          bags.size() + " bags to solve");
+    }
+
+    solveBags(bags, lowerBound, upperBound, lowestPossible);
+
+    for (int i = 0; i < solutions.size(); i++) {
+      solutions.get(i).copyDecompositionOf(bags.get(i), null);
+    }
+    for (int i = 0; i < copies.size(); i++) {
+      Bag bag = copies.get(i);
+      bag.copyDecompositionOf(hits.get(i).value, hits.get(i).map);
+      raise(lowestPossible, bag.getWidth());
+    }
+  }
+
+  private static void solveBags(ArrayList<Bag> bags, 
+      final int lowerBound, final int upperBound,
+      final AtomicInteger lowestPossible) {
+    if (parallelism <= 1 || bags.size() <= 1) {
+      for (Bag bag: bags) {
+        solveBag(bag, lowerBound, upperBound, 
+            lowestPossible, parallelism);
+      }
+      return;
+    }
+
+    ArrayList<Callable<Void>> tasks = new ArrayList<>();
+    for (final Bag bag: bags) {
+      tasks.add(new Callable<Void>() {
+        @Override
+        public Void call() {
+          solveBag(bag, lowerBound, upperBound, lowestPossible, 1);
+          return null;
+        }
+      });
+    }
+
+    ForkJoinPool pool = new ForkJoinPool(parallelism);
+    try {
+      for (Future<Void> future: pool.invokeAll(tasks)) {
+        future.get();
+      }
+    } catch (InterruptedException | ExecutionException e) {
+      throw new RuntimeException(e);
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  private static void solveBag(Bag bag, int lowerBound, int upperBound,
+      AtomicInteger lowestPossible, int parallelism) {
+    if (bag.size - 1 <= lowestPossible.get()) {
+      // kept whole, as the decomposer would leave it
+      bag.nestedBags = null;
+      bag.separators = null;
+      return;
+    }
+    bag.lowerBound = Math.max(lowerBound, LowerBound.of(bag.graph));
+    raise(lowestPossible, bag.lowerBound);
+    IODecomposer mtd = new IODecomposer(bag, bag.lowerBound, upperBound);
+    mtd.setParallelism(parallelism);
+    mtd.setSharedWidth(lowestPossible);
+    mtd.decompose();
+    raise(lowestPossible, bag.getWidth());
+  }
+
+  private static void raise(AtomicInteger width, int w) {
+    int current = width.get();
+    while (w > current && !width.compareAndSet(current, w)) {
+      current = width.get();
+    }
+  }
+
   static void log(String message) {
     if (VERBOSE) {
       System.out.println(message);
@@ -163,6 +483,32 @@ public class MainDecomposer {
   }
 
   public static void main(String[] args) {
+    boolean server = false;
+    for (int i = 0; i < args.length; i++) {
+      if ("-server".equals(args[i])) {
+        server = true;
+      }
+      else if ("-t".equals(args[i]) && i + 1 < args.length) {
+        setParallelism(Integer.parseInt(args[++i]));
+      }
+      else if ("-g".equals(args[i]) && i + 1 < args.length) {
+        addGreedyMode(GreedyDecomposer.Mode.valueOf(args[++i]));
+      }
+      else if ("-o".equals(args[i]) && i + 1 < args.length) {
+        setOrdering(VertexOrdering.Strategy.valueOf(args[++i]));
+      }
+      else if ("-noiso".equals(args[i])) {
+        setReuseIsomorphic(false);
+      }
+    }
+    if (server) {
+      try {
+        new DecompositionServer(System.in).serve();
+      } catch (IOException e) {
+        e.printStackTrace();
+      }
+      return;
+    }
     Graph g = Graph.readGraph(System.in);
     TreeDecomposition td = decompose(g);
     td.writeTo(System.out);
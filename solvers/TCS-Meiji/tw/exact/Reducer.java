@@ -0,0 +1,519 @@
+/*
+ * Copyright (c) 2017, Hisao Tamaki
+ */
+package tw.exact;
+
+import java.util.Arrays;
+
+/**
+ * Safe reduction rules for treewidth, applied to a {@code Graph}
+ * before it is decomposed.
+ * <p>
+ * A vertex is eliminated, that is, removed after its neighborhood is
+ * made a clique, when one of the following rules applies to it,
+ * where {@code low} is the running lower bound on the treewidth:
+ * <ul>
+ * <li> islet and twig: the vertex has degree at most 1;
+ * <li> simplicial: its neighborhood is a clique; {@code low} is
+ * raised to its degree;
+ * <li> almost simplicial: its degree is at most {@code low} and all
+ * but one of its neighbors form a clique; this includes the series
+ * rule (degree 2, {@code low >= 2}) and the triangle rule
+ * (degree 3 with two adjacent neighbors, {@code low >= 3});
+ * <li> buddy: {@code low >= 3} and it has degree 3 and another
+ * vertex of degree 3 has the same neighborhood.
+ * </ul>
+ * Each of these eliminations preserves the treewidth of the graph,
+ * or keeps it at most {@code low}: the treewidth of the original
+ * graph is the maximum of {@code low} and the treewidth of the
+ * remaining graph, called the kernel.
+ * <p>
+ * The eliminations are recorded, so that a tree-decomposition of the
+ * kernel is lifted back to one of the original graph with
+ * {@link #liftBack(TreeDecomposition)}: each eliminated vertex
+ * {@code v} gets the bag consisting of {@code v} and its
+ * neighborhood at the time of the elimination.
+ *
+ * @author  Hisao Tamaki
+ */
+public class Reducer {
+  /**
+   * the graph reduced
+   */
+  private final Graph g;
+
+  /**
+   * the running lower bound on the treewidth
+   */
+  private int low;
+
+  /**
+   * the working adjacency lists; those of an eliminated vertex
+   * are dropped
+   */
+  private int[][] adj;
+  private int[] deg;
+
+  /**
+   * the eliminated vertices in the order of elimination and
+   * their neighborhoods at that time
+   */
+  private int[] order;
+  private int[][] eliminatedNeighbors;
+  private int ne;
+
+  /**
+   * the elimination index of each vertex, or -1 for a vertex
+   * in the kernel
+   */
+  private int[] position;
+
+  /**
+   * the vertices whose rules are to be checked
+   */
+  private int[] queue;
+  private boolean[] queued;
+  private int head;
+  private int queueSize;
+
+  private int[] stamp;
+  private int stampValue;
+  private int[] missing;
+
+  /**
+   * set when an elimination adds a fill edge, which may make
+   * a vertex not in the queue simplicial
+   */
+  private boolean filled;
+
+  private Graph kernel;
+  private int[] inv;
+
+  /**
+   * Constructs a reducer for the given graph, with no lower bound
+   * known in advance.
+   * @param g the graph to be reduced
+   */
+  public Reducer(Graph g) {
+    this(g, 0);
+  }
+
+  /**
+   * Constructs a reducer for the given graph.
+   * @param g the graph to be reduced
+   * @param lowerBound a lower bound on the treewidth of {@code g}
+   */
+  public Reducer(Graph g, int lowerBound) {
+    this.g = g;
+    this.low = lowerBound;
+  }
+
+  /**
+   * Applies the rules as long as one of them applies.
+   * @return the number of vertices eliminated
+   */
+  public int reduce() {
+    int n = g.n;
+    adj = new int[n][];
+    deg = new int[n];
+    for (int v = 0; v < n; v++) {
+      deg[v] = g.degree[v];
+      adj[v] = deg[v] == 0 ? new int[1] : 
+        Arrays.copyOf(g.neighbor[v], deg[v]);
+    }
+    order = new int[n];
+    eliminatedNeighbors = new int[n][];
+    position = new int[n];
+    Arrays.fill(position, -1);
+    queue = new int[n];
+    queued = new boolean[n];
+    stamp = new int[n];
+    missing = new int[n];
+
+    for (int v = 0; v < n; v++) {
+      enqueue(v);
+    }
+    while (true) {
+      filled = false;
+      while (queueSize > 0) {
+        int v = queue[head];
+        head = (head + 1) % n;
+        queueSize--;
+        queued[v] = false;
+        if (position[v] < 0) {
+          tryRules(v);
+        }
+      }
+      if (!filled) {
+        break;
+      }
+      for (int v = 0; v < n; v++) {
+        if (position[v] < 0) {
+          enqueue(v);
+        }
+      }
+    }
+    queue = null;
+    queued = null;
+    missing = null;
+    return ne;
+  }
+
+  private void enqueue(int v) {
+    if (!queued[v]) {
+      queued[v] = true;
+      queue[(head + queueSize) % queue.length] = v;
+      queueSize++;
+    }
+  }
+
+  private void tryRules(int v) {
+    int d = deg[v];
+    if (d <= 1) {
+      eliminate(v);
+      return;
+    }
+    int[] nv = adj[v];
+
+    // a neighbor lying in a clique with the rest of the neighborhood
+    // has degree at least d - 1
+    int shallow = 0;
+    for (int i = 0; i < d; i++) {
+      if (deg[nv[i]] < d - 1) {
+        shallow++;
+      }
+    }
+    if (shallow >= 2 || shallow == 1 && d > low) {
+      if (d == 3 && low >= 3) {
+        tryBuddy(v);
+      }
+      return;
+    }
+
+    int s = nextStamp();
+    for (int i = 0; i < d; i++) {
+      stamp[nv[i]] = s;
+    }
+    long total = 0;
+    for (int i = 0; i < d; i++) {
+      int a = nv[i];
+      int[] na = adj[a];
+      int c = 0;
+      for (int j = 0; j < deg[a]; j++) {
+        if (stamp[na[j]] == s) {
+          c++;
+        }
+      }
+      missing[i] = d - 1 - c;
+      total += missing[i];
+    }
+    if (total == 0) {
+      if (d > low) {
+        low = d;
+      }
+      eliminate(v);
+      return;
+    }
+    if (d <= low) {
+      for (int i = 0; i < d; i++) {
+        if (2L * missing[i] == total) {
+          eliminate(v);
+          return;
+        }
+      }
+    }
+    if (d == 3 && low >= 3) {
+      tryBuddy(v);
+    }
+  }
+
+  /**
+   * eliminates v if another vertex of degree 3 has the same
+   * neighborhood as v, which has degree 3
+   */
+  private void tryBuddy(int v) {
+    int[] nv = adj[v];
+    int s = nextStamp();
+    for (int i = 0; i < 3; i++) {
+      stamp[nv[i]] = s;
+    }
+    int a = nv[0];
+    for (int j = 0; j < deg[a]; j++) {
+      int w = adj[a][j];
+      if (w == v || deg[w] != 3) {
+        continue;
+      }
+      int[] nw = adj[w];
+      if (stamp[nw[0]] == s && stamp[nw[1]] == s && stamp[nw[2]] == s) {
+        eliminate(v);
+        return;
+      }
+    }
+  }
+
+  private int nextStamp() {
+    if (++stampValue == Integer.MAX_VALUE) {
+      Arrays.fill(stamp, 0);
+      stampValue = 1;
+    }
+    return stampValue;
+  }
+
+  private void eliminate(int v) {
+    int d = deg[v];
+    int[] nv = Arrays.copyOf(adj[v], d);
+    if (d > low) {
+      low = d;
+    }
+    order[ne] = v;
+    eliminatedNeighbors[ne] = nv;
+    position[v] = ne;
+    ne++;
+    adj[v] = null;
+    deg[v] = 0;
+
+    for (int i = 0; i < d; i++) {
+      int a = nv[i];
+      removeAdjacency(a, v);
+      enqueue(a);
+    }
+    for (int i = 0; i < d; i++) {
+      int a = nv[i];
+      int s = nextStamp();
+      for (int j = 0; j < deg[a]; j++) {
+        stamp[adj[a][j]] = s;
+      }
+      for (int j = i + 1; j < d; j++) {
+        int b = nv[j];
+        if (stamp[b] != s) {
+          addAdjacency(a, b);
+          addAdjacency(b, a);
+          filled = true;
+        }
+      }
+    }
+  }
+
+  private void removeAdjacency(int a, int v) {
+    int[] na = adj[a];
+    for (int j = 0; j < deg[a]; j++) {
+      if (na[j] == v) {
+        na[j] = na[--deg[a]];
+        return;
+      }
+    }
+    throw new RuntimeException("!!" + v + " is not adjacent to " + a);
+  }
+
+  private void addAdjacency(int a, int b) {
+    if (deg[a] == adj[a].length) {
+      adj[a] = Arrays.copyOf(adj[a], 2 * deg[a]);
+    }
+    adj[a][deg[a]++] = b;
+  }
+
+  /**
+   * Returns the lower bound on the treewidth of the original
+   * graph, as raised by the eliminations.
+   */
+  public int lowerBound() {
+    return low;
+  }
+
+  /**
+   * Returns the number of vertices eliminated.
+   */
+  public int eliminatedCount() {
+    return ne;
+  }
+
+  /**
+   * Returns the kernel, the graph induced by the vertices not
+   * eliminated together with the fill edges, with the vertices
+   * renumbered in their original order.
+   * @return the kernel
+   */
+  public Graph getKernel() {
+    if (kernel != null) {
+      return kernel;
+    }
+    int n = g.n;
+    int[] conv = new int[n];
+    int nk = 0;
+    for (int v = 0; v < n; v++) {
+      conv[v] = position[v] < 0 ? nk++ : -1;
+    }
+    inv = new int[nk];
+    int[] start = new int[nk + 1];
+    for (int v = 0; v < n; v++) {
+      if (conv[v] >= 0) {
+        inv[conv[v]] = v;
+        start[conv[v] + 1] = start[conv[v]] + deg[v];
+      }
+    }
+    int[] adjacent = new int[start[nk]];
+    for (int k = 0; k < nk; k++) {
+      int v = inv[k];
+      for (int j = 0; j < deg[v]; j++) {
+        adjacent[start[k] + j] = conv[adj[v][j]];
+      }
+    }
+    kernel = new Graph(nk, start, adjacent);
+    adj = null;
+    deg = null;
+    return kernel;
+  }
+
+  /**
+   * Returns the original vertex of each vertex of the kernel.
+   */
+  public int[] kernelToOriginal() {
+    getKernel();
+    return inv;
+  }
+
+  /**
+   * Lifts a tree-decomposition of the kernel back to the original
+   * graph.
+   * The bags of the given decomposition keep their indices, and
+   * the bag of the ith eliminated vertex follows them.
+   * That bag is attached to the bag of the first vertex of its
+   * neighborhood eliminated after it or, if there is none, to a
+   * bag of the kernel containing the neighborhood.
+   * @param kernelTd a tree-decomposition of the kernel
+   * @return the tree-decomposition of the original graph
+   */
+  public TreeDecomposition liftBack(TreeDecomposition kernelTd) {
+    getKernel();
+    int kb = kernelTd.nb;
+    int nb = kb + ne;
+    TreeDecomposition td = new TreeDecomposition(nb, 0, g);
+    int width = -1;
+    for (int i = 1; i <= kb; i++) {
+      int[] kbag = kernelTd.bags[i];
+      int[] bag = new int[kbag.length];
+      for (int j = 0; j < bag.length; j++) {
+        bag[j] = inv[kbag[j]];
+      }
+      td.setBag(i, bag);
+      width = Math.max(width, bag.length - 1);
+    }
+
+    int root = kb > 0 ? 1 : nb;
+    int[] parent = new int[ne];
+    int[][] bagsOf = null;
+    for (int e = 0; e < ne; e++) {
+      int[] nv = eliminatedNeighbors[e];
+      int[] bag = Arrays.copyOf(nv, nv.length + 1);
+      bag[nv.length] = order[e];
+      td.setBag(kb + e + 1, bag);
+      width = Math.max(width, nv.length);
+
+      int first = -1;
+      for (int a: nv) {
+        if (position[a] >= 0 && (first < 0 || position[a] < first)) {
+          first = position[a];
+        }
+      }
+      if (first >= 0) {
+        parent[e] = kb + first + 1;
+      }
+      else if (nv.length > 0) {
+        if (bagsOf == null) {
+          bagsOf = bagsOfKernelVertices(kernelTd);
+        }
+        parent[e] = bagContaining(nv, bagsOf, td);
+      }
+      else if (kb + e + 1 != root) {
+        parent[e] = root;
+      }
+    }
+
+    for (int i = 1; i <= kb; i++) {
+      td.degree[i] = kernelTd.degree[i];
+    }
+    for (int e = 0; e < ne; e++) {
+      if (parent[e] > 0) {
+        td.degree[kb + e + 1]++;
+        td.degree[parent[e]]++;
+      }
+    }
+    for (int i = 1; i <= nb; i++) {
+      td.neighbor[i] = new int[td.degree[i]];
+      td.degree[i] = 0;
+    }
+    for (int i = 1; i <= kb; i++) {
+      for (int j = 0; j < kernelTd.degree[i]; j++) {
+        td.neighbor[i][td.degree[i]++] = kernelTd.neighbor[i][j];
+      }
+    }
+    for (int e = 0; e < ne; e++) {
+      int p = parent[e];
+      if (p > 0) {
+        int b = kb + e + 1;
+        td.neighbor[b][td.degree[b]++] = p;
+        td.neighbor[p][td.degree[p]++] = b;
+      }
+    }
+    td.width = width;
+    return td;
+  }
+
+  /**
+   * returns, for each kernel vertex, the indices of the kernel
+   * bags containing it
+   */
+  private int[][] bagsOfKernelVertices(TreeDecomposition kernelTd) {
+    int[] count = new int[inv.length];
+    for (int i = 1; i <= kernelTd.nb; i++) {
+      for (int k: kernelTd.bags[i]) {
+        count[k]++;
+      }
+    }
+    int[][] bagsOf = new int[inv.length][];
+    for (int k = 0; k < inv.length; k++) {
+      bagsOf[k] = new int[count[k]];
+      count[k] = 0;
+    }
+    for (int i = 1; i <= kernelTd.nb; i++) {
+      for (int k: kernelTd.bags[i]) {
+        bagsOf[k][count[k]++] = i;
+      }
+    }
+    return bagsOf;
+  }
+
+  /**
+   * returns the index of a kernel bag containing all the given
+   * vertices, all of which are in the kernel
+   */
+  private int bagContaining(int[] vertices, int[][] bagsOf,
+      TreeDecomposition td) {
+    int s = nextStamp();
+    for (int v: vertices) {
+      stamp[v] = s;
+    }
+    int[] candidates = bagsOf[kernelIndex(vertices[0])];
+    for (int i: candidates) {
+      int c = 0;
+      for (int v: td.bags[i]) {
+        if (stamp[v] == s) {
+          c++;
+        }
+      }
+      if (c == vertices.length) {
+        return i;
+      }
+    }
+    throw new RuntimeException("!!no kernel bag contains the " +
+        "neighborhood of an eliminated vertex");
+  }
+
+  private int kernelIndex(int v) {
+    int k = Arrays.binarySearch(inv, v);
+    if (k < 0) {
+      throw new RuntimeException("!!" + v + " is not in the kernel");
+    }
+    return k;
+  }
+}
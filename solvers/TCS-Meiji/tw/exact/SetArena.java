@@ -0,0 +1,159 @@
+/*
+ * Copyright (c) 2017, Hisao Tamaki
+ */
+package tw.exact;
+
+import java.nio.LongBuffer;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Compact storage for vertex sets over a fixed set of {@code n}
+ * vertices.
+ * Each stored set occupies {@code ceil(n / 64)} consecutive words
+ * of large {@code long[]} slabs and is referred to by an
+ * {@code int} handle, so that a stored set costs its words only,
+ * without the object headers and the bookkeeping fields of an
+ * {@code XBitSet} and its array.
+ * Stored sets are immutable; they are read through the handle or
+ * turned back into an {@code XBitSet} when needed.
+ * Sets are copied in and out a word at a time.
+ * <p>
+ * Nothing is freed before the arena itself, which is meant to live
+ * as long as the search that fills it, such as an
+ * {@link IODecomposer} run.
+ * <p>
+ * Adding is synchronized if the arena is created as concurrent;
+ * a handle may be read by any thread that has obtained it after
+ * it was added.
+ *
+ * @author  Hisao Tamaki
+ */
+public class SetArena {
+  private static final int SLAB_WORDS = 1 << 16;
+
+  private final int n;
+  private final int words;
+  private final int setsPerSlab;
+  private final boolean concurrent;
+  private long[][] slabs;
+  private int count;
+
+  /**
+   * Creates an empty arena for subsets of {0, ..., n - 1}.
+   * @param n the number of vertices
+   * @param concurrent {@code true} if sets are to be added
+   * from more than one thread
+   */
+  public SetArena(int n, boolean concurrent) {
+    this.n = n;
+    this.concurrent = concurrent;
+    this.words = Math.max(1, (n + 63) >>> 6);
+    this.setsPerSlab = Math.max(1, SLAB_WORDS / words);
+    this.slabs = new long[1][];
+  }
+
+  /**
+   * Stores a copy of the given set.
+   * @param set the set to be stored; it must be a subset of
+   * {0, ..., n - 1}
+   * @return the handle of the stored set
+   */
+  public int add(XBitSet set) {
+    long[] w = set.toLongArray();
+    if (concurrent) {
+      synchronized (this) {
+        return add(w);
+      }
+    }
+    return add(w);
+  }
+
+  private int add(long[] w) {
+    int handle = count;
+    int s = handle / setsPerSlab;
+    if (s == slabs.length) {
+      slabs = Arrays.copyOf(slabs, 2 * s);
+    }
+    if (slabs[s] == null) {
+      slabs[s] = new long[setsPerSlab * words];
+    }
+    long[] slab = slabs[s];
+    int base = (handle % setsPerSlab) * words;
+    System.arraycopy(w, 0, slab, base, Math.min(w.length, words));
+    count++;
+    return handle;
+  }
+
+  /**
+   * Returns a new {@code XBitSet} holding the stored set.
+   * @param handle the handle of the set
+   * @return the set
+   */
+  public XBitSet toXBitSet(int handle) {
+    long[] slab = slabs[handle / setsPerSlab];
+    int base = (handle % setsPerSlab) * words;
+    XBitSet result = new XBitSet(n);
+    result.or(BitSet.valueOf(LongBuffer.wrap(slab, base, words)));
+    return result;
+  }
+
+  /**
+   * Returns {@code true} if the stored set contains the vertex.
+   */
+  public boolean get(int handle, int v) {
+    long[] slab = slabs[handle / setsPerSlab];
+    int base = (handle % setsPerSlab) * words;
+    return (slab[base + (v >>> 6)] & (1L << v)) != 0;
+  }
+
+  /**
+   * Returns {@code true} if the stored set equals the given set,
+   * without creating a set.
+   */
+  public boolean equals(int handle, XBitSet set) {
+    long[] slab = slabs[handle / setsPerSlab];
+    int base = (handle % setsPerSlab) * words;
+    int c = 0;
+    for (int v = set.nextSetBit(0); v >= 0; v = set.nextSetBit(v + 1)) {
+      if (v >= n || (slab[base + (v >>> 6)] & (1L << v)) == 0) {
+        return false;
+      }
+      c++;
+    }
+    return c == cardinality(handle);
+  }
+
+  /**
+   * Returns the cardinality of the stored set.
+   */
+  public int cardinality(int handle) {
+    long[] slab = slabs[handle / setsPerSlab];
+    int base = (handle % setsPerSlab) * words;
+    int c = 0;
+    for (int i = 0; i < words; i++) {
+      c += Long.bitCount(slab[base + i]);
+    }
+    return c;
+  }
+
+  /**
+   * Returns the number of sets stored.
+   */
+  public synchronized int size() {
+    return count;
+  }
+
+  /**
+   * Returns the number of words allocated for the slabs.
+   */
+  public synchronized long allocatedWords() {
+    long total = 0;
+    for (long[] slab: slabs) {
+      if (slab != null) {
+        total += slab.length;
+      }
+    }
+    return total;
+  }
+}
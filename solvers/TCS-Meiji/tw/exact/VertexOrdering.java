@@ -0,0 +1,251 @@
+/*
+ * Copyright (c) 2017, Hisao Tamaki
+ */
+package tw.exact;
+
+import java.util.Arrays;
+
+/**
+ * Orderings of the vertices of a graph, used to renumber a graph
+ * before it is decomposed.
+ * The vertex sets of the decomposition are bitsets, whose words are
+ * compared and combined one at a time, and the block sieves branch
+ * on the words of the component bitsets, so that the numbering
+ * affects both.
+ * The Cuthill-McKee orderings give adjacent vertices close numbers,
+ * keeping the components within few words and letting the blocks
+ * of a region share the prefixes of their labels; this makes the
+ * sieves smaller but, as a sieve is pruned word by word, not
+ * necessarily faster to query than a scattered numbering.
+ *
+ * @author  Hisao Tamaki
+ */
+public class VertexOrdering {
+  public static enum Strategy {
+    input, cuthillMcKee, reverseCuthillMcKee, degeneracy
+  }
+
+  /**
+   * Orders the given vertices in the given strategy.
+   * @param g the graph
+   * @param vertices the vertices to be ordered
+   * @param strategy the ordering strategy
+   * @return the vertices in the order
+   */
+  public static int[] order(Graph g, XBitSet vertices, Strategy strategy) {
+    switch (strategy) {
+    case cuthillMcKee:
+      return cuthillMcKee(g, vertices);
+    case reverseCuthillMcKee:
+      return reverseCuthillMcKee(g, vertices);
+    case degeneracy:
+      return degeneracy(g, vertices);
+    default:
+      return vertices.toArray();
+    }
+  }
+
+  /**
+   * Orders the given vertices in the Cuthill-McKee order:
+   * each connected part is searched breadth first from a
+   * pseudo-peripheral vertex, visiting the neighbors of a vertex
+   * in the increasing order of their degrees.
+   * @param g the graph
+   * @param vertices the vertices to be ordered
+   * @return the vertices in the order
+   */
+  public static int[] cuthillMcKee(Graph g, XBitSet vertices) {
+    int k = vertices.cardinality();
+    int[] order = new int[k];
+    int[] level = new int[g.n];
+    Arrays.fill(level, -1);
+    boolean[] visited = new boolean[g.n];
+    int m = 0;
+    for (int v = vertices.nextSetBit(0); v >= 0;
+        v = vertices.nextSetBit(v + 1)) {
+      if (visited[v]) {
+        continue;
+      }
+      int start = peripheral(g, vertices, v, order, m, level);
+      m = breadthFirst(g, vertices, start, order, m, visited);
+    }
+    return order;
+  }
+
+  /**
+   * Orders the given vertices in the reverse of the Cuthill-McKee
+   * order.
+   * @param g the graph
+   * @param vertices the vertices to be ordered
+   * @return the vertices in the order
+   */
+  public static int[] reverseCuthillMcKee(Graph g, XBitSet vertices) {
+    int[] order = cuthillMcKee(g, vertices);
+    for (int i = 0, j = order.length - 1; i < j; i++, j--) {
+      int t = order[i];
+      order[i] = order[j];
+      order[j] = t;
+    }
+    return order;
+  }
+
+  /**
+   * returns a pseudo-peripheral vertex of the connected part of v,
+   * found by repeated breadth first searches from a vertex of
+   * the last level, which is of minimum degree
+   */
+  private static int peripheral(Graph g, XBitSet vertices, int v,
+      int[] queue, int from, int[] level) {
+    int start = v;
+    int depth = -1;
+    while (true) {
+      int end = search(g, vertices, start, queue, from, level);
+      int last = level[queue[end - 1]];
+      int next = queue[end - 1];
+      for (int i = end - 1; i >= from && level[queue[i]] == last; i--) {
+        if (g.degree[queue[i]] < g.degree[next]) {
+          next = queue[i];
+        }
+      }
+      for (int i = from; i < end; i++) {
+        level[queue[i]] = -1;
+      }
+      if (last <= depth) {
+        return start;
+      }
+      depth = last;
+      start = next;
+    }
+  }
+
+  /**
+   * a plain breadth first search recording the levels, in the part
+   * of the queue from the given index; returns the end of the queue
+   */
+  private static int search(Graph g, XBitSet vertices, int s, int[] queue,
+      int from, int[] level) {
+    int end = from;
+    queue[end++] = s;
+    level[s] = 0;
+    for (int i = from; i < end; i++) {
+      int u = queue[i];
+      for (int j = 0; j < g.degree[u]; j++) {
+        int w = g.neighbor[u][j];
+        if (level[w] < 0 && vertices.get(w)) {
+          level[w] = level[u] + 1;
+          queue[end++] = w;
+        }
+      }
+    }
+    return end;
+  }
+
+  private static int breadthFirst(Graph g, XBitSet vertices, int s,
+      int[] order, int m, boolean[] visited) {
+    int[] adjacent = new int[g.n];
+    order[m++] = s;
+    visited[s] = true;
+    for (int i = m - 1; i < m; i++) {
+      int u = order[i];
+      int c = 0;
+      for (int j = 0; j < g.degree[u]; j++) {
+        int w = g.neighbor[u][j];
+        if (!visited[w] && vertices.get(w)) {
+          visited[w] = true;
+          adjacent[c++] = w;
+        }
+      }
+      sortByDegree(g, adjacent, c);
+      System.arraycopy(adjacent, 0, order, m, c);
+      m += c;
+    }
+    return m;
+  }
+
+  private static void sortByDegree(Graph g, int[] a, int c) {
+    for (int i = 1; i < c; i++) {
+      int x = a[i];
+      int j = i - 1;
+      while (j >= 0 && (g.degree[a[j]] > g.degree[x] ||
+          g.degree[a[j]] == g.degree[x] && a[j] > x)) {
+        a[j + 1] = a[j];
+        j--;
+      }
+      a[j + 1] = x;
+    }
+  }
+
+  /**
+   * Orders the given vertices in the order in which they are
+   * removed when a vertex of minimum degree in the subgraph
+   * induced by the remaining vertices is removed repeatedly.
+   * @param g the graph
+   * @param vertices the vertices to be ordered
+   * @return the vertices in the order
+   */
+  public static int[] degeneracy(Graph g, XBitSet vertices) {
+    int k = vertices.cardinality();
+    int[] order = new int[k];
+    int[] deg = new int[g.n];
+    int[] head = new int[g.n];
+    int[] next = new int[g.n];
+    int[] prev = new int[g.n];
+    boolean[] removed = new boolean[g.n];
+    Arrays.fill(head, -1);
+    for (int v = vertices.nextSetBit(0); v >= 0;
+        v = vertices.nextSetBit(v + 1)) {
+      for (int j = 0; j < g.degree[v]; j++) {
+        if (vertices.get(g.neighbor[v][j])) {
+          deg[v]++;
+        }
+      }
+    }
+    for (int v = vertices.previousSetBit(g.n - 1); v >= 0;
+        v = vertices.previousSetBit(v - 1)) {
+      link(v, deg, head, next, prev);
+    }
+    int min = 0;
+    for (int m = 0; m < k; m++) {
+      while (head[min] < 0) {
+        min++;
+      }
+      int v = head[min];
+      unlink(v, deg, head, next, prev);
+      removed[v] = true;
+      order[m] = v;
+      for (int j = 0; j < g.degree[v]; j++) {
+        int w = g.neighbor[v][j];
+        if (!removed[w] && vertices.get(w)) {
+          unlink(w, deg, head, next, prev);
+          deg[w]--;
+          link(w, deg, head, next, prev);
+        }
+      }
+      min = Math.max(0, min - 1);
+    }
+    return order;
+  }
+
+  private static void link(int v, int[] deg, int[] head, int[] next,
+      int[] prev) {
+    prev[v] = -1;
+    next[v] = head[deg[v]];
+    if (head[deg[v]] >= 0) {
+      prev[head[deg[v]]] = v;
+    }
+    head[deg[v]] = v;
+  }
+
+  private static void unlink(int v, int[] deg, int[] head, int[] next,
+      int[] prev) {
+    if (prev[v] >= 0) {
+      next[prev[v]] = next[v];
+    }
+    else {
+      head[deg[v]] = next[v];
+    }
+    if (next[v] >= 0) {
+      prev[next[v]] = prev[v];
+    }
+  }
+}
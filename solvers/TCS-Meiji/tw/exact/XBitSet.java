@@ -19,6 +19,37 @@ import java.util.Comparator;
 
 public class XBitSet extends BitSet 
   implements Comparable<XBitSet>{
+
+  /**
+   * the number of members of the smaller side that {@code isSubset}
+   * and {@code isSuperset} test one by one before falling back to
+   * the word-wise test
+   */
+  private static final int DIRECT_TESTS = 16;
+
+  /**
+   * whether the modifying methods check that the set is not frozen;
+   * off except for debugging, so that they cost nothing
+   */
+  private static final boolean CHECK_FROZEN = false;
+
+  /**
+   * per-thread scratch vector for the word-wise subset test
+   */
+  private static final ThreadLocal<BitSet> scratch =
+      new ThreadLocal<BitSet>() {
+    @Override
+    protected BitSet initialValue() {
+      return new BitSet();
+    }
+  };
+
+  /**
+   * whether this set is frozen, that is, made immutable, and
+   * its fingerprint, computed when it is frozen
+   */
+  private boolean frozen;
+  private long fingerprint;
   
   /**
    * Creates an empty {@code XBitSet}.
@@ -77,8 +108,33 @@ public class XBitSet extends BitSet
    *         of the argument {@code XBitSet}
   */
   public boolean isSubset(XBitSet set) {
-    BitSet tmp = (BitSet) this.clone();
-    tmp.andNot(set);
+    return isSubset(this, set);
+  }
+
+  /**
+   * Tests whether {@code a} is a subset of {@code b} without
+   * allocating: a longer {@code a} is rejected at once, a small
+   * {@code a} is tested member by member, and otherwise the
+   * difference is taken in a per-thread scratch vector.
+   */
+  private static boolean isSubset(BitSet a, BitSet b) {
+    if (a.length() > b.length()) {
+      return false;
+    }
+    int v = a.nextSetBit(0);
+    for (int i = 0; i < DIRECT_TESTS && v >= 0; i++) {
+      if (!b.get(v)) {
+        return false;
+      }
+      v = a.nextSetBit(v + 1);
+    }
+    if (v < 0) {
+      return true;
+    }
+    BitSet tmp = scratch.get();
+    tmp.clear();
+    tmp.or(a);
+    tmp.andNot(b);
     return tmp.isEmpty();
   }
 
@@ -91,9 +147,7 @@ public class XBitSet extends BitSet
    *  disjoint from the argument {@code XBitSet}
   */
   public boolean isDisjoint(XBitSet set) {
-    BitSet tmp = (BitSet) this.clone();
-    tmp.and(set);
-    return tmp.isEmpty();
+    return !super.intersects(set);
   }
 
   /**
@@ -118,9 +172,7 @@ public class XBitSet extends BitSet
    *  of the argument {@code XBitSet}
   */
   public boolean isSuperset(XBitSet set) {
-    BitSet tmp = (BitSet) set.clone();
-    tmp.andNot(this);
-    return tmp.isEmpty();
+    return isSubset(set, this);
   }
   
   /**
@@ -161,6 +213,228 @@ public class XBitSet extends BitSet
     result.andNot(set);
     return result;
   }
+
+  /**
+   * Returns the cardinality of the intersection of this target
+   * {@code XBitSet} and the argument {@code XBitSet} without creating
+   * the intersection.
+   * The members of the target are enumerated, so this method is
+   * best invoked on the smaller of the two sets.
+   * The {@code xxxCardinality} methods below serve for the pruning
+   * tests that reject most of the candidate sets.
+   *
+   * @param  set an {@code XBitSet}
+   * @return the number of common members
+   */
+  public int intersectionCardinality(XBitSet set) {
+    if (set == this) {
+      return cardinality();
+    }
+    int count = 0;
+    for (int i = nextSetBit(0); i >= 0; i = nextSetBit(i + 1)) {
+      if (set.get(i)) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Returns the number of the members of this target {@code XBitSet}
+   * that are not in the argument {@code XBitSet}, without creating
+   * the difference.
+   *
+   * @param  set an {@code XBitSet}
+   * @return the cardinality of the difference
+   */
+  public int differenceCardinality(XBitSet set) {
+    return cardinality() - intersectionCardinality(set);
+  }
+
+  /**
+   * Returns the cardinality of the union of this target
+   * {@code XBitSet} and the argument {@code XBitSet} without creating
+   * the union.
+   *
+   * @param  set an {@code XBitSet}
+   * @return the cardinality of the union
+   */
+  public int unionCardinality(XBitSet set) {
+    return set.cardinality() + differenceCardinality(set);
+  }
+
+  /**
+   * Returns {@code true} if the union of this target {@code XBitSet}
+   * and the argument {@code XBitSet} has more than {@code k} members.
+   * The enumeration of the target stops as soon as the bound
+   * is exceeded.
+   *
+   * @param  set an {@code XBitSet}
+   * @param  k the bound on the cardinality
+   * @return {@code true} if the union has more than {@code k} members
+   */
+  public boolean unionCardinalityExceeds(XBitSet set, int k) {
+    int count = set.cardinality();
+    if (count > k) {
+      return true;
+    }
+    for (int i = nextSetBit(0); i >= 0; i = nextSetBit(i + 1)) {
+      if (!set.get(i) && ++count > k) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Returns a 64-bit fingerprint of this target {@code XBitSet},
+   * mixing its words one after another.
+   * Equal sets have equal fingerprints; the map {@code XBitSetMap}
+   * keeps the fingerprints of its keys and compares them before
+   * comparing the sets.
+   * The fingerprint of a frozen set is computed once, when it is
+   * frozen; that of any other set is computed on each call.
+   *
+   * @return the fingerprint
+   */
+  public long fingerprint() {
+    if (frozen) {
+      return fingerprint;
+    }
+    return fingerprintOf(toLongArray());
+  }
+
+  private static long fingerprintOf(long[] words) {
+    long h = words.length;
+    for (int i = 0; i < words.length; i++) {
+      h = Long.rotateLeft(h ^ words[i] * 0x9E3779B97F4A7C15L, 31) *
+          0xBF58476D1CE4E5B9L;
+    }
+    h ^= h >>> 33;
+    h *= 0xFF51AFD7ED558CCDL;
+    h ^= h >>> 33;
+    h *= 0xC4CEB9FE1A85EC53L;
+    h ^= h >>> 33;
+    return h;
+  }
+
+  /**
+   * Freezes this target {@code XBitSet}, computing its fingerprint
+   * once for all.  A frozen set may not be modified, as its
+   * fingerprint would go stale; with {@code CHECK_FROZEN} on, the
+   * modifying methods throw an exception.  The sets created from
+   * it, by {@code clone} for example, are not frozen.
+   * {@code XBitSetMap} freezes the keys it interns.
+   *
+   * @return this set
+   */
+  public XBitSet freeze() {
+    if (!frozen) {
+      fingerprint = fingerprintOf(toLongArray());
+      frozen = true;
+    }
+    return this;
+  }
+
+  /**
+   * Returns {@code true} if this target {@code XBitSet} is frozen.
+   * @return {@code true} if frozen
+   */
+  public boolean isFrozen() {
+    return frozen;
+  }
+
+  private void checkMutable() {
+    if (CHECK_FROZEN && frozen) {
+      throw new RuntimeException("!!Frozen set modified: " + this);
+    }
+  }
+
+  @Override
+  public Object clone() {
+    XBitSet result = (XBitSet) super.clone();
+    result.frozen = false;
+    result.fingerprint = 0;
+    return result;
+  }
+
+  @Override
+  public void set(int i) {
+    checkMutable();
+    super.set(i);
+  }
+
+  @Override
+  public void set(int i, boolean value) {
+    checkMutable();
+    super.set(i, value);
+  }
+
+  @Override
+  public void set(int fromIndex, int toIndex) {
+    checkMutable();
+    super.set(fromIndex, toIndex);
+  }
+
+  @Override
+  public void set(int fromIndex, int toIndex, boolean value) {
+    checkMutable();
+    super.set(fromIndex, toIndex, value);
+  }
+
+  @Override
+  public void clear(int i) {
+    checkMutable();
+    super.clear(i);
+  }
+
+  @Override
+  public void clear(int fromIndex, int toIndex) {
+    checkMutable();
+    super.clear(fromIndex, toIndex);
+  }
+
+  @Override
+  public void clear() {
+    checkMutable();
+    super.clear();
+  }
+
+  @Override
+  public void flip(int i) {
+    checkMutable();
+    super.flip(i);
+  }
+
+  @Override
+  public void flip(int fromIndex, int toIndex) {
+    checkMutable();
+    super.flip(fromIndex, toIndex);
+  }
+
+  @Override
+  public void and(BitSet set) {
+    checkMutable();
+    super.and(set);
+  }
+
+  @Override
+  public void or(BitSet set) {
+    checkMutable();
+    super.or(set);
+  }
+
+  @Override
+  public void xor(BitSet set) {
+    checkMutable();
+    super.xor(set);
+  }
+
+  @Override
+  public void andNot(BitSet set) {
+    checkMutable();
+    super.andNot(set);
+  }
   
   /**
    * Returns {@code true} if the target {@code XBitSet} has a member 
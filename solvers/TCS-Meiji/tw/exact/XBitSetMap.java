@@ -0,0 +1,222 @@
+/*
+ * Copyright (c) 2017, Hisao Tamaki
+ */
+package tw.exact;
+
+import java.util.ArrayList;
+
+/**
+ * Open-addressing hash map keyed by {@code XBitSet}s, for the block
+ * caches of the decomposers.
+ * Each entry records the 64-bit fingerprint of its key
+ * (see {@link XBitSet#fingerprint()}) next to it in a flat array,
+ * so that a probe compares fingerprints first and compares the sets
+ * themselves only when the fingerprints match; no entry object
+ * is created.
+ * <p>
+ * The keys are interned as given and are frozen (see
+ * {@link XBitSet#freeze()}) when they are put, so that they cannot be
+ * modified afterwards and their fingerprints are computed only once;
+ * a lookup leaves its key as it is, and does not compute the
+ * fingerprint if the key is frozen, such as a key taken from a block.  Entries are never removed.
+ * A concurrent map is split into segments chosen by the fingerprint,
+ * each guarded by its own lock; a non-concurrent map takes no locks.
+ *
+ * @param <V> the type of the values
+ * @author  Hisao Tamaki
+ */
+public class XBitSetMap<V> {
+  private static final int SEGMENTS = 16;
+  private static final int INITIAL_CAPACITY = 64;
+
+  private final Segment[] segments;
+  private final boolean concurrent;
+
+  /**
+   * Creates an empty map.
+   * @param concurrent {@code true} if the map is to be accessed
+   * from more than one thread
+   */
+  public XBitSetMap(boolean concurrent) {
+    this.concurrent = concurrent;
+    segments = new Segment[concurrent ? SEGMENTS : 1];
+    for (int i = 0; i < segments.length; i++) {
+      segments[i] = new Segment();
+    }
+  }
+
+  private Segment segmentFor(long fp) {
+    return segments[(int) (fp >>> 60) & (segments.length - 1)];
+  }
+
+  @SuppressWarnings("unchecked")
+  public V get(XBitSet key) {
+    long fp = key.fingerprint();
+    Segment segment = segmentFor(fp);
+    if (concurrent) {
+      synchronized (segment) {
+        return (V) segment.get(key, fp);
+      }
+    }
+    return (V) segment.get(key, fp);
+  }
+
+  public boolean containsKey(XBitSet key) {
+    return get(key) != null;
+  }
+
+  /**
+   * Associates the value with the key.
+   * @return the value previously associated with the key;
+   * null if there was none
+   */
+  @SuppressWarnings("unchecked")
+  public V put(XBitSet key, V value) {
+    long fp = key.freeze().fingerprint();
+    Segment segment = segmentFor(fp);
+    if (concurrent) {
+      synchronized (segment) {
+        return (V) segment.put(key, fp, value, true);
+      }
+    }
+    return (V) segment.put(key, fp, value, true);
+  }
+
+  /**
+   * Associates the value with the key unless the key is already
+   * in the map.
+   * @return the value already associated with the key;
+   * null if there was none and the value is put
+   */
+  @SuppressWarnings("unchecked")
+  public V putIfAbsent(XBitSet key, V value) {
+    long fp = key.freeze().fingerprint();
+    Segment segment = segmentFor(fp);
+    if (concurrent) {
+      synchronized (segment) {
+        return (V) segment.put(key, fp, value, false);
+      }
+    }
+    return (V) segment.put(key, fp, value, false);
+  }
+
+  public int size() {
+    int size = 0;
+    for (Segment segment: segments) {
+      if (concurrent) {
+        synchronized (segment) {
+          size += segment.size;
+        }
+      }
+      else {
+        size += segment.size;
+      }
+    }
+    return size;
+  }
+
+  /**
+   * Returns a snapshot of the values in the map.
+   */
+  @SuppressWarnings("unchecked")
+  public ArrayList<V> values() {
+    ArrayList<V> result = new ArrayList<>();
+    for (Segment segment: segments) {
+      if (concurrent) {
+        synchronized (segment) {
+          segment.collectValues((ArrayList<Object>) result);
+        }
+      }
+      else {
+        segment.collectValues((ArrayList<Object>) result);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * A linear-probing table with the fingerprints, the keys and
+   * the values in parallel arrays; an empty slot has a null key.
+   */
+  private static class Segment {
+    long[] fingerprints;
+    XBitSet[] keys;
+    Object[] values;
+    int size;
+
+    Segment() {
+      fingerprints = new long[INITIAL_CAPACITY];
+      keys = new XBitSet[INITIAL_CAPACITY];
+      values = new Object[INITIAL_CAPACITY];
+    }
+
+    /**
+     * returns the slot of the key, or the empty slot where
+     * it is to be put
+     */
+    int slotOf(XBitSet key, long fp) {
+      int mask = keys.length - 1;
+      int i = (int) fp & mask;
+      while (keys[i] != null) {
+        if (fingerprints[i] == fp && keys[i].equals(key)) {
+          return i;
+        }
+        i = (i + 1) & mask;
+      }
+      return i;
+    }
+
+    Object get(XBitSet key, long fp) {
+      int i = slotOf(key, fp);
+      return keys[i] == null ? null : values[i];
+    }
+
+    Object put(XBitSet key, long fp, Object value, boolean replace) {
+      int i = slotOf(key, fp);
+      if (keys[i] != null) {
+        Object old = values[i];
+        if (replace) {
+          values[i] = value;
+        }
+        return old;
+      }
+      fingerprints[i] = fp;
+      keys[i] = key;
+      values[i] = value;
+      if (++size * 2 > keys.length) {
+        grow();
+      }
+      return null;
+    }
+
+    private void grow() {
+      long[] oldFingerprints = fingerprints;
+      XBitSet[] oldKeys = keys;
+      Object[] oldValues = values;
+      int capacity = 2 * oldKeys.length;
+      fingerprints = new long[capacity];
+      keys = new XBitSet[capacity];
+      values = new Object[capacity];
+      int mask = capacity - 1;
+      for (int j = 0; j < oldKeys.length; j++) {
+        if (oldKeys[j] != null) {
+          int i = (int) oldFingerprints[j] & mask;
+          while (keys[i] != null) {
+            i = (i + 1) & mask;
+          }
+          fingerprints[i] = oldFingerprints[j];
+          keys[i] = oldKeys[j];
+          values[i] = oldValues[j];
+        }
+      }
+    }
+
+    void collectValues(ArrayList<Object> result) {
+      for (int i = 0; i < keys.length; i++) {
+        if (keys[i] != null) {
+          result.add(values[i]);
+        }
+      }
+    }
+  }
+}
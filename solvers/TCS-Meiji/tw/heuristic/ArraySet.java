@@ -77,6 +77,61 @@ implements Comparable< ArraySet >, Cloneable{
     return false;
   }
 
+  /**
+   * returns the cardinality of the intersection with the given set
+   * without creating the intersection
+   */
+  public int intersectionCardinality(ArraySet set){
+    int i = 0, j = 0, k = 0;
+    while(i < size && j < set.size){
+      if(a[i] < set.a[j]){
+        ++i;
+      }
+      else if(a[i] > set.a[j]){
+        ++j;
+      }
+      else{
+        ++i;  ++j;
+        ++k;
+      }
+    }
+    return k;
+  }
+
+  public int differenceCardinality(ArraySet set){
+    return size - intersectionCardinality(set);
+  }
+
+  public int unionCardinality(ArraySet set){
+    return size + set.size - intersectionCardinality(set);
+  }
+
+  /**
+   * returns {@code true} if the union with the given set has more
+   * than {@code k} members, stopping the merge as soon as it does
+   */
+  public boolean unionCardinalityExceeds(ArraySet set, int k){
+    if(size > k || set.size > k){
+      return true;
+    }
+    int i = 0, j = 0, c = 0;
+    while(i < size && j < set.size){
+      if(a[i] < set.a[j]){
+        ++i;
+      }
+      else if(a[i] > set.a[j]){
+        ++j;
+      }
+      else{
+        ++i;  ++j;
+      }
+      if(++c > k){
+        return true;
+      }
+    }
+    return c + (size - i) + (set.size - j) > k;
+  }
+
   public boolean isSuperset(ArraySet set){
     return set.isSubset(this);
   }
@@ -180,55 +235,64 @@ implements Comparable< ArraySet >, Cloneable{
     return size;
   }
 
+  // and, andNot and or work in place: the elements kept are
+  // written at or behind the positions they are read from
+
   public void and(ArraySet set){
     int i = 0, j = 0, k = 0;
-    int[] cpa = Arrays.copyOf(a, size);
-    int cpsize = size;
-
-    clear();
-
-    while(i < cpsize && j < set.size){
-      if(cpa[i] < set.a[j]){
+    while(i < size && j < set.size){
+      if(a[i] < set.a[j]){
         ++i;
       }
-      else if(cpa[i] > set.a[j]){
+      else if(a[i] > set.a[j]){
         ++j;
       }
       else{
-        a[size++] = cpa[i];
+        a[k++] = a[i];
         ++i; ++j;
       }
     }
+    size = k;
 
     rehash();
   }
 
   public void andNot(ArraySet set){
     int i = 0, j = 0, k = 0;
-    int[] cpa = Arrays.copyOf(a, size);
-    int cpsize = size;
-
-    clear();
-
-    while(i < cpsize && j < set.size){
-      if(cpa[i] < set.a[j]){
-        a[size++] = cpa[i];
+    while(i < size && j < set.size){
+      if(a[i] < set.a[j]){
+        a[k++] = a[i];
         ++i;
       }
-      else if(cpa[i] > set.a[j]){
+      else if(a[i] > set.a[j]){
         ++j;
       }
       else{
-        ++i;  ++j;  ++k;
+        ++i;  ++j;
       }
     }
-    while(i < cpsize){
-      a[size++] = cpa[i++];
+    while(i < size){
+      a[k++] = a[i++];
     }
+    size = k;
 
     rehash();
   }
 
+  /**
+   * makes this set a copy of the given set, reusing the array
+   * of this set if it is large enough
+   */
+  public void assign(ArraySet set){
+    if(a.length < set.size){
+      a = new int[set.a.length];
+    }
+    System.arraycopy(set.a, 0, a, 0, set.size);
+    size = set.size;
+    hash = set.hash;
+    index0 = 0;
+  }
+
   public void clear(){
     size = 0;
     rehash();
@@ -320,13 +384,18 @@ implements Comparable< ArraySet >, Cloneable{
       index0 = 0;
       return -1;
     }
-    if(index0 + 1 < size && 
-        (fromIndex > a[index0] && fromIndex <= a[index0 + 1])){
-      return a[++index0];
+    // index0 is only a hint; it is read once so that
+    // concurrent readers cannot disturb each other
+    int i = index0;
+    if(i + 1 < size && 
+        (fromIndex > a[i] && fromIndex <= a[i + 1])){
+      index0 = i + 1;
+      return a[i + 1];
     }
     else{
-      index0 = lowerBound(fromIndex);
-      return a[index0];
+      i = lowerBound(fromIndex);
+      index0 = i;
+      return a[i];
     }
   }
 
@@ -339,33 +408,44 @@ implements Comparable< ArraySet >, Cloneable{
   }
 
   public void or(ArraySet set){
-    int[] cpa = Arrays.copyOf(a, size);
-    int cpsize = size;
-
-    clear();
-
-    int i = 0, j = 0;
-    while(i < cpsize && j < set.size){
-      ensureCapasity();
-      if(cpa[i] < set.a[j]){
-        a[size++] = cpa[i++];
+    if(set == this){
+      return;
+    }
+    int i = 0, j = 0, common = 0;
+    while(i < size && j < set.size){
+      if(a[i] < set.a[j]){
+        ++i;
       }
-      else if(cpa[i] > set.a[j]){
-        a[size++] = set.a[j++];
+      else if(a[i] > set.a[j]){
+        ++j;
       }
       else{
-        a[size++] = cpa[i];
-        ++i; ++j;
+        ++common; ++i; ++j;
       }
     }
-    while(i < cpsize){
-      ensureCapasity();
-      a[size++] = cpa[i++];
+    int union = size + set.size - common;
+    if(a.length < union){
+      a = Arrays.copyOf(a, Math.max(union, 2 * size + 1));
     }
-    while(j < set.size){
-      ensureCapasity();
-      a[size++] = set.a[j++];
+
+    // merge from the end so that no element is overwritten
+    // before it is read
+    i = size - 1;
+    j = set.size - 1;
+    int k = union - 1;
+    while(j >= 0){
+      if(i >= 0 && a[i] > set.a[j]){
+        a[k--] = a[i--];
+      }
+      else if(i >= 0 && a[i] == set.a[j]){
+        a[k--] = a[i--];
+        --j;
+      }
+      else{
+        a[k--] = set.a[j--];
+      }
     }
+    size = union;
 
     rehash();
   }
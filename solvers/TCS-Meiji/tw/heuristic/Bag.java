@@ -114,10 +114,12 @@ public class Bag implements Cloneable{
     graph.inheritEdges(parent.graph, conv, inv);
 
     //    System.out.println("filling all, " + incidentSeparators.size() + " incident separators");
+    ArrayList<VertexSet> cliques = new ArrayList<>(incidentSeparators.size());
     for (Separator separator: incidentSeparators) {
       //      System.out.println("filling " + separator);
-      graph.fill(convert(separator.vertexSet, conv));
+      cliques.add(convert(separator.vertexSet, conv));
     }
+    graph.fillAll(cliques);
   }
 
   public int getWidth() {
@@ -0,0 +1,1570 @@
+/*
+ * Copyright (c) 2017, Hiromu Ohtsuka
+*/
+
+package tw.heuristic;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * A set of non-negative integers split into chunks of 2^16
+ * consecutive values, in the manner of Roaring bitmaps, meant for
+ * the medium-density vertex sets of very large graphs.
+ * Only the non-empty chunks are stored, each in the container that
+ * is the smallest for its members:
+ * <ul>
+ * <li> an array container, a sorted {@code char[]} of the low 16 bits
+ *   of at most 4096 members,
+ * <li> a bitmap container of 1024 words, or
+ * <li> a run container, a sorted {@code char[]} of the first and the
+ *   last members of the maximal runs of consecutive members.
+ * </ul>
+ * The containers resulting from the bulk operations are converted to
+ * the smallest of the three; adding or removing a single member
+ * converts between the array and bitmap containers at 4096 members
+ * and turns a run container into one of them.
+ * <p>
+ * The operations mirror those of {@code FixedBitSet}: {@code and},
+ * {@code or}, {@code andNot} and {@code xor} modify the target set,
+ * while {@code intersectWith}, {@code unionWith} and {@code subtract}
+ * create a new set.  The argument of an operation is never modified.
+ */
+public final class ChunkedSet
+implements Comparable< ChunkedSet >, Cloneable{
+  private static final int CHUNK_BITS = 16;
+  private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+  private static final int LOW_MASK = CHUNK_SIZE - 1;
+  private static final int BITMAP_WORDS = CHUNK_SIZE / 64;
+  private static final long WORD_MASK = 0xFFFFFFFFFFFFFFFFL;
+
+  /**
+   * the largest number of members of an array container, at which
+   * it is as large as a bitmap container
+   */
+  private static final int ARRAY_MAX = 4096;
+
+  private static final int AND = 0;
+  private static final int OR = 1;
+  private static final int AND_NOT = 2;
+  private static final int XOR = 3;
+
+  /**
+   * per-thread word buffers for the bulk operations on containers
+   * other than bitmaps: two operands and a result
+   */
+  private static final ThreadLocal< long[][] > buffers =
+    new ThreadLocal< long[][] >(){
+      @Override
+        protected long[][] initialValue(){
+          return new long[3][BITMAP_WORDS];
+        }
+    };
+
+  /**
+   * the high bits of the chunks, in increasing order, and
+   * their containers, none of which is empty
+   */
+  private int[] keys;
+  private Container[] containers;
+  private int size;
+
+  public ChunkedSet(){
+    keys = new int[4];
+    containers = new Container[4];
+  }
+
+  public ChunkedSet(int[] a){
+    this();
+    int[] b = a.clone();
+    Arrays.sort(b);
+    int i = 0;
+    while(i < b.length){
+      int key = b[i] >>> CHUNK_BITS;
+      int j = i;
+      while(j < b.length && b[j] >>> CHUNK_BITS == key){
+        j++;
+      }
+      if(j - i <= ARRAY_MAX){
+        char[] c = new char[j - i];
+        int k = 0;
+        for(int h = i; h < j; h++){
+          if(k == 0 || c[k - 1] != (char)b[h]){
+            c[k++] = (char)b[h];
+          }
+        }
+        append(key, pack(c, k));
+      }
+      else{
+        long[] w = buffers.get()[2];
+        Arrays.fill(w, 0);
+        for(int h = i; h < j; h++){
+          w[(b[h] & LOW_MASK) >>> 6] |= 1L << b[h];
+        }
+        append(key, fromWords(w));
+      }
+      i = j;
+    }
+  }
+
+  private void append(int key, Container c){
+    if(size == keys.length){
+      keys = Arrays.copyOf(keys, 2 * size);
+      containers = Arrays.copyOf(containers, 2 * size);
+    }
+    keys[size] = key;
+    containers[size] = c;
+    size++;
+  }
+
+  private void insertAt(int idx, int key, Container c){
+    if(size == keys.length){
+      keys = Arrays.copyOf(keys, 2 * size);
+      containers = Arrays.copyOf(containers, 2 * size);
+    }
+    System.arraycopy(keys, idx, keys, idx + 1, size - idx);
+    System.arraycopy(containers, idx, containers, idx + 1, size - idx);
+    keys[idx] = key;
+    containers[idx] = c;
+    size++;
+  }
+
+  private void removeAt(int idx){
+    System.arraycopy(keys, idx + 1, keys, idx, size - idx - 1);
+    System.arraycopy(containers, idx + 1, containers, idx, size - idx - 1);
+    containers[--size] = null;
+  }
+
+  private int indexOf(int key){
+    return Arrays.binarySearch(keys, 0, size, key);
+  }
+
+  /**
+   * returns the set resulting from the operation on the two sets;
+   * the containers of {@code a} are taken over if {@code ownA} and
+   * copied otherwise
+   */
+  private static ChunkedSet combine(ChunkedSet a, ChunkedSet b, int op, boolean ownA){
+    ChunkedSet result = new ChunkedSet();
+    int i = 0, j = 0;
+    while(i < a.size || j < b.size){
+      int ka = i < a.size ? a.keys[i] : Integer.MAX_VALUE;
+      int kb = j < b.size ? b.keys[j] : Integer.MAX_VALUE;
+      if(ka == kb){
+        Container c = apply(a.containers[i++], b.containers[j++], op);
+        if(c != null){
+          result.append(ka, c);
+        }
+      }
+      else if(ka < kb){
+        Container c = a.containers[i++];
+        if(op != AND){
+          result.append(ka, ownA ? c : c.copy());
+        }
+      }
+      else{
+        Container c = b.containers[j++];
+        if(op == OR || op == XOR){
+          result.append(kb, c.copy());
+        }
+      }
+    }
+    return result;
+  }
+
+  private void takeOver(ChunkedSet set){
+    keys = set.keys;
+    containers = set.containers;
+    size = set.size;
+  }
+
+  public void and(ChunkedSet set){
+    takeOver(combine(this, set, AND, true));
+  }
+
+  public void andNot(ChunkedSet set){
+    takeOver(combine(this, set, AND_NOT, true));
+  }
+
+  public void or(ChunkedSet set){
+    takeOver(combine(this, set, OR, true));
+  }
+
+  public void xor(ChunkedSet set){
+    takeOver(combine(this, set, XOR, true));
+  }
+
+  /**
+   * makes this set a copy of the given set, reusing the chunk
+   * arrays of this set if they suffice
+   */
+  public void assign(ChunkedSet set){
+    if(set == this){
+      return;
+    }
+    if(keys.length < set.size){
+      keys = new int[set.size];
+      containers = new Container[set.size];
+    }
+    Arrays.fill(containers, set.size, containers.length, null);
+    for(int i = 0; i < set.size; i++){
+      keys[i] = set.keys[i];
+      containers[i] = set.containers[i].copy();
+    }
+    size = set.size;
+  }
+
+  public ChunkedSet intersectWith(ChunkedSet set){
+    return combine(this, set, AND, false);
+  }
+
+  public ChunkedSet unionWith(ChunkedSet set){
+    return combine(this, set, OR, false);
+  }
+
+  public ChunkedSet subtract(ChunkedSet set){
+    return combine(this, set, AND_NOT, false);
+  }
+
+  public boolean isSubset(ChunkedSet set){
+    if(size > set.size){
+      return false;
+    }
+    int j = 0;
+    for(int i = 0; i < size; i++){
+      while(j < set.size && set.keys[j] < keys[i]){
+        j++;
+      }
+      if(j == set.size || set.keys[j] != keys[i] ||
+          !isSubset(containers[i], set.containers[j])){
+        return false;
+      }
+      j++;
+    }
+    return true;
+  }
+
+  public boolean isSuperset(ChunkedSet set){
+    return set.isSubset(this);
+  }
+
+  public boolean intersects(ChunkedSet set){
+    int i = 0, j = 0;
+    while(i < size && j < set.size){
+      if(keys[i] < set.keys[j]){
+        i++;
+      }
+      else if(keys[i] > set.keys[j]){
+        j++;
+      }
+      else if(intersects(containers[i++], set.containers[j++])){
+        return true;
+      }
+    }
+    return false;
+  }
+
+  public boolean isDisjoint(ChunkedSet set){
+    return !intersects(set);
+  }
+
+  public int cardinality(){
+    int c = 0;
+    for(int i = 0; i < size; i++){
+      c += containers[i].cardinality();
+    }
+    return c;
+  }
+
+  /**
+   * returns the cardinality of the intersection with the given set
+   * without creating the intersection
+   */
+  public int intersectionCardinality(ChunkedSet set){
+    int c = 0;
+    int i = 0, j = 0;
+    while(i < size && j < set.size){
+      if(keys[i] < set.keys[j]){
+        i++;
+      }
+      else if(keys[i] > set.keys[j]){
+        j++;
+      }
+      else{
+        c += intersectionCardinality(containers[i++], set.containers[j++]);
+      }
+    }
+    return c;
+  }
+
+  /**
+   * returns the number of the members of this set not in the given set
+   */
+  public int differenceCardinality(ChunkedSet set){
+    return cardinality() - intersectionCardinality(set);
+  }
+
+  public int unionCardinality(ChunkedSet set){
+    return cardinality() + set.cardinality() - intersectionCardinality(set);
+  }
+
+  /**
+   * returns {@code true} if the union with the given set has more
+   * than {@code k} members, stopping the count at the first chunk
+   * where it does
+   */
+  public boolean unionCardinalityExceeds(ChunkedSet set, int k){
+    int c = 0;
+    int i = 0, j = 0;
+    while(i < size || j < set.size){
+      int ka = i < size ? keys[i] : Integer.MAX_VALUE;
+      int kb = j < set.size ? set.keys[j] : Integer.MAX_VALUE;
+      if(ka == kb){
+        Container x = containers[i++];
+        Container y = set.containers[j++];
+        c += x.cardinality() + y.cardinality() - intersectionCardinality(x, y);
+      }
+      else if(ka < kb){
+        c += containers[i++].cardinality();
+      }
+      else{
+        c += set.containers[j++].cardinality();
+      }
+      if(c > k){
+        return true;
+      }
+    }
+    return false;
+  }
+
+  public boolean isEmpty(){
+    return size == 0;
+  }
+
+  public int length(){
+    if(size == 0){
+      return 0;
+    }
+    return (keys[size - 1] << CHUNK_BITS) + containers[size - 1].last() + 1;
+  }
+
+  public boolean get(int i){
+    int idx = indexOf(i >>> CHUNK_BITS);
+    return idx >= 0 && containers[idx].contains(i & LOW_MASK);
+  }
+
+  public void set(int i){
+    int key = i >>> CHUNK_BITS;
+    int idx = indexOf(key);
+    if(idx >= 0){
+      containers[idx] = containers[idx].add(i & LOW_MASK);
+    }
+    else{
+      ArrayContainer c = new ArrayContainer(new char[4], 0);
+      insertAt(-idx - 1, key, c.add(i & LOW_MASK));
+    }
+  }
+
+  public void set(int i, boolean value){
+    if(value){
+      set(i);
+    }
+    else{
+      clear(i);
+    }
+  }
+
+  public void set(int fromIndex, int toIndex){
+    applyRange(fromIndex, toIndex, OR);
+  }
+
+  public void set(int fromIndex, int toIndex, boolean value){
+    if(value){
+      set(fromIndex, toIndex);
+    }
+    else{
+      clear(fromIndex, toIndex);
+    }
+  }
+
+  public void clear(){
+    Arrays.fill(containers, 0, size, null);
+    size = 0;
+  }
+
+  public void clear(int i){
+    int idx = indexOf(i >>> CHUNK_BITS);
+    if(idx >= 0){
+      Container c = containers[idx].remove(i & LOW_MASK);
+      if(c.cardinality() == 0){
+        removeAt(idx);
+      }
+      else{
+        containers[idx] = c;
+      }
+    }
+  }
+
+  public void clear(int fromIndex, int toIndex){
+    applyRange(fromIndex, toIndex, AND_NOT);
+  }
+
+  public void flip(int i){
+    if(get(i)){
+      clear(i);
+    }
+    else{
+      set(i);
+    }
+  }
+
+  public void flip(int fromIndex, int toIndex){
+    applyRange(fromIndex, toIndex, XOR);
+  }
+
+  /**
+   * applies the operation to each chunk met by the range from
+   * fromIndex (inclusive) to toIndex (exclusive), with the range
+   * as a run container
+   */
+  private void applyRange(int fromIndex, int toIndex, int op){
+    if(fromIndex >= toIndex){
+      return;
+    }
+    int first = fromIndex >>> CHUNK_BITS;
+    int last = (toIndex - 1) >>> CHUNK_BITS;
+    for(int key = first; key <= last; key++){
+      int lo = key == first ? fromIndex & LOW_MASK : 0;
+      int hi = key == last ? (toIndex - 1) & LOW_MASK : LOW_MASK;
+      RunContainer range = new RunContainer(new char[]{(char)lo, (char)hi}, 1);
+      int idx = indexOf(key);
+      if(idx >= 0){
+        Container c = apply(containers[idx], range, op);
+        if(c == null){
+          removeAt(idx);
+        }
+        else{
+          containers[idx] = c;
+        }
+      }
+      else if(op != AND_NOT){
+        insertAt(-idx - 1, key, range);
+      }
+    }
+  }
+
+  public int nextSetBit(int fromIndex){
+    int key = fromIndex >>> CHUNK_BITS;
+    int idx = indexOf(key);
+    if(idx >= 0){
+      int low = containers[idx].next(fromIndex & LOW_MASK);
+      if(low >= 0){
+        return (key << CHUNK_BITS) | low;
+      }
+      idx++;
+    }
+    else{
+      idx = -idx - 1;
+    }
+    if(idx < size){
+      return (keys[idx] << CHUNK_BITS) | containers[idx].next(0);
+    }
+    return -1;
+  }
+
+  public int nextClearBit(int fromIndex){
+    while(true){
+      int key = fromIndex >>> CHUNK_BITS;
+      int idx = indexOf(key);
+      if(idx < 0){
+        return fromIndex;
+      }
+      int low = containers[idx].nextAbsent(fromIndex & LOW_MASK);
+      if(low < CHUNK_SIZE){
+        return (key << CHUNK_BITS) | low;
+      }
+      fromIndex = (key + 1) << CHUNK_BITS;
+    }
+  }
+
+  public boolean hasSmaller(ChunkedSet set){
+    assert !isEmpty() && !set.isEmpty();
+    return nextSetBit(0) < set.nextSetBit(0);
+  }
+
+  public boolean hasSmallerVertexThan(ChunkedSet set){
+    if(isEmpty()){
+      return false;
+    }
+    else if(set.isEmpty()){
+      return true;
+    }
+    else{
+      return nextSetBit(0) < set.nextSetBit(0);
+    }
+  }
+
+  public int[] toArray(){
+    int[] result = new int[cardinality()];
+    int k = 0;
+    for(int i = 0; i < size; i++){
+      k = containers[i].copyTo(result, k, keys[i] << CHUNK_BITS);
+    }
+    return result;
+  }
+
+  /**
+   * returns the words up to the last non-zero one, as
+   * {@code BitSet.toLongArray} does
+   */
+  public long[] toLongArray(){
+    long[] result = new long[(length() + 63) >>> 6];
+    long[] buf = buffers.get()[0];
+    for(int i = 0; i < size; i++){
+      int base = keys[i] * BITMAP_WORDS;
+      System.arraycopy(containers[i].words(buf), 0, result, base,
+          Math.min(BITMAP_WORDS, result.length - base));
+    }
+    return result;
+  }
+
+  public byte[] toByteArray(){
+    long[] words = toLongArray();
+    int len = (length() + 7) / 8;
+    byte[] bytes = new byte[len];
+    for(int i = 0; i < len; i++){
+      bytes[i] = (byte)(words[i >>> 3] >>> (8 * (i & 7)));
+    }
+    return bytes;
+  }
+
+  @Override
+    public ChunkedSet clone(){
+      ChunkedSet result = new ChunkedSet();
+      result.assign(this);
+      return result;
+    }
+
+  @Override
+    public boolean equals(Object obj){
+      if(!(obj instanceof ChunkedSet)){
+        return false;
+      }
+      ChunkedSet set = (ChunkedSet)obj;
+      if(size != set.size){
+        return false;
+      }
+      for(int i = 0; i < size; i++){
+        if(keys[i] != set.keys[i] ||
+            containers[i].cardinality() != set.containers[i].cardinality() ||
+            !isSubset(containers[i], set.containers[i])){
+          return false;
+        }
+      }
+      return true;
+    }
+
+  @Override
+    public int hashCode(){
+      int hash = 1;
+      for(int i = nextSetBit(0); i >= 0; i = nextSetBit(i + 1)){
+        hash = 31 * hash + i;
+      }
+      return hash;
+    }
+
+  /**
+   * Compares as {@code XBitSet.compareTo} does, viewing the bits
+   * as the binary representation of an integer.
+   */
+  @Override
+    public int compareTo(ChunkedSet set){
+      int l1 = length();
+      int l2 = set.length();
+      if(l1 != l2){
+        return l1 - l2;
+      }
+      int i = size - 1, j = set.size - 1;
+      while(i >= 0 && j >= 0){
+        if(keys[i] != set.keys[j]){
+          return keys[i] > set.keys[j] ? 1 : -1;
+        }
+        long[][] buf = buffers.get();
+        long[] x = containers[i].words(buf[0]);
+        long[] y = set.containers[j].words(buf[1]);
+        for(int k = BITMAP_WORDS - 1; k >= 0; k--){
+          if(x[k] != y[k]){
+            return Long.compareUnsigned(x[k], y[k]);
+          }
+        }
+        i--;
+        j--;
+      }
+      return i >= 0 ? 1 : j >= 0 ? -1 : 0;
+    }
+
+  @Override
+    public String toString(){
+      StringBuilder sb = new StringBuilder("{");
+      for(int i = nextSetBit(0); i >= 0; i = nextSetBit(i + 1)){
+        if(sb.length() > 1){
+          sb.append(", ");
+        }
+        sb.append(i);
+      }
+      sb.append("}");
+      return sb.toString();
+    }
+
+  /**
+   * returns the number of words the containers occupy,
+   * for the benchmark
+   */
+  long footprint(){
+    long words = 0;
+    for(int i = 0; i < size; i++){
+      words += containers[i].footprint();
+    }
+    return words;
+  }
+
+  /**
+   * returns the numbers of array, bitmap and run containers,
+   * for the benchmark
+   */
+  int[] containerCounts(){
+    int[] counts = new int[3];
+    for(int i = 0; i < size; i++){
+      if(containers[i] instanceof ArrayContainer){
+        counts[0]++;
+      }
+      else if(containers[i] instanceof BitmapContainer){
+        counts[1]++;
+      }
+      else{
+        counts[2]++;
+      }
+    }
+    return counts;
+  }
+
+  private static Container apply(Container x, Container y, int op){
+    if(op == AND){
+      return and(x, y);
+    }
+    else if(op == OR){
+      return or(x, y);
+    }
+    else if(op == AND_NOT){
+      return andNot(x, y);
+    }
+    else{
+      return xor(x, y);
+    }
+  }
+
+  private static Container and(Container x, Container y){
+    if(x instanceof ArrayContainer){
+      return ((ArrayContainer)x).filter(y, true);
+    }
+    if(y instanceof ArrayContainer){
+      return ((ArrayContainer)y).filter(x, true);
+    }
+    long[][] buf = buffers.get();
+    long[] a = x.words(buf[0]);
+    long[] b = y.words(buf[1]);
+    long[] r = buf[2];
+    for(int i = 0; i < BITMAP_WORDS; i++){
+      r[i] = a[i] & b[i];
+    }
+    return fromWords(r);
+  }
+
+  private static Container or(Container x, Container y){
+    if(x instanceof ArrayContainer && y instanceof ArrayContainer &&
+        x.cardinality() + y.cardinality() <= ARRAY_MAX){
+      return ((ArrayContainer)x).merge((ArrayContainer)y, OR);
+    }
+    if(x instanceof RunContainer && y instanceof RunContainer){
+      Container c = ((RunContainer)x).union((RunContainer)y);
+      if(c != null){
+        return c;
+      }
+    }
+    long[][] buf = buffers.get();
+    long[] a = x.words(buf[0]);
+    long[] b = y.words(buf[1]);
+    long[] r = buf[2];
+    for(int i = 0; i < BITMAP_WORDS; i++){
+      r[i] = a[i] | b[i];
+    }
+    return fromWords(r);
+  }
+
+  private static Container andNot(Container x, Container y){
+    if(x instanceof ArrayContainer){
+      return ((ArrayContainer)x).filter(y, false);
+    }
+    long[][] buf = buffers.get();
+    long[] a = x.words(buf[0]);
+    long[] b = y.words(buf[1]);
+    long[] r = buf[2];
+    for(int i = 0; i < BITMAP_WORDS; i++){
+      r[i] = a[i] & ~b[i];
+    }
+    return fromWords(r);
+  }
+
+  private static Container xor(Container x, Container y){
+    if(x instanceof ArrayContainer && y instanceof ArrayContainer &&
+        x.cardinality() + y.cardinality() <= ARRAY_MAX){
+      return ((ArrayContainer)x).merge((ArrayContainer)y, XOR);
+    }
+    long[][] buf = buffers.get();
+    long[] a = x.words(buf[0]);
+    long[] b = y.words(buf[1]);
+    long[] r = buf[2];
+    for(int i = 0; i < BITMAP_WORDS; i++){
+      r[i] = a[i] ^ b[i];
+    }
+    return fromWords(r);
+  }
+
+  private static boolean isSubset(Container x, Container y){
+    if(x.cardinality() > y.cardinality()){
+      return false;
+    }
+    if(x instanceof ArrayContainer){
+      return ((ArrayContainer)x).countIn(y, x.cardinality() + 1) == x.cardinality();
+    }
+    long[][] buf = buffers.get();
+    long[] a = x.words(buf[0]);
+    long[] b = y.words(buf[1]);
+    for(int i = 0; i < BITMAP_WORDS; i++){
+      if((a[i] & ~b[i]) != 0){
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static boolean intersects(Container x, Container y){
+    if(x instanceof ArrayContainer){
+      return ((ArrayContainer)x).countIn(y, 1) > 0;
+    }
+    if(y instanceof ArrayContainer){
+      return ((ArrayContainer)y).countIn(x, 1) > 0;
+    }
+    long[][] buf = buffers.get();
+    long[] a = x.words(buf[0]);
+    long[] b = y.words(buf[1]);
+    for(int i = 0; i < BITMAP_WORDS; i++){
+      if((a[i] & b[i]) != 0){
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static int intersectionCardinality(Container x, Container y){
+    if(x instanceof ArrayContainer){
+      return ((ArrayContainer)x).countIn(y, Integer.MAX_VALUE);
+    }
+    if(y instanceof ArrayContainer){
+      return ((ArrayContainer)y).countIn(x, Integer.MAX_VALUE);
+    }
+    long[][] buf = buffers.get();
+    long[] a = x.words(buf[0]);
+    long[] b = y.words(buf[1]);
+    int c = 0;
+    for(int i = 0; i < BITMAP_WORDS; i++){
+      c += Long.bitCount(a[i] & b[i]);
+    }
+    return c;
+  }
+
+  /**
+   * returns the smallest container holding the members given by
+   * the 1024 words, which are not kept; null if there are none
+   */
+  private static Container fromWords(long[] w){
+    int card = 0;
+    int runs = 0;
+    long carry = 0;
+    for(int i = 0; i < BITMAP_WORDS; i++){
+      long word = w[i];
+      card += Long.bitCount(word);
+      // a run starts at each member whose predecessor is absent
+      runs += Long.bitCount(word & ~((word << 1) | carry));
+      carry = word >>> 63;
+    }
+    if(card == 0){
+      return null;
+    }
+    // sizes in chars: 2 per run, 1 per array member, 4096 for a bitmap
+    if(2 * runs < Math.min(card, ARRAY_MAX)){
+      // the firsts and the lasts of the runs come in increasing
+      // order, each to be put at its own parity
+      char[] r = new char[2 * runs];
+      int firsts = 0, lasts = 1;
+      for(int i = 0; i < BITMAP_WORDS; i++){
+        long word = w[i];
+        if(word == 0){
+          continue;
+        }
+        long before = i > 0 ? w[i - 1] >>> 63 : 0;
+        long after = i + 1 < BITMAP_WORDS ? w[i + 1] << 63 : 0;
+        long first = word & ~((word << 1) | before);
+        long last = word & ~((word >>> 1) | after);
+        while(first != 0){
+          r[firsts] = (char)(64 * i + Long.numberOfTrailingZeros(first));
+          firsts += 2;
+          first &= first - 1;
+        }
+        while(last != 0){
+          r[lasts] = (char)(64 * i + Long.numberOfTrailingZeros(last));
+          lasts += 2;
+          last &= last - 1;
+        }
+      }
+      return new RunContainer(r, runs);
+    }
+    if(card <= ARRAY_MAX){
+      char[] a = new char[card];
+      int k = 0;
+      for(int i = 0; i < BITMAP_WORDS; i++){
+        long word = w[i];
+        while(word != 0){
+          a[k++] = (char)(64 * i + Long.numberOfTrailingZeros(word));
+          word &= word - 1;
+        }
+      }
+      return new ArrayContainer(a, card);
+    }
+    return new BitmapContainer(w.clone(), card);
+  }
+
+  /**
+   * returns the container of the k sorted members in the array,
+   * which is kept if it becomes an array container; null if k = 0
+   */
+  private static Container pack(char[] a, int k){
+    if(k == 0){
+      return null;
+    }
+    int runs = 1;
+    for(int i = 1; i < k; i++){
+      if(a[i] != a[i - 1] + 1){
+        runs++;
+      }
+    }
+    if(2 * runs >= k){
+      return new ArrayContainer(a, k);
+    }
+    char[] r = new char[2 * runs];
+    int j = 0;
+    r[j++] = a[0];
+    for(int i = 1; i < k; i++){
+      if(a[i] != a[i - 1] + 1){
+        r[j++] = a[i - 1];
+        r[j++] = a[i];
+      }
+    }
+    r[j] = a[k - 1];
+    return new RunContainer(r, runs);
+  }
+
+  private static int nextIn(long[] w, int from){
+    int k = from >>> 6;
+    long word = w[k] & (WORD_MASK << from);
+    while(true){
+      if(word != 0){
+        return 64 * k + Long.numberOfTrailingZeros(word);
+      }
+      if(++k == BITMAP_WORDS){
+        return -1;
+      }
+      word = w[k];
+    }
+  }
+
+  private static int nextAbsentIn(long[] w, int from){
+    int k = from >>> 6;
+    long word = ~w[k] & (WORD_MASK << from);
+    while(true){
+      if(word != 0){
+        return 64 * k + Long.numberOfTrailingZeros(word);
+      }
+      if(++k == BITMAP_WORDS){
+        return CHUNK_SIZE;
+      }
+      word = ~w[k];
+    }
+  }
+
+  /**
+   * The members of a chunk, given by their low 16 bits.
+   * A container in a set is never empty.
+   */
+  private static abstract class Container{
+    abstract int cardinality();
+
+    abstract boolean contains(int x);
+
+    /**
+     * returns the container with x added, which is either this
+     * container or a new one
+     */
+    abstract Container add(int x);
+
+    /**
+     * returns the container with x removed, which is either this
+     * container or a new one
+     */
+    abstract Container remove(int x);
+
+    /**
+     * returns the smallest member not smaller than x, or -1
+     */
+    abstract int next(int x);
+
+    /**
+     * returns the smallest non-member not smaller than x,
+     * or CHUNK_SIZE
+     */
+    abstract int nextAbsent(int x);
+
+    abstract int last();
+
+    abstract void orInto(long[] w);
+
+    /**
+     * puts the members with the given high bits into the array
+     * from the position, returning the position after them
+     */
+    abstract int copyTo(int[] a, int pos, int high);
+
+    abstract Container copy();
+
+    /**
+     * returns the number of words the members occupy
+     */
+    abstract int footprint();
+
+    /**
+     * returns the 1024 words of the members: those of a bitmap
+     * container itself, or the given buffer filled otherwise
+     */
+    long[] words(long[] buffer){
+      Arrays.fill(buffer, 0);
+      orInto(buffer);
+      return buffer;
+    }
+  }
+
+  private static final class ArrayContainer extends Container{
+    private char[] content;
+    private int card;
+
+    ArrayContainer(char[] content, int card){
+      this.content = content;
+      this.card = card;
+    }
+
+    @Override
+      int cardinality(){
+        return card;
+      }
+
+    @Override
+      boolean contains(int x){
+        return Arrays.binarySearch(content, 0, card, (char)x) >= 0;
+      }
+
+    @Override
+      Container add(int x){
+        int i = Arrays.binarySearch(content, 0, card, (char)x);
+        if(i >= 0){
+          return this;
+        }
+        if(card == ARRAY_MAX){
+          long[] w = new long[BITMAP_WORDS];
+          orInto(w);
+          w[x >>> 6] |= 1L << x;
+          return new BitmapContainer(w, card + 1);
+        }
+        i = -i - 1;
+        if(card == content.length){
+          content = Arrays.copyOf(content, Math.min(ARRAY_MAX, 2 * card + 4));
+        }
+        System.arraycopy(content, i, content, i + 1, card - i);
+        content[i] = (char)x;
+        card++;
+        return this;
+      }
+
+    @Override
+      Container remove(int x){
+        int i = Arrays.binarySearch(content, 0, card, (char)x);
+        if(i >= 0){
+          System.arraycopy(content, i + 1, content, i, card - i - 1);
+          card--;
+        }
+        return this;
+      }
+
+    @Override
+      int next(int x){
+        int i = Arrays.binarySearch(content, 0, card, (char)x);
+        if(i < 0){
+          i = -i - 1;
+        }
+        return i < card ? content[i] : -1;
+      }
+
+    @Override
+      int nextAbsent(int x){
+        int i = Arrays.binarySearch(content, 0, card, (char)x);
+        if(i < 0){
+          return x;
+        }
+        while(i < card && content[i] == x){
+          i++;
+          x++;
+        }
+        return x;
+      }
+
+    @Override
+      int last(){
+        return content[card - 1];
+      }
+
+    @Override
+      void orInto(long[] w){
+        for(int i = 0; i < card; i++){
+          w[content[i] >>> 6] |= 1L << content[i];
+        }
+      }
+
+    @Override
+      int copyTo(int[] a, int pos, int high){
+        for(int i = 0; i < card; i++){
+          a[pos++] = high | content[i];
+        }
+        return pos;
+      }
+
+    @Override
+      Container copy(){
+        return new ArrayContainer(Arrays.copyOf(content, card), card);
+      }
+
+    @Override
+      int footprint(){
+        return (content.length + 3) / 4;
+      }
+
+    /**
+     * returns the number of the members contained in the given
+     * container, stopping at the limit
+     */
+    int countIn(Container c, int limit){
+      return scan(c, true, null, limit);
+    }
+
+    /**
+     * returns the members that are (if in) or are not (otherwise)
+     * in the given container, or null if there are none
+     */
+    Container filter(Container c, boolean in){
+      char[] r = new char[card];
+      return pack(r, scan(c, in, r, card));
+    }
+
+    /**
+     * finds the members that are (if in) or are not (otherwise) in
+     * the given container, up to the limit, putting them into out
+     * unless it is null, and returns their number; an array or
+     * a run container is walked along with this container
+     * rather than searched
+     */
+    private int scan(Container c, boolean in, char[] out, int limit){
+      int count = 0;
+      if(c instanceof ArrayContainer){
+        ArrayContainer a = (ArrayContainer)c;
+        int j = 0;
+        for(int i = 0; i < card && count < limit; i++){
+          int x = content[i];
+          while(j < a.card && a.content[j] < x){
+            j++;
+          }
+          if((j < a.card && a.content[j] == x) == in){
+            if(out != null){
+              out[count] = (char)x;
+            }
+            count++;
+          }
+        }
+      }
+      else if(c instanceof RunContainer){
+        RunContainer r = (RunContainer)c;
+        int j = 0;
+        for(int i = 0; i < card && count < limit; i++){
+          int x = content[i];
+          while(j < r.nruns && r.runs[2 * j + 1] < x){
+            j++;
+          }
+          if((j < r.nruns && r.runs[2 * j] <= x) == in){
+            if(out != null){
+              out[count] = (char)x;
+            }
+            count++;
+          }
+        }
+      }
+      else{
+        for(int i = 0; i < card && count < limit; i++){
+          if(c.contains(content[i]) == in){
+            if(out != null){
+              out[count] = content[i];
+            }
+            count++;
+          }
+        }
+      }
+      return count;
+    }
+
+    /**
+     * returns the union (op = OR) or the symmetric difference
+     * (op = XOR) with the given array container, which has at most
+     * ARRAY_MAX - card members, or null if it is empty
+     */
+    Container merge(ArrayContainer c, int op){
+      char[] r = new char[card + c.card];
+      int i = 0, j = 0, k = 0;
+      while(i < card && j < c.card){
+        if(content[i] < c.content[j]){
+          r[k++] = content[i++];
+        }
+        else if(content[i] > c.content[j]){
+          r[k++] = c.content[j++];
+        }
+        else{
+          if(op == OR){
+            r[k++] = content[i];
+          }
+          i++;
+          j++;
+        }
+      }
+      while(i < card){
+        r[k++] = content[i++];
+      }
+      while(j < c.card){
+        r[k++] = c.content[j++];
+      }
+      return pack(r, k);
+    }
+  }
+
+  private static final class BitmapContainer extends Container{
+    private final long[] words;
+    private int card;
+
+    BitmapContainer(long[] words, int card){
+      this.words = words;
+      this.card = card;
+    }
+
+    @Override
+      int cardinality(){
+        return card;
+      }
+
+    @Override
+      boolean contains(int x){
+        return (words[x >>> 6] & (1L << x)) != 0;
+      }
+
+    @Override
+      Container add(int x){
+        if(!contains(x)){
+          words[x >>> 6] |= 1L << x;
+          card++;
+        }
+        return this;
+      }
+
+    @Override
+      Container remove(int x){
+        if(!contains(x)){
+          return this;
+        }
+        words[x >>> 6] &= ~(1L << x);
+        card--;
+        if(card > ARRAY_MAX){
+          return this;
+        }
+        char[] a = new char[ARRAY_MAX];
+        int k = 0;
+        for(int v = nextIn(words, 0); v >= 0;
+            v = v + 1 < CHUNK_SIZE ? nextIn(words, v + 1) : -1){
+          a[k++] = (char)v;
+        }
+        return new ArrayContainer(a, k);
+      }
+
+    @Override
+      int next(int x){
+        return nextIn(words, x);
+      }
+
+    @Override
+      int nextAbsent(int x){
+        return nextAbsentIn(words, x);
+      }
+
+    @Override
+      int last(){
+        int i = BITMAP_WORDS - 1;
+        while(words[i] == 0){
+          i--;
+        }
+        return 64 * i + 63 - Long.numberOfLeadingZeros(words[i]);
+      }
+
+    @Override
+      void orInto(long[] w){
+        for(int i = 0; i < BITMAP_WORDS; i++){
+          w[i] |= words[i];
+        }
+      }
+
+    @Override
+      int copyTo(int[] a, int pos, int high){
+        for(int i = 0; i < BITMAP_WORDS; i++){
+          long word = words[i];
+          while(word != 0){
+            a[pos++] = high | (64 * i + Long.numberOfTrailingZeros(word));
+            word &= word - 1;
+          }
+        }
+        return pos;
+      }
+
+    @Override
+      Container copy(){
+        return new BitmapContainer(words.clone(), card);
+      }
+
+    @Override
+      int footprint(){
+        return BITMAP_WORDS;
+      }
+
+    @Override
+      long[] words(long[] buffer){
+        return words;
+      }
+  }
+
+  private static final class RunContainer extends Container{
+    /**
+     * the first and the last members of each run, the runs being
+     * disjoint and in increasing order
+     */
+    private final char[] runs;
+    private final int nruns;
+    private final int card;
+
+    RunContainer(char[] runs, int nruns){
+      this.runs = runs;
+      this.nruns = nruns;
+      int c = 0;
+      for(int i = 0; i < nruns; i++){
+        c += runs[2 * i + 1] - runs[2 * i] + 1;
+      }
+      this.card = c;
+    }
+
+    /**
+     * returns the index of the last run starting at or before x,
+     * or -1 if there is none
+     */
+    private int runAtOrBefore(int x){
+      int lo = 0, hi = nruns - 1;
+      while(lo <= hi){
+        int mid = (lo + hi) >>> 1;
+        if(runs[2 * mid] <= x){
+          lo = mid + 1;
+        }
+        else{
+          hi = mid - 1;
+        }
+      }
+      return hi;
+    }
+
+    /**
+     * returns the union with the given run container as a run
+     * container, or null if it would not be the smallest container
+     */
+    Container union(RunContainer c){
+      char[] r = new char[2 * (nruns + c.nruns)];
+      int k = 0;
+      int i = 0, j = 0;
+      while(i < nruns || j < c.nruns){
+        int from, to;
+        if(j == c.nruns || (i < nruns && runs[2 * i] <= c.runs[2 * j])){
+          from = runs[2 * i];
+          to = runs[2 * i + 1];
+          i++;
+        }
+        else{
+          from = c.runs[2 * j];
+          to = c.runs[2 * j + 1];
+          j++;
+        }
+        if(k > 0 && from <= r[k - 1] + 1){
+          if(to > r[k - 1]){
+            r[k - 1] = (char)to;
+          }
+        }
+        else{
+          r[k++] = (char)from;
+          r[k++] = (char)to;
+        }
+      }
+      RunContainer result = new RunContainer(r, k / 2);
+      if(k >= Math.min(result.card, ARRAY_MAX)){
+        return null;
+      }
+      return result;
+    }
+
+    @Override
+      int cardinality(){
+        return card;
+      }
+
+    @Override
+      boolean contains(int x){
+        int r = runAtOrBefore(x);
+        return r >= 0 && x <= runs[2 * r + 1];
+      }
+
+    /**
+     * returns the members in an array or a bitmap container,
+     * which can be modified in place
+     */
+    private Container unpack(){
+      long[] w = new long[BITMAP_WORDS];
+      orInto(w);
+      if(card > ARRAY_MAX){
+        return new BitmapContainer(w, card);
+      }
+      char[] a = new char[Math.min(ARRAY_MAX, card + 4)];
+      copyTo(a);
+      return new ArrayContainer(a, card);
+    }
+
+    private void copyTo(char[] a){
+      int k = 0;
+      for(int i = 0; i < nruns; i++){
+        for(int v = runs[2 * i]; v <= runs[2 * i + 1]; v++){
+          a[k++] = (char)v;
+        }
+      }
+    }
+
+    @Override
+      Container add(int x){
+        return contains(x) ? this : unpack().add(x);
+      }
+
+    @Override
+      Container remove(int x){
+        return contains(x) ? unpack().remove(x) : this;
+      }
+
+    @Override
+      int next(int x){
+        int r = runAtOrBefore(x);
+        if(r >= 0 && x <= runs[2 * r + 1]){
+          return x;
+        }
+        return r + 1 < nruns ? runs[2 * (r + 1)] : -1;
+      }
+
+    @Override
+      int nextAbsent(int x){
+        int r = runAtOrBefore(x);
+        while(r >= 0 && r < nruns && x <= runs[2 * r + 1] && x >= runs[2 * r]){
+          x = runs[2 * r + 1] + 1;
+          r++;
+        }
+        return x;
+      }
+
+    @Override
+      int last(){
+        return runs[2 * nruns - 1];
+      }
+
+    @Override
+      void orInto(long[] w){
+        for(int i = 0; i < nruns; i++){
+          int from = runs[2 * i];
+          int to = runs[2 * i + 1];
+          int first = from >>> 6;
+          int last = to >>> 6;
+          for(int k = first; k <= last; k++){
+            long mask = WORD_MASK;
+            if(k == first){
+              mask &= WORD_MASK << from;
+            }
+            if(k == last){
+              mask &= WORD_MASK >>> (63 - (to & 63));
+            }
+            w[k] |= mask;
+          }
+        }
+      }
+
+    @Override
+      int copyTo(int[] a, int pos, int high){
+        for(int i = 0; i < nruns; i++){
+          for(int v = runs[2 * i]; v <= runs[2 * i + 1]; v++){
+            a[pos++] = high | v;
+          }
+        }
+        return pos;
+      }
+
+    @Override
+      Container copy(){
+        // a run container is never modified in place
+        return this;
+      }
+
+    @Override
+      int footprint(){
+        return (runs.length + 3) / 4;
+      }
+  }
+
+  public static void main(String[] args){
+    int n = args.length > 0 ? Integer.parseInt(args[0]) : 400000;
+    int count = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+    int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+
+    // sets of a few clustered intervals with scattered members,
+    // like the neighbourhoods and components of line graphs
+    Random random = new Random(1);
+    int[][] members = new int[count][];
+    for(int i = 0; i < count; i++){
+      FixedBitSet fbs = new FixedBitSet(n);
+      int clusters = 1 + random.nextInt(8);
+      for(int c = 0; c < clusters; c++){
+        int from = random.nextInt(n);
+        int to = Math.min(n, from + random.nextInt(n / 20));
+        fbs.set(from, to);
+      }
+      int scattered = random.nextInt(n / 50);
+      for(int s = 0; s < scattered; s++){
+        fbs.set(random.nextInt(n));
+      }
+      members[i] = fbs.toArray();
+    }
+
+    XBitSet[] xs = new XBitSet[count];
+    FixedBitSet[] fs = new FixedBitSet[count];
+    ChunkedSet[] cs = new ChunkedSet[count];
+    long arrayWords = 0;
+    for(int i = 0; i < count; i++){
+      xs[i] = new XBitSet(members[i]);
+      fs[i] = new FixedBitSet(n, members[i]);
+      cs[i] = new ChunkedSet(members[i]);
+      arrayWords += (members[i].length + 1) / 2;
+    }
+    int[] counts = new int[3];
+    long chunkedWords = 0;
+    for(int i = 0; i < count; i++){
+      int[] c = cs[i].containerCounts();
+      for(int k = 0; k < 3; k++){
+        counts[k] += c[k];
+      }
+      chunkedWords += cs[i].footprint();
+    }
+    System.out.println("n = " + n + ", words per set: " +
+        "array " + arrayWords / count + ", " +
+        "bit set " + (n + 63) / 64 + ", " +
+        "chunked " + chunkedWords / count +
+        " (" + counts[0] + " array, " + counts[1] + " bitmap, " +
+        counts[2] + " run containers)");
+
+    for(int r = 0; r < rounds; r++){
+      long t0 = System.nanoTime();
+      long check0 = 0;
+      for(int i = 0; i < count; i++){
+        XBitSet a = xs[i];
+        for(int j = 0; j < count; j += 7){
+          XBitSet b = xs[j];
+          if(a.isSubset(b)){
+            check0++;
+          }
+          if(a.intersects(b)){
+            check0++;
+          }
+          check0 += a.intersectionCardinality(b);
+          check0 += a.unionWith(b).cardinality();
+          check0 += a.subtract(b).nextSetBit(0);
+        }
+      }
+      long t1 = System.nanoTime();
+      long check1 = 0;
+      for(int i = 0; i < count; i++){
+        FixedBitSet a = fs[i];
+        for(int j = 0; j < count; j += 7){
+          FixedBitSet b = fs[j];
+          if(a.isSubset(b)){
+            check1++;
+          }
+          if(a.intersects(b)){
+            check1++;
+          }
+          check1 += a.intersectionCardinality(b);
+          check1 += a.unionWith(b).cardinality();
+          check1 += a.subtract(b).nextSetBit(0);
+        }
+      }
+      long t2 = System.nanoTime();
+      long check2 = 0;
+      for(int i = 0; i < count; i++){
+        ChunkedSet a = cs[i];
+        for(int j = 0; j < count; j += 7){
+          ChunkedSet b = cs[j];
+          if(a.isSubset(b)){
+            check2++;
+          }
+          if(a.intersects(b)){
+            check2++;
+          }
+          check2 += a.intersectionCardinality(b);
+          check2 += a.unionWith(b).cardinality();
+          check2 += a.subtract(b).nextSetBit(0);
+        }
+      }
+      long t3 = System.nanoTime();
+      if(r == rounds - 1){
+        System.out.println("XBitSet " + (t1 - t0) / 1000 + " us, " +
+            "FixedBitSet " + (t2 - t1) / 1000 + " us, " +
+            "ChunkedSet " + (t3 - t2) / 1000 + " us" +
+            (check0 == check1 && check1 == check2 ?
+             "" : " (results differ)"));
+      }
+    }
+  }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright (c) 2017, Hiromu Ohtsuka
+*/
+
+package tw.heuristic;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Long-lived server mode of {@code MainDecomposer}.
+ * Graph requests are read one after another from the standard input
+ * and answered on the standard output, so that the JIT-compiled code
+ * and the heap of a single JVM are reused across instances.
+ * <p>
+ * A request consists of a header line
+ * <pre>
+ *   r length [timeMS [seed]]
+ * </pre>
+ * followed by exactly {@code length} bytes holding the graph in
+ * {@code gr} format.
+ * The response is the ordinary output of the heuristic decomposer for
+ * that graph (comment lines, the improved decompositions followed by
+ * "=" if {@code -p} is given, and the best decomposition found within
+ * {@code timeMS}), terminated by the line {@code c done}.
+ * The options given on the command line, other than the seed, apply
+ * to every request.
+ * The server exits at the end of the input.
+ */
+public class DecompositionServer{
+  public static final String END_OF_RESPONSE = "c done";
+
+  private InputStream in;
+  private long defaultSeed;
+  private MainDecomposer.Options options;
+
+  public DecompositionServer(InputStream in, long defaultSeed,
+      MainDecomposer.Options options){
+    this.in = new BufferedInputStream(in);
+    this.defaultSeed = defaultSeed;
+    this.options = options;
+  }
+
+  public void serve() throws IOException{
+    String header;
+    while((header = readLine()) != null){
+      header = header.trim();
+      if(header.isEmpty() || header.startsWith("c")){
+        continue;
+      }
+      String[] s = header.split("\\s+");
+      if(!"r".equals(s[0]) || s.length < 2){
+        throw new RuntimeException("!!Invalid request header: " + header);
+      }
+      int length = Integer.parseInt(s[1]);
+      long timeMS = s.length >= 3 ? Long.parseLong(s[2]) : MainDecomposer.MAX_TIME;
+      long seed = s.length >= 4 ? Long.parseLong(s[3]) : defaultSeed;
+
+      byte[] request = in.readNBytes(length);
+      if(request.length < length){
+        throw new RuntimeException("!!Truncated request: " +
+            request.length + " of " + length + " bytes");
+      }
+
+      try{
+        Graph graph = Graph.readGraph(new ByteArrayInputStream(request));
+        if(graph == null){
+          throw new RuntimeException("!!Unreadable graph");
+        }
+        MainDecomposer md = new MainDecomposer(seed);
+        options.applyTo(md);
+        md.setTimeLimit(timeMS);
+        TreeDecomposition td = md.decompose(graph);
+        td.writeTo(System.out);
+      }
+      catch(RuntimeException e){
+        System.out.println("c error: " + e.getMessage());
+      }
+      System.out.println(END_OF_RESPONSE);
+      System.out.flush();
+    }
+  }
+
+  private String readLine() throws IOException{
+    StringBuilder sb = new StringBuilder();
+    int c = in.read();
+    if(c < 0){
+      return null;
+    }
+    while(c >= 0 && c != '\n'){
+      sb.append((char)c);
+      c = in.read();
+    }
+    return sb.toString();
+  }
+}
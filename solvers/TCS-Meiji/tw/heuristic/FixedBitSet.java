@@ -0,0 +1,677 @@
+/*
+ * Copyright (c) 2017, Hiromu Ohtsuka
+*/
+
+package tw.heuristic;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * A bit set over a plain {@code long[]} whose length is fixed when
+ * the set is created, normally from the number of vertices of the
+ * graph, so that no bookkeeping of the words in use takes place.
+ * The loops over the words have no bounds other than the array
+ * lengths so that the JIT compiler can unroll them.
+ * The array grows only when a member beyond the initial size
+ * is added, which does not happen for vertex sets of a graph
+ * sized from its number of vertices.
+ * <p>
+ * The operations mirror those of {@code XBitSet}: {@code and},
+ * {@code or}, {@code andNot} and {@code xor} modify the target set,
+ * while {@code intersectWith}, {@code unionWith} and {@code subtract}
+ * create a new set.
+ */
+public final class FixedBitSet
+implements Comparable< FixedBitSet >, Cloneable{
+  private static final long WORD_MASK = 0xFFFFFFFFFFFFFFFFL;
+  private long[] words;
+
+  public FixedBitSet(int n){
+    words = new long[wordIndex(n - 1) + 1];
+  }
+
+  public FixedBitSet(int n, int[] a){
+    int max = n - 1;
+    for(int i = 0; i < a.length; i++){
+      if(a[i] > max){
+        max = a[i];
+      }
+    }
+    words = new long[wordIndex(max) + 1];
+    for(int i = 0; i < a.length; i++){
+      words[a[i] >>> 6] |= 1L << a[i];
+    }
+  }
+
+  public FixedBitSet(int[] a){
+    this(0, a);
+  }
+
+  private FixedBitSet(long[] words){
+    this.words = words;
+  }
+
+  public static FixedBitSet valueOf(int n, long[] longs){
+    long[] words = new long[Math.max(wordIndex(n - 1) + 1, longs.length)];
+    System.arraycopy(longs, 0, words, 0, longs.length);
+    return new FixedBitSet(words);
+  }
+
+  /**
+   * returns the words of this set, not a copy, which may end
+   * with zero words
+   */
+  long[] words(){
+    return words;
+  }
+
+  private static int wordIndex(int i){
+    return i < 0 ? -1 : i >>> 6;
+  }
+
+  private void ensureWords(int k){
+    if(words.length < k){
+      words = Arrays.copyOf(words, k);
+    }
+  }
+
+  public void and(FixedBitSet set){
+    long[] w = words;
+    long[] v = set.words;
+    int m = Math.min(w.length, v.length);
+    for(int i = 0; i < m; i++){
+      w[i] &= v[i];
+    }
+    for(int i = m; i < w.length; i++){
+      w[i] = 0;
+    }
+  }
+
+  public void andNot(FixedBitSet set){
+    long[] w = words;
+    long[] v = set.words;
+    int m = Math.min(w.length, v.length);
+    for(int i = 0; i < m; i++){
+      w[i] &= ~v[i];
+    }
+  }
+
+  public void or(FixedBitSet set){
+    long[] v = set.words;
+    if(words.length < v.length){
+      ensureWords(lastWord(v) + 1);
+    }
+    long[] w = words;
+    int m = Math.min(w.length, v.length);
+    for(int i = 0; i < m; i++){
+      w[i] |= v[i];
+    }
+  }
+
+  public void xor(FixedBitSet set){
+    long[] v = set.words;
+    if(words.length < v.length){
+      ensureWords(lastWord(v) + 1);
+    }
+    long[] w = words;
+    int m = Math.min(w.length, v.length);
+    for(int i = 0; i < m; i++){
+      w[i] ^= v[i];
+    }
+  }
+
+  /**
+   * makes this set a copy of the given set, reusing the words
+   * of this set if they suffice
+   */
+  public void assign(FixedBitSet set){
+    long[] v = set.words;
+    if(words.length < v.length){
+      ensureWords(lastWord(v) + 1);
+    }
+    long[] w = words;
+    int m = Math.min(w.length, v.length);
+    System.arraycopy(v, 0, w, 0, m);
+    for(int i = m; i < w.length; i++){
+      w[i] = 0;
+    }
+  }
+
+  private static int lastWord(long[] v){
+    int i = v.length - 1;
+    while(i >= 0 && v[i] == 0){
+      i--;
+    }
+    return i;
+  }
+
+  public FixedBitSet intersectWith(FixedBitSet set){
+    FixedBitSet result = clone();
+    result.and(set);
+    return result;
+  }
+
+  public FixedBitSet unionWith(FixedBitSet set){
+    FixedBitSet result = clone();
+    result.or(set);
+    return result;
+  }
+
+  public FixedBitSet subtract(FixedBitSet set){
+    FixedBitSet result = clone();
+    result.andNot(set);
+    return result;
+  }
+
+  public boolean isSubset(FixedBitSet set){
+    long[] w = words;
+    long[] v = set.words;
+    int m = Math.min(w.length, v.length);
+    int i = 0;
+    // four words per test, so that the loop has one branch per four
+    for(; i + 4 <= m; i += 4){
+      if(((w[i] & ~v[i]) | (w[i + 1] & ~v[i + 1]) |
+          (w[i + 2] & ~v[i + 2]) | (w[i + 3] & ~v[i + 3])) != 0){
+        return false;
+      }
+    }
+    for(; i < m; i++){
+      if((w[i] & ~v[i]) != 0){
+        return false;
+      }
+    }
+    for(i = m; i < w.length; i++){
+      if(w[i] != 0){
+        return false;
+      }
+    }
+    return true;
+  }
+
+  public boolean isSuperset(FixedBitSet set){
+    return set.isSubset(this);
+  }
+
+  public boolean intersects(FixedBitSet set){
+    long[] w = words;
+    long[] v = set.words;
+    int m = Math.min(w.length, v.length);
+    int i = 0;
+    for(; i + 4 <= m; i += 4){
+      if(((w[i] & v[i]) | (w[i + 1] & v[i + 1]) |
+          (w[i + 2] & v[i + 2]) | (w[i + 3] & v[i + 3])) != 0){
+        return true;
+      }
+    }
+    for(; i < m; i++){
+      if((w[i] & v[i]) != 0){
+        return true;
+      }
+    }
+    return false;
+  }
+
+  public boolean isDisjoint(FixedBitSet set){
+    return !intersects(set);
+  }
+
+  public int cardinality(){
+    long[] w = words;
+    // independent counters, so that the bit counts can overlap
+    int c0 = 0, c1 = 0, c2 = 0, c3 = 0;
+    int i = 0;
+    for(; i + 4 <= w.length; i += 4){
+      c0 += Long.bitCount(w[i]);
+      c1 += Long.bitCount(w[i + 1]);
+      c2 += Long.bitCount(w[i + 2]);
+      c3 += Long.bitCount(w[i + 3]);
+    }
+    for(; i < w.length; i++){
+      c0 += Long.bitCount(w[i]);
+    }
+    return c0 + c1 + c2 + c3;
+  }
+
+  /**
+   * returns the cardinality of the intersection with the given set
+   * without creating the intersection
+   */
+  public int intersectionCardinality(FixedBitSet set){
+    long[] w = words;
+    long[] v = set.words;
+    int m = Math.min(w.length, v.length);
+    int c0 = 0, c1 = 0, c2 = 0, c3 = 0;
+    int i = 0;
+    for(; i + 4 <= m; i += 4){
+      c0 += Long.bitCount(w[i] & v[i]);
+      c1 += Long.bitCount(w[i + 1] & v[i + 1]);
+      c2 += Long.bitCount(w[i + 2] & v[i + 2]);
+      c3 += Long.bitCount(w[i + 3] & v[i + 3]);
+    }
+    for(; i < m; i++){
+      c0 += Long.bitCount(w[i] & v[i]);
+    }
+    return c0 + c1 + c2 + c3;
+  }
+
+  /**
+   * returns the number of the members of this set not in the given set
+   */
+  public int differenceCardinality(FixedBitSet set){
+    long[] w = words;
+    long[] v = set.words;
+    int m = Math.min(w.length, v.length);
+    int c = 0;
+    for(int i = 0; i < m; i++){
+      c += Long.bitCount(w[i] & ~v[i]);
+    }
+    for(int i = m; i < w.length; i++){
+      c += Long.bitCount(w[i]);
+    }
+    return c;
+  }
+
+  public int unionCardinality(FixedBitSet set){
+    return set.cardinality() + differenceCardinality(set);
+  }
+
+  /**
+   * returns {@code true} if the union with the given set has more
+   * than {@code k} members, stopping the count as soon as it does
+   */
+  public boolean unionCardinalityExceeds(FixedBitSet set, int k){
+    long[] w = words;
+    long[] v = set.words;
+    int m = Math.min(w.length, v.length);
+    int c = 0;
+    for(int i = 0; i < m; i++){
+      c += Long.bitCount(w[i] | v[i]);
+      if(c > k){
+        return true;
+      }
+    }
+    long[] rest = w.length > m ? w : v;
+    for(int i = m; i < rest.length; i++){
+      c += Long.bitCount(rest[i]);
+      if(c > k){
+        return true;
+      }
+    }
+    return false;
+  }
+
+  public boolean isEmpty(){
+    long[] w = words;
+    for(int i = 0; i < w.length; i++){
+      if(w[i] != 0){
+        return false;
+      }
+    }
+    return true;
+  }
+
+  public int length(){
+    int i = lastWord(words);
+    if(i < 0){
+      return 0;
+    }
+    return 64 * i + 64 - Long.numberOfLeadingZeros(words[i]);
+  }
+
+  public boolean get(int i){
+    int k = i >>> 6;
+    return k < words.length && (words[k] & (1L << i)) != 0;
+  }
+
+  public void set(int i){
+    int k = i >>> 6;
+    if(k >= words.length){
+      ensureWords(k + 1);
+    }
+    words[k] |= 1L << i;
+  }
+
+  public void set(int i, boolean value){
+    if(value){
+      set(i);
+    }
+    else{
+      clear(i);
+    }
+  }
+
+  public void set(int fromIndex, int toIndex){
+    if(fromIndex >= toIndex){
+      return;
+    }
+    ensureWords(wordIndex(toIndex - 1) + 1);
+    applyRange(fromIndex, toIndex, 1);
+  }
+
+  public void set(int fromIndex, int toIndex, boolean value){
+    if(value){
+      set(fromIndex, toIndex);
+    }
+    else{
+      clear(fromIndex, toIndex);
+    }
+  }
+
+  public void clear(){
+    Arrays.fill(words, 0);
+  }
+
+  public void clear(int i){
+    int k = i >>> 6;
+    if(k < words.length){
+      words[k] &= ~(1L << i);
+    }
+  }
+
+  public void clear(int fromIndex, int toIndex){
+    toIndex = Math.min(toIndex, 64 * words.length);
+    if(fromIndex >= toIndex){
+      return;
+    }
+    applyRange(fromIndex, toIndex, 0);
+  }
+
+  public void flip(int i){
+    int k = i >>> 6;
+    if(k >= words.length){
+      ensureWords(k + 1);
+    }
+    words[k] ^= 1L << i;
+  }
+
+  public void flip(int fromIndex, int toIndex){
+    if(fromIndex >= toIndex){
+      return;
+    }
+    ensureWords(wordIndex(toIndex - 1) + 1);
+    applyRange(fromIndex, toIndex, 2);
+  }
+
+  /**
+   * sets (op = 1), clears (op = 0) or flips (op = 2) the bits
+   * from fromIndex (inclusive) to toIndex (exclusive)
+   */
+  private void applyRange(int fromIndex, int toIndex, int op){
+    int first = fromIndex >>> 6;
+    int last = (toIndex - 1) >>> 6;
+    for(int k = first; k <= last; k++){
+      long mask = WORD_MASK;
+      if(k == first){
+        mask &= WORD_MASK << fromIndex;
+      }
+      if(k == last){
+        mask &= WORD_MASK >>> -toIndex;
+      }
+      if(op == 1){
+        words[k] |= mask;
+      }
+      else if(op == 0){
+        words[k] &= ~mask;
+      }
+      else{
+        words[k] ^= mask;
+      }
+    }
+  }
+
+  public int nextSetBit(int fromIndex){
+    int k = fromIndex >>> 6;
+    long[] w = words;
+    if(k >= w.length){
+      return -1;
+    }
+    long word = w[k] & (WORD_MASK << fromIndex);
+    while(true){
+      if(word != 0){
+        return 64 * k + Long.numberOfTrailingZeros(word);
+      }
+      if(++k == w.length){
+        return -1;
+      }
+      word = w[k];
+    }
+  }
+
+  public int nextClearBit(int fromIndex){
+    int k = fromIndex >>> 6;
+    long[] w = words;
+    if(k >= w.length){
+      return fromIndex;
+    }
+    long word = ~w[k] & (WORD_MASK << fromIndex);
+    while(true){
+      if(word != 0){
+        return 64 * k + Long.numberOfTrailingZeros(word);
+      }
+      if(++k == w.length){
+        return 64 * w.length;
+      }
+      word = ~w[k];
+    }
+  }
+
+  public boolean hasSmaller(FixedBitSet set){
+    assert !isEmpty() && !set.isEmpty();
+    return nextSetBit(0) < set.nextSetBit(0);
+  }
+
+  public boolean hasSmallerVertexThan(FixedBitSet set){
+    if(isEmpty()){
+      return false;
+    }
+    else if(set.isEmpty()){
+      return true;
+    }
+    else{
+      return nextSetBit(0) < set.nextSetBit(0);
+    }
+  }
+
+  public int[] toArray(){
+    int[] result = new int[cardinality()];
+    int k = 0;
+    for(int i = nextSetBit(0); i >= 0; i = nextSetBit(i + 1)){
+      result[k++] = i;
+    }
+    return result;
+  }
+
+  /**
+   * returns the words up to the last non-zero one, as
+   * {@code BitSet.toLongArray} does
+   */
+  public long[] toLongArray(){
+    return Arrays.copyOf(words, lastWord(words) + 1);
+  }
+
+  public byte[] toByteArray(){
+    int len = (length() + 7) / 8;
+    byte[] bytes = new byte[len];
+    for(int i = 0; i < len; i++){
+      bytes[i] = (byte)(words[i >>> 3] >>> (8 * (i & 7)));
+    }
+    return bytes;
+  }
+
+  @Override
+    public FixedBitSet clone(){
+      return new FixedBitSet(words.clone());
+    }
+
+  @Override
+    public boolean equals(Object obj){
+      if(!(obj instanceof FixedBitSet)){
+        return false;
+      }
+      long[] w = words;
+      long[] v = ((FixedBitSet)obj).words;
+      int m = Math.min(w.length, v.length);
+      for(int i = 0; i < m; i++){
+        if(w[i] != v[i]){
+          return false;
+        }
+      }
+      for(int i = m; i < w.length; i++){
+        if(w[i] != 0){
+          return false;
+        }
+      }
+      for(int i = m; i < v.length; i++){
+        if(v[i] != 0){
+          return false;
+        }
+      }
+      return true;
+    }
+
+  @Override
+    public int hashCode(){
+      long h = 1234;
+      for(int i = lastWord(words); i >= 0; i--){
+        h ^= words[i] * (i + 1);
+      }
+      return (int)((h >> 32) ^ h);
+    }
+
+  /**
+   * Compares as {@code XBitSet.compareTo} does, viewing the bits
+   * as the binary representation of an integer.
+   */
+  @Override
+    public int compareTo(FixedBitSet set){
+      int l1 = length();
+      int l2 = set.length();
+      if(l1 != l2){
+        return l1 - l2;
+      }
+      for(int i = wordIndex(l1 - 1); i >= 0; i--){
+        if(words[i] != set.words[i]){
+          return Long.compareUnsigned(words[i], set.words[i]);
+        }
+      }
+      return 0;
+    }
+
+  @Override
+    public String toString(){
+      StringBuilder sb = new StringBuilder("{");
+      for(int i = nextSetBit(0); i >= 0; i = nextSetBit(i + 1)){
+        if(sb.length() > 1){
+          sb.append(", ");
+        }
+        sb.append(i);
+      }
+      sb.append("}");
+      return sb.toString();
+    }
+
+  /**
+   * Compares the set operations used by the decomposers on
+   * {@code XBitSet}, {@code VertexSet} and {@code FixedBitSet}.
+   * <pre>
+   *   java tw.heuristic.FixedBitSet [n [count [rounds]]]
+   * </pre>
+   */
+  public static void main(String[] args){
+    int n = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+    int count = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+    int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+
+    Random random = new Random(1);
+    int[][] members = new int[count][];
+    for(int i = 0; i < count; i++){
+      int[] a = new int[1 + random.nextInt(n / 2)];
+      for(int j = 0; j < a.length; j++){
+        a[j] = random.nextInt(n);
+      }
+      // ArraySet requires distinct elements
+      members[i] = new FixedBitSet(n, a).toArray();
+    }
+
+    XBitSet[] xs = new XBitSet[count];
+    FixedBitSet[] fs = new FixedBitSet[count];
+    VertexSet[] vs = new VertexSet[count];
+    for(int i = 0; i < count; i++){
+      xs[i] = new XBitSet(n, members[i]);
+      fs[i] = new FixedBitSet(n, members[i]);
+      vs[i] = new VertexSet(n, members[i]);
+    }
+
+    for(int r = 0; r < rounds; r++){
+      long t0 = System.nanoTime();
+      long check0 = 0;
+      for(int i = 0; i < count; i++){
+        XBitSet a = xs[i];
+        for(int j = 0; j < count; j += 7){
+          XBitSet b = xs[j];
+          if(a.isSubset(b)){
+            check0++;
+          }
+          if(a.intersects(b)){
+            check0++;
+          }
+          if(a.isDisjoint(b)){
+            check0++;
+          }
+          check0 += a.intersectionCardinality(b);
+          check0 += a.unionWith(b).cardinality();
+          check0 += a.subtract(b).nextSetBit(0);
+        }
+      }
+      long t1 = System.nanoTime();
+      long check1 = 0;
+      for(int i = 0; i < count; i++){
+        VertexSet a = vs[i];
+        for(int j = 0; j < count; j += 7){
+          VertexSet b = vs[j];
+          if(a.isSubset(b)){
+            check1++;
+          }
+          if(a.intersects(b)){
+            check1++;
+          }
+          if(a.isDisjoint(b)){
+            check1++;
+          }
+          check1 += a.intersectionCardinality(b);
+          check1 += a.unionWith(b).cardinality();
+          check1 += a.subtract(b).nextSetBit(0);
+        }
+      }
+      long t2 = System.nanoTime();
+      long check2 = 0;
+      for(int i = 0; i < count; i++){
+        FixedBitSet a = fs[i];
+        for(int j = 0; j < count; j += 7){
+          FixedBitSet b = fs[j];
+          if(a.isSubset(b)){
+            check2++;
+          }
+          if(a.intersects(b)){
+            check2++;
+          }
+          if(a.isDisjoint(b)){
+            check2++;
+          }
+          check2 += a.intersectionCardinality(b);
+          check2 += a.unionWith(b).cardinality();
+          check2 += a.subtract(b).nextSetBit(0);
+        }
+      }
+      long t3 = System.nanoTime();
+      if(r == rounds - 1){
+        System.out.println("XBitSet " + (t1 - t0) / 1000 + " us, " +
+            "VertexSet " + (t2 - t1) / 1000 + " us, " +
+            "FixedBitSet " + (t3 - t2) / 1000 + " us" +
+            (check0 == check1 && check1 == check2 ?
+             "" : " (results differ)"));
+      }
+    }
+  }
+}
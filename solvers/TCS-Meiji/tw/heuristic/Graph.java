@@ -4,20 +4,17 @@
 
 package tw.heuristic;
 
-import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
-import java.io.FileReader;
 import java.io.IOException;
 import java.io.PrintStream;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.BitSet;
 import java.util.Random;
-import java.util.Stack;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 /**
  * This class provides a representation of undirected simple graphs.
@@ -25,11 +22,21 @@ import java.util.Stack;
  * smaller than {@code n} where {@code n} is the number
  * of vertices of the graph.
  * The degree (the number of adjacent vertices) of each vertex
- * is stored in an array {@code degree} indexed by the vertex number
- * and the adjacency lists of each vertex
- * is also referenced from an array {@code neighbor} indexed by
- * the vertex number. These arrays as well as the int variable {@code n}
+ * is stored in an array {@code degree} indexed by the vertex number;
+ * this array as well as the int variable {@code n}
  * are public to allow easy access to the graph content.
+ * The adjacencies are read through {@link #neighborAt(int, int)} and
+ * {@link #neighborSet(int)}.
+ * <p>
+ * A graph is held in one of two modes.  In the compressed (CSR) mode,
+ * in which every graph starts, the adjacency lists are concatenated
+ * in a single array {@code targets}, the list of vertex {@code v}
+ * being {@code targets[offsets[v]]}, ..., {@code targets[offsets[v + 1] - 1]}.
+ * Adding an edge by {@code addEdge} turns the graph into the list mode,
+ * where each vertex has its own array {@code neighbor[v]} that grows
+ * as edges are added.  In either mode the neighbor sets are
+ * created when first asked for, so that for a large graph only the
+ * vertices actually looked at have one.
  * Reading from and writing to files as well as some basic
  * graph algorithms, such as decomposition into connected components,
  * are provided.
@@ -48,16 +55,24 @@ public class Graph {
   public int[] degree;
 
   /**
-   * array of adjacency lists each represented by an integer array
+   * array of adjacency lists each represented by an integer array,
+   * in the list mode; null in the compressed mode
    */
-  public int[][] neighbor;
+  private int[][] neighbor;
+
+  /**
+   * the compressed adjacency lists, in the compressed mode
+   */
+  private int[] offsets;
+  private int[] targets;
 
   /**
    * set representation of the adjacencies.
-   * {@code neighborSet[v]} is the set of vertices
-   * adjacent to vertex {@code v}
+   * {@code neighborSets.get(v)} is the set of vertices
+   * adjacent to vertex {@code v}, or null if not yet created;
+   * the graph may be shared by threads that create them
    */
-  public VertexSet[] neighborSet;
+  private final AtomicReferenceArray<VertexSet> neighborSets;
 
   /**
    * the set of all vertices, represented as an all-one
@@ -75,8 +90,20 @@ public class Graph {
   private int dfn[];
   private int low[];
   private int dfCount;
+  /*
+   * the explicit stack of the depth-first searches and, for each
+   * vertex on it, the index of the next neighbor to look at
+   */
+  private int dfsStack[];
+  private int nextIndex[];
   private VertexSet articulationSet;
 
+  /**
+   * the component engine over the current adjacencies;
+   * null until needed and whenever the adjacencies have changed since
+   */
+  private ComponentFinder componentFinder;
+
   /**
    * Construct a graph with the specified number of
    * vertices and no edges.  Edges will be added by
@@ -86,16 +113,105 @@ public class Graph {
   public Graph(int n) {
     this.n = n;
     this.degree = new int[n];
-    this.neighbor = new int[n][];
-    this.neighborSet = new VertexSet[n];
-    for (int i = 0; i < n; i++) {
-      neighborSet[i] = new VertexSet(n);
-    }
+    this.offsets = new int[n + 1];
+    this.targets = new int[0];
+    this.neighborSets = new AtomicReferenceArray<VertexSet>(n);
     this.all = new VertexSet(n);
     for (int i = 0; i < n; i++) {
       all.set(i);
     }
   }
+  /**
+   * Construct a graph from adjacency lists in compressed form:
+   * the neighbors of vertex {@code v} are
+   * {@code adjacent[start[v]]}, ..., {@code adjacent[start[v + 1] - 1]}.
+   * The lists are assumed to be symmetric and free of duplicates.
+   * The arrays are taken over by the graph, which is in the
+   * compressed mode.
+   * @param n the number of vertices
+   * @param start offsets of the adjacency lists, of length {@code n + 1}
+   * @param adjacent concatenated adjacency lists
+   */
+  public Graph(int n, int[] start, int[] adjacent) {
+    this(n);
+    setCompressed(start, adjacent);
+  }
+
+  /**
+   * Replaces the adjacencies of this graph by the given
+   * compressed lists, putting it in the compressed mode.
+   */
+  private void setCompressed(int[] start, int[] adjacent) {
+    if (adjacent.length > start[n]) {
+      adjacent = Arrays.copyOf(adjacent, start[n]);
+    }
+    offsets = start;
+    targets = adjacent;
+    neighbor = null;
+    componentFinder = null;
+    for (int v = 0; v < n; v++) {
+      degree[v] = start[v + 1] - start[v];
+      neighborSets.set(v, null);
+    }
+  }
+
+  /**
+   * Puts this graph in the list mode, copying the compressed lists
+   * into per-vertex arrays.
+   */
+  private void toListMode() {
+    neighbor = new int[n][];
+    for (int v = 0; v < n; v++) {
+      if (degree[v] > 0) {
+        neighbor[v] = Arrays.copyOfRange(targets, offsets[v], offsets[v + 1]);
+      }
+    }
+    offsets = null;
+    targets = null;
+  }
+
+  /**
+   * Returns the {@code i}th vertex in the adjacency list of
+   * vertex {@code v}
+   * @param v vertex number
+   * @param i index, smaller than {@code degree[v]}
+   * @return the adjacent vertex
+   */
+  public int neighborAt(int v, int i) {
+    if (neighbor == null) {
+      return targets[offsets[v] + i];
+    }
+    return neighbor[v][i];
+  }
+
+  /**
+   * Returns the set of vertices adjacent to the given vertex,
+   * creating it if this is the first request.
+   * The set is that of the graph, not a copy.
+   * @param v vertex number
+   * @return the neighbor set of {@code v}
+   */
+  public VertexSet neighborSet(int v) {
+    VertexSet set = neighborSets.get(v);
+    if (set == null) {
+      set = createNeighborSet(v);
+    }
+    return set;
+  }
+
+  private synchronized VertexSet createNeighborSet(int v) {
+    VertexSet set = neighborSets.get(v);
+    if (set == null) {
+      int[] a = new int[degree[v]];
+      for (int i = 0; i < a.length; i++) {
+        a[i] = neighborAt(v, i);
+      }
+      set = new VertexSet(n, a);
+      neighborSets.set(v, set);
+    }
+    return set;
+  }
+
 
   /**
    * Add an edge between two specified vertices.
@@ -106,6 +222,9 @@ public class Graph {
    * @param v vertex (the other end of the edge)
    */
   public void addEdge(int u, int v) {
+    if (neighbor == null) {
+      toListMode();
+    }
     addToNeighbors(u, v);
     addToNeighbors(v, u);
   }
@@ -119,6 +238,7 @@ public class Graph {
     if (indexOf(v, neighbor[u]) >= 0) {
       return;
     }
+    componentFinder = null;
     degree[u]++;
     if (neighbor[u] == null) {
       neighbor[u] = new int[]{v};
@@ -128,15 +248,11 @@ public class Graph {
       neighbor[u][degree[u] - 1] = v;
     }
 
-    if (neighborSet[u] == null) {
-      neighborSet[u] = new VertexSet(n);
-    }
-    neighborSet[u].set(v);
-
-    if (neighborSet[v] == null) {
-      neighborSet[v] = new VertexSet(n);
+    // a neighbor set not yet created will be created from the list
+    VertexSet set = neighborSets.get(u);
+    if (set != null) {
+      set.set(v);
     }
-    neighborSet[v].set(u);
   }
 
   /**
@@ -165,13 +281,40 @@ public class Graph {
    * then {@code inv[v]} is the corresponding vertex in graph {@code g};
    * it is assumed that {@code v} always have a corresponding vertex in
    * graph g.
-   *
+   * If this graph has no edges yet, the compressed lists are
+   * built directly.
    */
   public void inheritEdges(Graph g, int conv[], int inv[]) {
+    if (neighbor == null && targets.length == 0) {
+      int[] start = new int[n + 1];
+      for (int v = 0; v < n; v++) {
+        int x = inv[v];
+        int d = 0;
+        for (int i = 0; i < g.degree[x]; i++) {
+          if (conv[g.neighborAt(x, i)] >= 0) {
+            d++;
+          }
+        }
+        start[v + 1] = start[v] + d;
+      }
+      int[] adjacent = new int[start[n]];
+      int k = 0;
+      for (int v = 0; v < n; v++) {
+        int x = inv[v];
+        for (int i = 0; i < g.degree[x]; i++) {
+          int u = conv[g.neighborAt(x, i)];
+          if (u >= 0) {
+            adjacent[k++] = u;
+          }
+        }
+      }
+      setCompressed(start, adjacent);
+      return;
+    }
     for (int v = 0; v < n; v++) {
       int x = inv[v];
       for (int i = 0; i < g.degree[x]; i++) {
-        int y = g.neighbor[x][i];
+        int y = g.neighborAt(x, i);
         int u = conv[y];
         if (u >= 0) {
           addEdge(u,  v);
@@ -200,36 +343,7 @@ public class Graph {
    */
   public static Graph readGraphDgf(File file) {
     try {
-      BufferedReader br = new BufferedReader(new FileReader(file));
-      String line = br.readLine();
-      while (line.startsWith("c")) {
-        line = br.readLine();
-      }
-      if (line.startsWith("p")) {
-        String s[] = line.split(" ");
-        int n = Integer.parseInt(s[2]);
-        // m is twice the number of edges explicitly listed
-        int m = Integer.parseInt(s[3]);
-        Graph g = new Graph(n);
-
-        for (int i = 0; i < m; i++) {
-          line = br.readLine();
-          while (!line.startsWith("e")) {
-            line = br.readLine();
-          }
-          s = line.split(" ");
-          int u = Integer.parseInt(s[1]) - 1;
-          int v = Integer.parseInt(s[2]) - 1;
-          g.addEdge(u, v);
-        }
-        return g;
-      }
-      else {
-        throw new RuntimeException("!!No problem descrioption");
-      }
-
-    } catch (FileNotFoundException e) {
-      e.printStackTrace();
+      return GraphReader.read(file, null);
     } catch (IOException e) {
       e.printStackTrace();
     }
@@ -246,39 +360,7 @@ public class Graph {
   public static Graph readGraphCol(String path, String name) {
     File file = new File(path + "/" + name + ".col");
     try {
-      BufferedReader br = new BufferedReader(new FileReader(file));
-      String line = br.readLine();
-      while (line.startsWith("c")) {
-        line = br.readLine();
-      }
-      if (line.startsWith("p")) {
-        String s[] = line.split(" ");
-        int n = Integer.parseInt(s[2]);
-        // m is twice the number of edges in this format
-        int m = Integer.parseInt(s[3]);
-        Graph g = new Graph(n);
-
-        for (int i = 0; i < m; i++) {
-          line = br.readLine();
-          while (line != null && !line.startsWith("e")) {
-            line = br.readLine();
-          }
-          if (line == null) {
-            break;
-          }
-          s = line.split(" ");
-          int u = Integer.parseInt(s[1]);
-          int v = Integer.parseInt(s[2]);
-          g.addEdge(u - 1, v - 1);
-        }
-        return g;
-      }
-      else {
-        throw new RuntimeException("!!No problem descrioption");
-      }
-
-    } catch (FileNotFoundException e) {
-      e.printStackTrace();
+      return GraphReader.read(file, null);
     } catch (IOException e) {
       e.printStackTrace();
     }
@@ -309,78 +391,24 @@ public class Graph {
    */
   public static Graph readGraph(File file) {
     try {
-      BufferedReader br = new BufferedReader(new FileReader(file));
-      String line = br.readLine();
-      while (line.startsWith("c")) {
-        line = br.readLine();
-      }
-      if (line.startsWith("p")) {
-        String s[] = line.split(" ");
-        if (!s[1].equals("tw")) {
-          throw new RuntimeException("!!Not treewidth instance");
-        }
-        int n = Integer.parseInt(s[2]);
-        int m = Integer.parseInt(s[3]);
-        Graph g = new Graph(n);
-
-        for (int i = 0; i < m; i++) {
-          line = br.readLine();
-          while (line.startsWith("c")) {
-            line = br.readLine();
-          }
-          s = line.split(" ");
-          int u = Integer.parseInt(s[0]);
-          int v = Integer.parseInt(s[1]);
-          g.addEdge(u - 1, v - 1);
-        }
-        return g;
-      }
-      else {
-        throw new RuntimeException("!!No problem descrioption");
-      }
-
-    } catch (FileNotFoundException e) {
-      e.printStackTrace();
+      return GraphReader.read(file, "tw");
     } catch (IOException e) {
       e.printStackTrace();
     }
     return null;
   }
 
-  public static Graph readGraph(InputStream is){
+  /**
+   * Read a graph from the specified input stream in {@code gr} format and
+   * return the resulting {@code Graph} object.
+   * The vertex numbers 1~n in the gr file format are
+   * converted to 0~n-1 in the internal representation.
+   * @param is the input stream representing the graph
+   * @return the resulting {@code Graph} object; null if the reading fails
+   */
+  public static Graph readGraph(InputStream is) {
     try {
-      BufferedReader br = new BufferedReader(new InputStreamReader(is));
-      String line = br.readLine();
-      while (line.startsWith("c")) {
-        line = br.readLine();
-      }
-      if (line.startsWith("p")) {
-        String s[] = line.split(" ");
-        if (!s[1].equals("tw")) {
-          throw new RuntimeException("!!Not treewidth instance");
-        }
-        int n = Integer.parseInt(s[2]);
-        int m = Integer.parseInt(s[3]);
-        Graph g = new Graph(n);
-
-        for (int i = 0; i < m; i++) {
-          line = br.readLine();
-          while (line.startsWith("c")) {
-            line = br.readLine();
-          }
-          s = line.split(" ");
-          int u = Integer.parseInt(s[0]);
-          int v = Integer.parseInt(s[1]);
-          g.addEdge(u - 1, v - 1);
-        }
-        return g;
-      }
-      else {
-        throw new RuntimeException("!!No problem descrioption");
-      }
-
-    } catch (FileNotFoundException e) {
-      e.printStackTrace();
+      return GraphReader.read(is, "tw");
     } catch (IOException e) {
       e.printStackTrace();
     }
@@ -417,6 +445,14 @@ public class Graph {
    * {@code false} otherwise
    */
   public boolean areAdjacent(int u, int v) {
+    if (neighbor == null) {
+      for (int i = offsets[u]; i < offsets[u + 1]; i++) {
+        if (targets[i] == v) {
+          return true;
+        }
+      }
+      return false;
+    }
     return indexOf(v, neighbor[u]) >= 0;
   }
 
@@ -447,7 +483,7 @@ public class Graph {
     VertexSet result = new VertexSet(n);
     for (int v = set.nextSetBit(0); v >= 0;
         v = set.nextSetBit(v + 1)) {
-      result.or(neighborSet[v]);
+      result.or(neighborSet(v));
     }
     result.andNot(set);
     return result;
@@ -463,7 +499,7 @@ public class Graph {
     VertexSet result = (VertexSet) set.clone();
     for (int v = set.nextSetBit(0); v >= 0;
         v = set.nextSetBit(v + 1)) {
-      result.or(neighborSet[v]);
+      result.or(neighborSet(v));
     }
     return result;
   }
@@ -487,10 +523,11 @@ public class Graph {
 
     nc = 0;
 
+    int[] stack = new int[n];
     for (int v = 0; v < n; v++) {
       if (mark[v] == 0) {
         nc++;
-        markFrom(v);
+        markFrom(v, stack);
       }
     }
 
@@ -508,108 +545,70 @@ public class Graph {
   }
 
   /**
-   * Recursive method for depth-first search
+   * Depth-first search with an explicit stack:
    * vertices reachable from the given vertex,
    * passing through only unmarked vertices (vertices
    * with the mark[] value being 0 or -1),
    * are marked by the value of {@code nc} which
    * is a positive integer
    * @param v vertex to be visited
+   * @param stack work array of length {@code n}
    */
-  private void markFrom(int v) {
+  private void markFrom(int v, int[] stack) {
     if (mark[v] != 0) return;
     mark[v] = nc;
-    for (int i = 0; i < degree[v]; i++) {
-      int w = neighbor[v][i];
-      markFrom(w);
+    stack[0] = v;
+    int top = 1;
+    while (top > 0) {
+      int u = stack[--top];
+      for (int i = 0; i < degree[u]; i++) {
+        int w = neighborAt(u, i);
+        if (mark[w] == 0) {
+          mark[w] = nc;
+          stack[top++] = w;
+        }
+      }
+    }
+  }
+
+  /**
+   * Returns the component engine for the current adjacencies of
+   * this graph, creating it if needed.
+   * The engine is dropped when the adjacencies change.  Racing
+   * threads may each create one; the engine is immutable apart from
+   * its per-thread buffers, so either may be used.
+   * @return the component engine
+   */
+  public ComponentFinder componentFinder() {
+    ComponentFinder finder = componentFinder;
+    if (finder == null) {
+      finder = new ComponentFinder(this);
+      componentFinder = finder;
     }
+    return finder;
   }
 
   /**
    * Compute connected components of this target graph after
    * the removal of the vertices in the given separator,
-   * by means of iterated bit operations
+   * by means of the component engine
    * @param separator set of vertices to be removed
    * @return the arrayList of connected components,
    * the vertex set of each component represented by a {@code VertexSet}
    */
   public ArrayList<VertexSet> getComponents(VertexSet separator) {
-    ArrayList<VertexSet> result = new ArrayList<VertexSet>();
-    VertexSet rest = all.subtract(separator);
-    for (int v = rest.nextSetBit(0); v >= 0;
-        v = rest.nextSetBit(v + 1)) {
-      //      for (VertexSet found: result) {
-      //        if (found.get(v)) {
-      //          System.err.println(v + " is already in " + found);
-      //        }
-      //      }
-      VertexSet c = (VertexSet) neighborSet[v].clone();
-      VertexSet toBeScanned = c.subtract(separator);
-      c.set(v);
-      while (!toBeScanned.isEmpty()) {
-        VertexSet save = (VertexSet) c.clone();
-        for (int w = toBeScanned.nextSetBit(0); w >= 0;
-            w = toBeScanned.nextSetBit(w + 1)) {
-          //          for (VertexSet found: result) {
-          //            if (found.intersects(neighborSet[w])) {
-          //              System.err.println("the neighborSet of " + w + ": " + 
-          //                  neighborSet[w]  + " intersects " + found);
-          //            }
-          //          }
-          c.or(neighborSet[w]);
-        }
-        toBeScanned = c.subtract(save);
-        toBeScanned.andNot(separator);
-      }
-      result.add(c.subtract(separator));
-      rest.andNot(c);
-    }
-
-    //    for (int i = 0; i < result.size(); i++) {
-    //      for (int j = i + 1; j < result.size(); j++) {
-    //        if (result.get(i).intersects(result.get(j))) {
-    //          writeTo(System.err);
-    //          System.err.println(separator);
-    //          checkConsistency();
-    //          System.err.println(result.get(i).intersectWith(result.get(j)));
-    //          throw new RuntimeException("non-disjoint components " 
-    //              + result.get(i) + ", " + result.get(j));
-    //        }
-    //      }
-    //    }
-    return result;
+    return componentFinder().components(separator);
   }
 
   /**
    * Compute the full components associated with the given separator,
-   * by means of iterated bit operations
+   * by means of the component engine
    * @param separator set of vertices to be removed
    * @return the arrayList of full components,
    * the vertex set of each component represented by a {@code VertexSet}
    */
   public ArrayList<VertexSet> getFullComponents(VertexSet separator) {
-    ArrayList<VertexSet> result = new ArrayList<VertexSet>();
-    VertexSet rest = all.subtract(separator);
-    for (int v = rest.nextSetBit(0); v >= 0;
-        v = rest.nextSetBit(v + 1)) {
-      VertexSet c = (VertexSet) neighborSet[v].clone();
-      VertexSet toBeScanned = c.subtract(separator);
-      c.set(v);
-      while (!toBeScanned.isEmpty()) {
-        VertexSet save = (VertexSet) c.clone();
-        for (int w = toBeScanned.nextSetBit(0); w >= 0;
-            w = toBeScanned.nextSetBit(w + 1)) {
-          c.or(neighborSet[w]);
-        }
-        toBeScanned = c.subtract(save);
-        toBeScanned.andNot(separator);
-      }
-      if (separator.isSubset(c)) {
-        result.add(c.subtract(separator));
-      }
-      rest.andNot(c);
-    }
-    return result;
+    return componentFinder().fullComponents(separator);
   }
 
   /**
@@ -619,24 +618,7 @@ public class Graph {
    */
 
   public boolean isConnected(VertexSet vertices) {
-    int v = vertices.nextSetBit(0);
-    if (v < 0) {
-      return true;
-    }
-
-    VertexSet c = (VertexSet) neighborSet[v].clone();
-    VertexSet toScan = c.intersectWith(vertices);
-    c.set(v);
-    while (!toScan.isEmpty()) {
-      VertexSet save = (VertexSet) c.clone();
-      for (int w = toScan.nextSetBit(0); w >= 0;
-          w = toScan.nextSetBit(w + 1)) {
-        c.or(neighborSet[w]);
-      }
-      toScan = c.subtract(save);
-      toScan.and(vertices);
-    }
-    return vertices.isSubset(c);
+    return componentFinder().isConnected(vertices);
   }
 
   /**
@@ -651,6 +633,8 @@ public class Graph {
     dfCount = 1;
     dfn = new int[n];
     low = new int[n];
+    dfsStack = new int[n];
+    nextIndex = new int[n];
 
     for (int v = 0; v < n; v++) {
       if (!vertices.get(v)) {
@@ -664,7 +648,7 @@ public class Graph {
 
     boolean first = true;
     for (int i = 0; i < degree[s]; i++) {
-      int v = neighbor[s][i];
+      int v = neighborAt(s, i);
       if (dfn[v] != 0) {
         continue;
       }
@@ -681,29 +665,42 @@ public class Graph {
   }
 
   /**
-   * Depth-first search for deciding biconnectivigy.
-   * @param v vertex to be visited
-   * @return {@code true} if articulation point is found
-   * in the search starting from {@cod v}, {@false} otherwise
+   * Depth-first search for deciding biconnectivity,
+   * with an explicit stack.
+   * @param r vertex to start the search from
+   * @return {@code false} if an articulation point is found
+   * in the search starting from {@code r}, {@code true} otherwise
    */
-  private boolean dfsForBiconnectedness(int v) {
-    dfn[v] = dfCount++;
-    low[v] = dfn[v];
-    for (int i = 0; i < degree[v]; i++) {
-      int w = neighbor[v][i];
-      if (dfn[w] > 0 && dfn[w] < low[v]) {
-        low[v] = dfn[w];
-      }
-      else if (dfn[w] == 0) {
-        boolean b = dfsForBiconnectedness(w);
-        if (!b) {
-          return false;
+  private boolean dfsForBiconnectedness(int r) {
+    dfn[r] = dfCount++;
+    low[r] = dfn[r];
+    nextIndex[r] = 0;
+    dfsStack[0] = r;
+    int top = 1;
+    while (top > 0) {
+      int v = dfsStack[top - 1];
+      if (nextIndex[v] < degree[v]) {
+        int w = neighborAt(v, nextIndex[v]++);
+        if (dfn[w] > 0 && dfn[w] < low[v]) {
+          low[v] = dfn[w];
+        }
+        else if (dfn[w] == 0) {
+          dfn[w] = dfCount++;
+          low[w] = dfn[w];
+          nextIndex[w] = 0;
+          dfsStack[top++] = w;
         }
-        if (low[w] >= dfn[v]) {
+        continue;
+      }
+      // the search from v is over: back to its parent u
+      top--;
+      if (top > 0) {
+        int u = dfsStack[top - 1];
+        if (low[v] >= dfn[u]) {
           return false;
         }
-        if (low[w] < low[v]) {
-          low[v] = low[w];
+        if (low[v] < low[u]) {
+          low[u] = low[v];
         }
       }
     }
@@ -754,6 +751,8 @@ public class Graph {
     dfCount = 1;
     dfn = new int[n];
     low = new int[n];
+    dfsStack = new int[n];
+    nextIndex = new int[n];
 
     for (int v = 0; v < n; v++) {
       if (!vertices.get(v)) {
@@ -766,26 +765,43 @@ public class Graph {
   }
 
   /**
-   * Depth-first search for listing articulation vertices.
+   * Depth-first search for listing articulation vertices,
+   * with an explicit stack.
    * The articulations found in the search are
    * added to the {@code VertexSet articulationSet}.
-   * @param v vertex to be visited
+   * @param r vertex to start the search from
    */
-  private void depthFirst(int v) {
-    dfn[v] = dfCount++;
-    low[v] = dfn[v];
-    for (int i = 0; i < degree[v]; i++) {
-      int w = neighbor[v][i];
-      if (dfn[w] > 0) {
-        low[v] = Math.min(low[v], dfn[w]);
+  private void depthFirst(int r) {
+    dfn[r] = dfCount++;
+    low[r] = dfn[r];
+    nextIndex[r] = 0;
+    dfsStack[0] = r;
+    int top = 1;
+    while (top > 0) {
+      int v = dfsStack[top - 1];
+      if (nextIndex[v] < degree[v]) {
+        int w = neighborAt(v, nextIndex[v]++);
+        if (dfn[w] > 0) {
+          low[v] = Math.min(low[v], dfn[w]);
+        }
+        else if (dfn[w] == 0) {
+          dfn[w] = dfCount++;
+          low[w] = dfn[w];
+          nextIndex[w] = 0;
+          dfsStack[top++] = w;
+        }
+        continue;
       }
-      else if (dfn[w] == 0) {
-        depthFirst(w);
-        if (low[w] >= dfn[v] &&
-            (dfn[v] > 1 || !lastNeighborIndex(v, i))){
-          articulationSet.set(v);
+      // the search from v is over: back to its parent u, for which
+      // v was reached at index nextIndex[u] - 1
+      top--;
+      if (top > 0) {
+        int u = dfsStack[top - 1];
+        if (low[v] >= dfn[u] &&
+            (dfn[u] > 1 || !lastNeighborIndex(u, nextIndex[u] - 1))){
+          articulationSet.set(u);
         }
-        low[v] = Math.min(low[v], low[w]);
+        low[u] = Math.min(low[u], low[v]);
       }
     }
   }
@@ -794,46 +810,77 @@ public class Graph {
     dfCount = 1;
     dfn = new int[n];
     low = new int[n];
+    dfsStack = new int[n];
+    nextIndex = new int[n];
 
     ArrayList< VertexSet > bcc = new ArrayList< >();
-    Stack< VertexSet > stack = new Stack< >();
-    dfsForBiconnectedDecomposition(0, stack, bcc, articulationSet);
+    // the tree edges not yet put in a component, as pairs of ends
+    int[] edges = new int[2 * n];
+    int top = dfsForBiconnectedDecomposition(0, edges, bcc, articulationSet);
 
     VertexSet bc = new VertexSet();
-    while(!stack.isEmpty()){
-      bc.or(stack.pop());
+    while(top > 0){
+      top--;
+      bc.set(edges[2 * top]);
+      bc.set(edges[2 * top + 1]);
     }
     bcc.add(bc);
 
     return bcc;
   }
 
-  private void dfsForBiconnectedDecomposition(int v, 
-      Stack< VertexSet > stack, ArrayList< VertexSet > bcc, VertexSet articulationSet){
-    dfn[v] = dfCount++;
-    low[v] = dfn[v];
-    for (int i = 0; i < degree[v]; i++) {
-      int w = neighbor[v][i];
-      if (dfn[w] > 0) {
-        low[v] = Math.min(low[v], dfn[w]);
+  /**
+   * Depth-first search for the biconnected decomposition,
+   * with an explicit stack.
+   * @return the number of tree edges left in {@code edges}, which
+   * form the component of the start vertex
+   */
+  private int dfsForBiconnectedDecomposition(int r, 
+      int[] edges, ArrayList< VertexSet > bcc, VertexSet articulationSet){
+    int ne = 0;
+    dfn[r] = dfCount++;
+    low[r] = dfn[r];
+    nextIndex[r] = 0;
+    dfsStack[0] = r;
+    int top = 1;
+    while (top > 0) {
+      int v = dfsStack[top - 1];
+      if (nextIndex[v] < degree[v]) {
+        int w = neighborAt(v, nextIndex[v]++);
+        if (dfn[w] > 0) {
+          low[v] = Math.min(low[v], dfn[w]);
+        }
+        else if (dfn[w] == 0) {
+          edges[2 * ne] = v;
+          edges[2 * ne + 1] = w;
+          ne++;
+          dfn[w] = dfCount++;
+          low[w] = dfn[w];
+          nextIndex[w] = 0;
+          dfsStack[top++] = w;
+        }
+        continue;
       }
-      else if (dfn[w] == 0) {
-        VertexSet edge = new VertexSet(new int[]{v, w});
-        stack.push(edge);
-        dfsForBiconnectedDecomposition(w, stack, bcc, articulationSet);
-        if (low[w] >= dfn[v] &&
-            (dfn[v] > 1 || !lastNeighborIndex(v, i))){
-          articulationSet.set(v);
+      // the search from v is over: back to its parent u
+      top--;
+      if (top > 0) {
+        int u = dfsStack[top - 1];
+        if (low[v] >= dfn[u] &&
+            (dfn[u] > 1 || !lastNeighborIndex(u, nextIndex[u] - 1))){
+          articulationSet.set(u);
+          // the edges down to the tree edge (u, v) form a component
           VertexSet bc = new VertexSet();
-          while(!stack.peek().equals(edge)){
-            bc.or(stack.pop());
-          }
-          bc.or(stack.pop());
+          do {
+            ne--;
+            bc.set(edges[2 * ne]);
+            bc.set(edges[2 * ne + 1]);
+          } while (edges[2 * ne + 1] != v);
           bcc.add(bc);
         }
-        low[v] = Math.min(low[v], low[w]);
+        low[u] = Math.min(low[u], low[v]);
       }
     }
+    return ne;
   }
 
   /**
@@ -850,7 +897,7 @@ public class Graph {
 
   private boolean lastNeighborIndex(int v, int i) {
     for (int j = i + 1; j < degree[v]; j++) {
-      int w = neighbor[v][j];
+      int w = neighborAt(v, j);
       if (dfn[w] == 0) {
         return false;
       }
@@ -865,7 +912,7 @@ public class Graph {
   public void fill(VertexSet vertexSet) {
     for (int v = vertexSet.nextSetBit(0); v >= 0;
         v = vertexSet.nextSetBit(v + 1)) {
-      VertexSet missing = vertexSet.subtract(neighborSet[v]);
+      VertexSet missing = vertexSet.subtract(neighborSet(v));
       for (int w = missing.nextSetBit(v + 1); w >= 0;
           w = missing.nextSetBit(w + 1)) {
         addEdge(v, w);
@@ -885,6 +932,72 @@ public class Graph {
     }
   }
 
+  /**
+   * fill each of the specified vertex sets into a clique.
+   * In the compressed mode, the compressed lists are rebuilt
+   * once with all the fill edges, rather than turning
+   * the graph into the list mode.
+   * @param cliques vertex sets to be filled
+   */
+  public void fillAll(ArrayList<VertexSet> cliques) {
+    if (neighbor != null) {
+      for (VertexSet clique: cliques) {
+        fill(clique);
+      }
+      return;
+    }
+    // the sets containing each vertex, in compressed form
+    int[] memberStart = new int[n + 1];
+    for (VertexSet clique: cliques) {
+      for (int v = clique.nextSetBit(0); v >= 0;
+          v = clique.nextSetBit(v + 1)) {
+        memberStart[v + 1]++;
+      }
+    }
+    for (int v = 0; v < n; v++) {
+      memberStart[v + 1] += memberStart[v];
+    }
+    VertexSet[] memberOf = new VertexSet[memberStart[n]];
+    int[] next = Arrays.copyOf(memberStart, n);
+    for (VertexSet clique: cliques) {
+      for (int v = clique.nextSetBit(0); v >= 0;
+          v = clique.nextSetBit(v + 1)) {
+        memberOf[next[v]++] = clique;
+      }
+    }
+
+    int[] start = new int[n + 1];
+    int[] adjacent = new int[targets.length];
+    int[] stamp = new int[n];
+    int k = 0;
+    for (int v = 0; v < n; v++) {
+      start[v] = k;
+      stamp[v] = v + 1;
+      for (int i = offsets[v]; i < offsets[v + 1]; i++) {
+        if (k == adjacent.length) {
+          adjacent = Arrays.copyOf(adjacent, 2 * k + 1);
+        }
+        adjacent[k++] = targets[i];
+        stamp[targets[i]] = v + 1;
+      }
+      for (int j = memberStart[v]; j < memberStart[v + 1]; j++) {
+        VertexSet clique = memberOf[j];
+        for (int w = clique.nextSetBit(0); w >= 0;
+            w = clique.nextSetBit(w + 1)) {
+          if (stamp[w] != v + 1) {
+            stamp[w] = v + 1;
+            if (k == adjacent.length) {
+              adjacent = Arrays.copyOf(adjacent, 2 * k + 1);
+            }
+            adjacent[k++] = w;
+          }
+        }
+      }
+    }
+    start[n] = k;
+    setCompressed(start, adjacent);
+  }
+
   /** list all maximal cliques of this graph
    * Naive implementation, should be replaced by a better one
    * @return
@@ -975,7 +1088,7 @@ public class Graph {
     ps.println("p tw " + n + " " + m);
     for (int i = 0; i < n; i++) {
       for (int j = 0; j < degree[i]; j++) {
-        int k = neighbor[i][j];
+        int k = neighborAt(i, j);
         if (i < k) {
           ps.println((i + 1) + " " + (k + 1));
         }
@@ -989,14 +1102,27 @@ public class Graph {
    */
   public Graph copy() {
     Graph tmp = new Graph(n);
-    for (int v = 0; v < n; v++) {
-      if(neighbor[v] != null){
-        for (int j = 0; j < neighbor[v].length; j++) {
-          int w = neighbor[v][j];
-          tmp.addEdge(v, w);
+    if (neighbor == null) {
+      // the compressed lists are never modified in place
+      tmp.setCompressed(offsets, targets);
+    }
+    else {
+      tmp.toListMode();
+      for (int v = 0; v < n; v++) {
+        if(neighbor[v] != null){
+          tmp.degree[v] = degree[v];
+          tmp.neighbor[v] = Arrays.copyOf(neighbor[v], degree[v]);
         }
       }
     }
+    // the neighbor sets created so far are copied, as they may
+    // have been modified by the user
+    for (int v = 0; v < n; v++) {
+      VertexSet set = neighborSets.get(v);
+      if (set != null) {
+        tmp.neighborSets.set(v, set.clone());
+      }
+    }
     return tmp;
   }
 
@@ -1008,12 +1134,11 @@ public class Graph {
     for (int v = 0; v < n; v++) {
       for (int w = 0; w < n; w++) {
         if (v == w) continue;
-        if (indexOf(v, neighbor[w]) >= 0 && 
-            indexOf(w, neighbor[v]) < 0) {
+        if (areAdjacent(w, v) && !areAdjacent(v, w)) {
           throw new RuntimeException("adjacency lists inconsistent " + v + ", " + w);
         }
-        if (neighborSet[v].get(w) &&
-            !neighborSet[v].get(w)) {
+        if (neighborSet(v).get(w) &&
+            !neighborSet(v).get(w)) {
           throw new RuntimeException("neighborSets inconsistent " + v + ", " + w);
         }
       }
@@ -177,7 +177,7 @@ public class GreedyDecomposer {
 
 			Set<Separator> vminInSeparators = frontier.get(vmin);
 			if(vminInSeparators.size() == 1) {
-				VertexSet neighborSet = g.neighborSet[vmin].intersectWith(remaining);
+				VertexSet neighborSet = g.neighborSet(vmin).intersectWith(remaining);
 				Separator	uniqueSeparator = null;
 				for(Separator s : vminInSeparators) {
 					uniqueSeparator = s;
@@ -194,7 +194,7 @@ public class GreedyDecomposer {
 					remaining.clear(vmin);
 
 					if(!modeMinDegree && modeExact) {
-						VertexSet vs = g.neighborSet[vmin].intersectWith(remaining);
+						VertexSet vs = g.neighborSet(vmin).intersectWith(remaining);
 						VertexSet updateSet = g.closedNeighborSet(vs);
 						updateSet.and(remaining);
 						updateProcess(updateSet);
@@ -205,15 +205,15 @@ public class GreedyDecomposer {
 
 			VertexSet toBeAClique = new VertexSet(g.n);
 			toBeAClique.set(vmin);
-			toBeAClique.or(g.neighborSet[vmin].intersectWith(remaining));
+			toBeAClique.or(g.neighborSet(vmin).intersectWith(remaining));
 			Bag bag = whole.addNestedBag(toBeAClique);
 
 			VertexSet sep = toBeAClique.subtract(new VertexSet(new int[]{vmin}));
 
 			if(modeMinDegree) {
 				for(int v = sep.nextSetBit(0); v >= 0; v = sep.nextSetBit(v + 1)) {
-					g.neighborSet[v].or(sep);
-					g.neighborSet[v].clear(v);
+					g.neighborSet(v).or(sep);
+					g.neighborSet(v).clear(v);
 				}
 			}
 			else {
@@ -250,7 +250,7 @@ public class GreedyDecomposer {
 			remaining.clear(vmin);
 
 			if(!modeMinDegree && modeExact) {
-				VertexSet vs = g.neighborSet[vmin].intersectWith(remaining);
+				VertexSet vs = g.neighborSet(vmin).intersectWith(remaining);
 				VertexSet updateSet = g.closedNeighborSet(vs);
 				updateSet.and(remaining);
 				updateProcess(updateSet);
@@ -308,25 +308,33 @@ public class GreedyDecomposer {
 	}
 
 	private int degreeOf(int v) {
-		VertexSet vs = g.neighborSet[v].intersectWith(remaining);
-		return vs.cardinality();
+		return g.neighborSet(v).intersectionCardinality(remaining);
 	}
 
 	private int fillCount(int v) {
-		VertexSet vNeighborSet = remaining.intersectWith(g.neighborSet[v]);
 		ArrayList<Edge> addEdges = new ArrayList<>();
 		int count = 0;
 
-		for(int w = vNeighborSet.nextSetBit(0); w >= 0; w = vNeighborSet.nextSetBit(w + 1)) {
-			VertexSet noNeighborSet = vNeighborSet.subtract(vNeighborSet.intersectWith(g.neighborSet[w]));
-			noNeighborSet.and(remaining);
-			noNeighborSet.clear(w);
-			for(int x = noNeighborSet.nextSetBit(w); x >= 0; x = noNeighborSet.nextSetBit(x + 1)) {
-				Edge e = new Edge(w, x);
-				addEdges.add(e);
-				count++;
+		// vNeighborSet is a subset of remaining, so that the
+		// non-neighbors of w in it are all remaining
+		ScratchSets scratch = ScratchSets.get();
+		int mark = scratch.mark();
+		try {
+			VertexSet vNeighborSet = VertexSet.intersectInto(scratch.take(g.n), remaining, g.neighborSet(v));
+			VertexSet noNeighborSet = scratch.take(g.n);
+			for(int w = vNeighborSet.nextSetBit(0); w >= 0; w = vNeighborSet.nextSetBit(w + 1)) {
+				VertexSet.subtractInto(noNeighborSet, vNeighborSet, g.neighborSet(w));
+				noNeighborSet.clear(w);
+				for(int x = noNeighborSet.nextSetBit(w); x >= 0; x = noNeighborSet.nextSetBit(x + 1)) {
+					Edge e = new Edge(w, x);
+					addEdges.add(e);
+					count++;
+				}
 			}
 		}
+		finally {
+			scratch.release(mark);
+		}
 		edges = addEdges.toArray(new Edge[0]);
 		return count;
 	}
@@ -0,0 +1,303 @@
+/*
+ * Copyright (c) 2017, Hiromu Ohtsuka
+*/
+
+package tw.heuristic;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * A cache of values, typically decompositions, keyed by graphs up to
+ * isomorphism, so that a graph isomorphic to one already solved
+ * reuses its solution through a map between their vertices.
+ * <p>
+ * Each graph is fingerprinted by color refinement: every vertex is
+ * colored by its degree and is recolored, round after round, by a hash
+ * of its color and of the multiset of the colors of its neighbors,
+ * until the number of colors stops growing.
+ * The color of a vertex depends only on the graph up to isomorphism,
+ * and so does the fingerprint, a hash of the numbers of vertices and
+ * edges and of the multiset of the colors.
+ * A graph is matched against the cached graphs of the same fingerprint
+ * by a backtracking search, which maps the vertices in a breadth first
+ * order, each to a vertex of the same color adjacent to the image of
+ * its parent, and checks the adjacencies to the vertices already
+ * mapped.  The search gives up after a number of steps proportional
+ * to the size of the graph, so that a pair of graphs hard to match
+ * costs no more than a miss.
+ * <p>
+ * The cache is not synchronized.
+ */
+public class IsomorphismCache< T >{
+  /**
+   * the rounds of the refinement are bounded, as the colors need not
+   * be stable to be invariant
+   */
+  private static final int MAX_ROUNDS = 32;
+
+  /**
+   * the candidate vertices the search may try per vertex
+   */
+  private static final int STEPS_PER_VERTEX = 64;
+
+  private HashMap< Long, ArrayList< Entry< T > > > entries = new HashMap< >();
+
+  private static class Entry< T >{
+    Graph graph;
+    long[] colors;
+    T value;
+
+    Entry(Graph graph, long[] colors, T value){
+      this.graph = graph;
+      this.colors = colors;
+      this.value = value;
+    }
+  }
+
+  /**
+   * A value found in the cache, with the map from the vertices of
+   * the graph it was stored for to those of the graph looked up.
+   */
+  public static class Hit< T >{
+    public final T value;
+    public final int[] map;
+
+    Hit(T value, int[] map){
+      this.value = value;
+      this.map = map;
+    }
+  }
+
+  /**
+   * Looks up the value stored for a graph isomorphic to the given one.
+   * @param g the graph
+   * @return the value and the isomorphism from the graph it was
+   * stored for to {@code g}, or {@code null} if none is found
+   */
+  public Hit< T > get(Graph g){
+    long[] colors = refine(g);
+    ArrayList< Entry< T > > list = entries.get(fingerprint(g, colors));
+    if(list == null){
+      return null;
+    }
+    for(Entry< T > entry : list){
+      int[] map = match(entry.graph, entry.colors, g, colors);
+      if(map != null){
+        return new Hit< >(entry.value, map);
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Stores the value for the given graph, which must not be modified
+   * while it is in the cache.
+   * @param g the graph
+   * @param value the value
+   */
+  public void put(Graph g, T value){
+    long[] colors = refine(g);
+    Long key = fingerprint(g, colors);
+    ArrayList< Entry< T > > list = entries.get(key);
+    if(list == null){
+      list = new ArrayList< >();
+      entries.put(key, list);
+    }
+    list.add(new Entry< >(g, colors, value));
+  }
+
+  private static long[] refine(Graph g){
+    long[] colors = new long[g.n];
+    for(int v = 0; v < g.n; v++){
+      colors[v] = mix(g.degree[v]);
+    }
+    int count = countColors(colors);
+    long[] next = new long[g.n];
+    for(int round = 0; round < MAX_ROUNDS; round++){
+      for(int v = 0; v < g.n; v++){
+        // the sum makes the hash independent of the order of
+        // the neighbors
+        long h = colors[v] * 0x9e3779b97f4a7c15L;
+        for(int j = 0; j < g.degree[v]; j++){
+          h += mix(colors[g.neighborAt(v, j)]);
+        }
+        next[v] = mix(h);
+      }
+      int c = countColors(next);
+      if(c <= count){
+        break;
+      }
+      long[] t = colors;
+      colors = next;
+      next = t;
+      count = c;
+    }
+    return colors;
+  }
+
+  private static int countColors(long[] colors){
+    if(colors.length == 0){
+      return 0;
+    }
+    long[] sorted = colors.clone();
+    Arrays.sort(sorted);
+    int count = 1;
+    for(int i = 1; i < sorted.length; i++){
+      if(sorted[i] != sorted[i - 1]){
+        count++;
+      }
+    }
+    return count;
+  }
+
+  private static long fingerprint(Graph g, long[] colors){
+    long h = mix(g.n) + 31 * mix(g.numberOfEdges());
+    for(long c : colors){
+      h += mix(c);
+    }
+    return mix(h);
+  }
+
+  private static long mix(long x){
+    x = (x ^ (x >>> 30)) * 0xbf58476d1ce4e5b9L;
+    x = (x ^ (x >>> 27)) * 0x94d049bb133111ebL;
+    return x ^ (x >>> 31);
+  }
+
+  /**
+   * returns an isomorphism from a to b, given the colors of their
+   * vertices, or null if none is found within the steps allowed
+   */
+  private static int[] match(Graph a, long[] ca, Graph b, long[] cb){
+    int n = a.n;
+    if(b.n != n){
+      return null;
+    }
+
+    // each breadth first search starts from a vertex of the
+    // rarest color, which has the fewest candidates
+    long[] sorted = ca.clone();
+    Arrays.sort(sorted);
+    int[] rarity = new int[n];
+    for(int v = 0; v < n; v++){
+      rarity[v] = classSize(sorted, ca[v]);
+    }
+    int[] order = new int[n];
+    int[] parent = new int[n];
+    boolean[] visited = new boolean[n];
+    int m = 0;
+    while(m < n){
+      int root = -1;
+      int rarest = n + 1;
+      for(int v = 0; v < n; v++){
+        if(!visited[v] && rarity[v] < rarest){
+          root = v;
+          rarest = rarity[v];
+        }
+      }
+      visited[root] = true;
+      parent[root] = -1;
+      order[m++] = root;
+      for(int i = m - 1; i < m; i++){
+        int u = order[i];
+        for(int j = 0; j < a.degree[u]; j++){
+          int w = a.neighborAt(u, j);
+          if(!visited[w]){
+            visited[w] = true;
+            parent[w] = u;
+            order[m++] = w;
+          }
+        }
+      }
+    }
+
+    int[] map = new int[n];
+    int[] inverse = new int[n];
+    int[] cursor = new int[n];
+    int[] mark = new int[n];
+    Arrays.fill(map, -1);
+    Arrays.fill(inverse, -1);
+    long steps = (long) STEPS_PER_VERTEX * n;
+    int markValue = 0;
+
+    int d = 0;
+    while(d >= 0 && d < n){
+      int x = order[d];
+      if(map[x] >= 0){
+        inverse[map[x]] = -1;
+        map[x] = -1;
+      }
+      int p = parent[x];
+      int limit = p < 0 ? n : b.degree[map[p]];
+      int c = -1;
+      while(cursor[d] < limit){
+        int y = p < 0 ? cursor[d] : b.neighborAt(map[p], cursor[d]);
+        cursor[d]++;
+        if(--steps < 0){
+          return null;
+        }
+        if(inverse[y] >= 0 || cb[y] != ca[x] ||
+            b.degree[y] != a.degree[x]){
+          continue;
+        }
+        markValue++;
+        for(int j = 0; j < b.degree[y]; j++){
+          mark[b.neighborAt(y, j)] = markValue;
+        }
+        if(consistent(a, x, b, y, map, inverse, mark, markValue)){
+          c = y;
+          break;
+        }
+      }
+      if(c < 0){
+        d--;
+        continue;
+      }
+      map[x] = c;
+      inverse[c] = x;
+      d++;
+      if(d < n){
+        cursor[d] = 0;
+      }
+    }
+    return d == n ? map : null;
+  }
+
+  /**
+   * tests if mapping x to y keeps the adjacencies to the vertices
+   * already mapped, the neighbors of y being marked
+   */
+  private static boolean consistent(Graph a, int x, Graph b, int y,
+      int[] map, int[] inverse, int[] mark, int markValue){
+    int count = 0;
+    for(int j = 0; j < a.degree[x]; j++){
+      int w = map[a.neighborAt(x, j)];
+      if(w >= 0){
+        if(mark[w] != markValue){
+          return false;
+        }
+        count++;
+      }
+    }
+    for(int j = 0; j < b.degree[y]; j++){
+      if(inverse[b.neighborAt(y, j)] >= 0){
+        count--;
+      }
+    }
+    return count == 0;
+  }
+
+  private static int classSize(long[] sorted, long color){
+    int from = Arrays.binarySearch(sorted, color);
+    int to = from;
+    while(from > 0 && sorted[from - 1] == color){
+      from--;
+    }
+    while(to + 1 < sorted.length && sorted[to + 1] == color){
+      to++;
+    }
+    return to - from + 1;
+  }
+}
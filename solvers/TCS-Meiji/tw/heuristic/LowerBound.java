@@ -0,0 +1,243 @@
+/*
+ * Copyright (c) 2017, Hiromu Ohtsuka
+*/
+
+package tw.heuristic;
+
+import java.util.Arrays;
+
+/**
+ * Lower bounds on the treewidth of a graph, cheap enough to be
+ * computed on the whole graph and on each bag to be refined.
+ * <p>
+ * Each bound is the largest minimum degree met while the graph is
+ * reduced one vertex at a time, a vertex of minimum degree being
+ * <ul>
+ * <li> deleted, for the degeneracy, or
+ * <li> contracted into one of its neighbors, for the contraction
+ * degeneracy bounds MMD+: the neighbor of minimum degree is chosen
+ * in the min-d variant, also known as minor-min-width, and the
+ * neighbor with the fewest common neighbors in the least-c variant.
+ * </ul>
+ * Since the treewidth of a minor is at most that of the graph and
+ * is at least its minimum degree, each of these is a lower bound.
+ */
+public class LowerBound{
+  public static enum Strategy{
+    degeneracy, minD, leastC
+  }
+
+  private final Graph g;
+  private int[][] adj;
+  private int[] deg;
+
+  /**
+   * the vertices of each degree, in doubly linked lists
+   */
+  private int[] head;
+  private int[] next;
+  private int[] prev;
+
+  private int[] stamp;
+  private int stampValue;
+
+  private LowerBound(Graph g){
+    this.g = g;
+  }
+
+  /**
+   * Returns the best of the bounds of all the strategies for
+   * the given graph, which must not be empty.
+   * @param g the graph
+   * @return the lower bound
+   */
+  public static int of(Graph g){
+    int low = 0;
+    for(Strategy strategy: Strategy.values()){
+      low = Math.max(low, of(g, strategy));
+    }
+    return low;
+  }
+
+  /**
+   * Returns the bound of the given strategy for the given graph,
+   * which must not be empty.
+   * @param g the graph
+   * @param strategy the strategy of the reduction
+   * @return the lower bound
+   */
+  public static int of(Graph g, Strategy strategy){
+    return new LowerBound(g).compute(strategy);
+  }
+
+  private int compute(Strategy strategy){
+    int n = g.n;
+    adj = new int[n][];
+    deg = new int[n];
+    head = new int[n];
+    next = new int[n];
+    prev = new int[n];
+    stamp = new int[n];
+    Arrays.fill(head, -1);
+    for(int v = 0; v < n; v++){
+      deg[v] = g.degree[v];
+      adj[v] = new int[Math.max(deg[v], 1)];
+      for(int i = 0; i < deg[v]; i++){
+        adj[v][i] = g.neighborAt(v, i);
+      }
+      link(v);
+    }
+
+    int low = 0;
+    int min = 0;
+    // a graph with r vertices has minimum degree at most r - 1
+    for(int r = n; r > low + 1; r--){
+      while(head[min] < 0){
+        min++;
+      }
+      int v = head[min];
+      int d = deg[v];
+      if(d > low){
+        low = d;
+      }
+      unlink(v);
+      if(d > 0){
+        if(strategy == Strategy.degeneracy){
+          delete(v);
+        }
+        else{
+          contract(v, selectNeighbor(v, strategy));
+        }
+      }
+      // the degrees drop by at most one in a step
+      min = Math.max(0, d - 1);
+    }
+    return low;
+  }
+
+  private int selectNeighbor(int v, Strategy strategy){
+    int[] nv = adj[v];
+    if(strategy == Strategy.minD){
+      int best = nv[0];
+      for(int i = 1; i < deg[v]; i++){
+        if(deg[nv[i]] < deg[best]){
+          best = nv[i];
+        }
+      }
+      return best;
+    }
+    int s = nextStamp();
+    for(int i = 0; i < deg[v]; i++){
+      stamp[nv[i]] = s;
+    }
+    int best = -1;
+    int bestCommon = 0;
+    for(int i = 0; i < deg[v]; i++){
+      int u = nv[i];
+      int common = 0;
+      for(int j = 0; j < deg[u]; j++){
+        if(stamp[adj[u][j]] == s){
+          common++;
+        }
+      }
+      if(best < 0 || common < bestCommon ||
+          common == bestCommon && deg[u] < deg[best]){
+        best = u;
+        bestCommon = common;
+      }
+    }
+    return best;
+  }
+
+  /**
+   * removes v, which is already unlinked, from the graph
+   */
+  private void delete(int v){
+    for(int i = 0; i < deg[v]; i++){
+      int w = adj[v][i];
+      unlink(w);
+      removeAdjacency(w, v);
+      link(w);
+    }
+    adj[v] = null;
+    deg[v] = 0;
+  }
+
+  /**
+   * contracts the edge between v, which is already unlinked,
+   * and u into u
+   */
+  private void contract(int v, int u){
+    int s = nextStamp();
+    stamp[u] = s;
+    for(int j = 0; j < deg[u]; j++){
+      stamp[adj[u][j]] = s;
+    }
+    unlink(u);
+    for(int i = 0; i < deg[v]; i++){
+      int w = adj[v][i];
+      if(w != u){
+        unlink(w);
+      }
+      removeAdjacency(w, v);
+      if(stamp[w] != s){
+        addAdjacency(u, w);
+        addAdjacency(w, u);
+      }
+      if(w != u){
+        link(w);
+      }
+    }
+    link(u);
+    adj[v] = null;
+    deg[v] = 0;
+  }
+
+  private void link(int v){
+    int d = deg[v];
+    prev[v] = -1;
+    next[v] = head[d];
+    if(head[d] >= 0){
+      prev[head[d]] = v;
+    }
+    head[d] = v;
+  }
+
+  private void unlink(int v){
+    if(prev[v] >= 0){
+      next[prev[v]] = next[v];
+    }
+    else{
+      head[deg[v]] = next[v];
+    }
+    if(next[v] >= 0){
+      prev[next[v]] = prev[v];
+    }
+  }
+
+  private void removeAdjacency(int a, int v){
+    int[] na = adj[a];
+    for(int j = 0; j < deg[a]; j++){
+      if(na[j] == v){
+        na[j] = na[--deg[a]];
+        return;
+      }
+    }
+    throw new RuntimeException("!!" + v + " is not adjacent to " + a);
+  }
+
+  private void addAdjacency(int a, int b){
+    if(deg[a] == adj[a].length){
+      adj[a] = Arrays.copyOf(adj[a], 2 * deg[a]);
+    }
+    adj[a][deg[a]++] = b;
+  }
+
+  private int nextStamp(){
+    if(++stampValue == Integer.MAX_VALUE){
+      Arrays.fill(stamp, 0);
+      stampValue = 1;
+    }
+    return stampValue;
+  }
+}
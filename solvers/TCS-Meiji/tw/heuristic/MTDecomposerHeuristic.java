@@ -12,10 +12,8 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
-import java.util.Map;
 import java.util.Queue;
 import java.util.Set;
 
@@ -42,11 +40,11 @@ public class MTDecomposerHeuristic {
 
 //  Set<VertexSet> processed;
 
-  Map<VertexSet, TBlock> tBlockCache;
+  VertexSetMap<TBlock> tBlockCache;
 
-  Map<VertexSet, Block> blockCache;
+  VertexSetMap<Block> blockCache;
   
-  Map<VertexSet, MBlock> mBlockCache;
+  VertexSetMap<MBlock> mBlockCache;
   
   Set<VertexSet> pmcCache;
   
@@ -131,8 +129,8 @@ public class MTDecomposerHeuristic {
   
   public boolean decompose() {
     abort = false;
-    blockCache = new HashMap<>();
-    mBlockCache = new HashMap<>();
+    blockCache = new VertexSetMap<>();
+    mBlockCache = new VertexSetMap<>();
 
     pendingEndorsers = new ArrayList<>();
     pmcCache = new HashSet<>();
@@ -169,14 +167,14 @@ public class MTDecomposerHeuristic {
     // endorserMap = new HashMap<>();
 
     tBlockSieve = new LayeredSieve(g.n, targetWidth);
-    tBlockCache = new HashMap<>();
+    tBlockCache = new VertexSetMap<>();
 
     readyQueue = new LinkedList<>();
 
     readyQueue.addAll(mBlockCache.values());
     
     for (int v = 0; v < g.n; v++) {
-      VertexSet cnb = (VertexSet) g.neighborSet[v].clone();
+      VertexSet cnb = (VertexSet) g.neighborSet(v).clone();
       cnb.set(v);
 
       if (DEBUG) {
@@ -458,9 +456,17 @@ public class MTDecomposerHeuristic {
   }
   
   Block getBlock(VertexSet component) {
+    return getBlock(component, null);
+  }
+
+  /**
+   * @param separator the neighborhood of the component if already
+   * known; null otherwise
+   */
+  Block getBlock(VertexSet component, VertexSet separator) {
     Block block = blockCache.get(component);
     if (block == null) {
-      block = new Block(component);
+      block = new Block(component, separator);
       blockCache.put(component, block);
     }
     return block;
@@ -516,12 +522,12 @@ public class MTDecomposerHeuristic {
         System.out.println("delta1 = " + delta1);
         for (int v = delta1.nextSetBit(0); v >= 0; v = delta1
             .nextSetBit(v + 1)) {
-          System.out.println("  " + v + "(" + g.neighborSet[v] + ")");
+          System.out.println("  " + v + "(" + g.neighborSet(v) + ")");
         }
         System.out.println("delta2 = " + delta2);
         for (int v = delta2.nextSetBit(0); v >= 0; v = delta2
             .nextSetBit(v + 1)) {
-          System.out.println("  " + v + "(" + g.neighborSet[v] + ")");
+          System.out.println("  " + v + "(" + g.neighborSet(v) + ")");
         }
 
         TBlock tBlock = tBlockCache.get(inletsUnion);
@@ -538,7 +544,7 @@ public class MTDecomposerHeuristic {
 
   boolean isFullComponent(VertexSet component, VertexSet sep) {
     for (int v = sep.nextSetBit(0); v >= 0; v = sep.nextSetBit(v + 1)) {
-      if (component.isDisjoint(g.neighborSet[v])) {
+      if (component.isDisjoint(g.neighborSet(v))) {
         return false;
       }
     }
@@ -546,25 +552,12 @@ public class MTDecomposerHeuristic {
   }
 
   ArrayList<Block> getBlocks(VertexSet separator) {
-    ArrayList<Block> result = new ArrayList<Block>();
-    VertexSet rest = g.all.subtract(separator);
-    for (int v = rest.nextSetBit(0); v >= 0; v = rest.nextSetBit(v + 1)) {
-      VertexSet c = g.neighborSet[v].subtract(separator);
-      VertexSet toBeScanned = (VertexSet) c.clone();
-      c.set(v);
-      while (!toBeScanned.isEmpty()) {
-        VertexSet save = (VertexSet) c.clone();
-        for (int w = toBeScanned.nextSetBit(0); w >= 0; w = toBeScanned
-            .nextSetBit(w + 1)) {
-          c.or(g.neighborSet[w]);
-        }
-        c.andNot(separator);
-        toBeScanned = c.subtract(save);
-      }
-
-      Block block = getBlock(c);
-      result.add(block);
-      rest.andNot(c);
+    ArrayList<VertexSet> components = new ArrayList<VertexSet>();
+    ArrayList<VertexSet> neighbors = new ArrayList<VertexSet>();
+    g.componentFinder().components(separator, components, neighbors);
+    ArrayList<Block> result = new ArrayList<Block>(components.size());
+    for (int i = 0; i < components.size(); i++) {
+      result.add(getBlock(components.get(i), neighbors.get(i)));
     }
     return result;
   }
@@ -574,41 +567,23 @@ public class MTDecomposerHeuristic {
     VertexSet separator;
     VertexSet outbound;
 
-    Block(VertexSet component) {
+    Block(VertexSet component, VertexSet separator) {
       this.component = component;
-      this.separator = g.neighborSet(component);
-      
-      VertexSet rest = g.all.subtract(component);
-      rest.andNot(separator);
-      
-      int minCompo = component.nextSetBit(0);
-
-      // the scanning order ensures that the first full component
-      // encountered is the outbound one
-      for (int v = rest.nextSetBit(0); v >= 0; v = rest.nextSetBit(v + 1)) {
-        VertexSet c = (VertexSet) g.neighborSet[v].clone();
-        VertexSet toBeScanned = c.subtract(separator);
-        c.set(v);
-        while (!toBeScanned.isEmpty()) {
-          VertexSet save = (VertexSet) c.clone();
-          for (int w = toBeScanned.nextSetBit(0); w >= 0; 
-              w = toBeScanned.nextSetBit(w + 1)) {
-            c.or(g.neighborSet[w]);
-          }
-          toBeScanned = c.subtract(save).subtract(separator);
+      this.separator = separator != null ? separator :
+        g.neighborSet(component);
+
+      // the first full component other than "component" in the
+      // order of the smallest vertices is the outbound one if it
+      // comes before "component"
+      VertexSet c = g.componentFinder().firstFullComponent(
+          this.separator, component);
+      if (c != null) {
+        if (c.nextSetBit(0) < component.nextSetBit(0)) {
+          outbound = c;
         }
-        if (separator.isSubset(c)) {
-          // full block other than "component" found
-          if (v < minCompo) {
-            outbound = c.subtract(separator);
-          }
-          else {
-            // v > minCompo
-            outbound = component;
-          }
-          return;
+        else {
+          outbound = component;
         }
-        rest.andNot(c);
       }
     }
 
@@ -731,12 +706,13 @@ public class MTDecomposerHeuristic {
         System.out.println("  to " + this);
       }
 
-      VertexSet newsep = separator.unionWith(mBlock.block.separator);
-
-      if (newsep.cardinality() > targetWidth + 1) {
+      if (separator.unionCardinalityExceeds(
+            mBlock.block.separator, targetWidth + 1)) {
         return;
       }
 
+      VertexSet newsep = separator.unionWith(mBlock.block.separator);
+
       ArrayList<Block> blockList = getBlocks(newsep);
 
       Block fullBlock = null;
@@ -810,15 +786,19 @@ public class MTDecomposerHeuristic {
     }
     
     void crown() {
+      int nSep = separator.cardinality();
       for (int v = separator.nextSetBit(0); v >= 0; 
           v = separator.nextSetBit(v + 1)) {
         if (DEBUG) {
           System.out.println("try crowing by " + v);
         }
 
-        VertexSet newsep = separator.unionWith(
-          g.neighborSet[v].intersectWith(openComponent));
-        if (newsep.cardinality() <= targetWidth + 1) {
+        // the separator is disjoint from the open component, so
+        // the size of the candidate is known before it is created
+        if (nSep + g.neighborSet(v).intersectionCardinality(openComponent)
+            <= targetWidth + 1) {
+          VertexSet newsep = separator.unionWith(
+            g.neighborSet(v).intersectWith(openComponent));
 
           if (DEBUG) {
             System.out.println("crowing by " + v + ":" + this);
@@ -908,7 +888,7 @@ public class MTDecomposerHeuristic {
       
       for (int v = vertexSet.nextSetBit(0); v >= 0; 
             v = vertexSet.nextSetBit(v + 1)) {
-        VertexSet rest = vertexSet.subtract(g.neighborSet[v]);
+        VertexSet rest = vertexSet.subtract(g.neighborSet(v));
         rest.clear(v);
         if (outbound != null && outbound.separator.get(v)) {
           rest.andNot(outbound.separator);
@@ -1256,7 +1236,7 @@ public class MTDecomposerHeuristic {
 
     System.out.println("Graph " + name + " read");
     // for (int v = 0; v < g.n; v++) {
-    // System.out.println(v + ": " + g.degree[v] + ", " + g.neighborSet[v]);
+    // System.out.println(v + ": " + g.degree[v] + ", " + g.neighborSet(v));
     // }
 
     long t0 = System.currentTimeMillis();
@@ -7,6 +7,7 @@ package tw.heuristic;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.PrintStream;
 
 import java.util.ArrayList;
@@ -19,6 +20,14 @@ import java.util.Set;
 import java.util.HashSet;
 import java.util.Random;
 import java.util.Collections;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 
 public class MainDecomposer{
   public static enum Mode{
@@ -30,18 +39,36 @@ public class MainDecomposer{
   public static final long CUT_D_TIME_MS = 300000;
   public static final long DETECT_TIME_MS = 10000;
 
-  private static Random random;
-  private static Graph wholeGraph;
-  private static TreeDecomposition best;
-  private static int[][] invs;
-  private static Bag[] bags;
-  private static long detectSum;
-  private static long startTime;
-  private static int print_tw_below;
+  private final long seed;
+  private long timeLimitMS = Long.MAX_VALUE;
+  private int print_tw_below = -1;
+  private PrintStream out = System.out;
+  private boolean portfolio;
+  private int threads = 1;
+  private ExecutorService portfolioPool;
+
+  private Random random;
+  private Graph wholeGraph;
+  private Reducer reduction;
+  private boolean reuseIsomorphic = true;
+  private int lowerBound;
+  private final AtomicReference< TreeDecomposition > best;
+  private int[][] invs;
+  private Bag[] bags;
+
+  /**
+   * the index of the bag decomposed for each component; isomorphic
+   * components share the bag, the inverse map of each component
+   * being composed with the isomorphism from the component of the bag
+   */
+  private int[] bagOf;
+  private long detectSum;
+  private long startTime;
+  private long deadline;
 
   private static final boolean DEBUG = false;
 
-  private static int countGD, countPD, countTD;
+  private int countGD, countPD, countTD;
 
   private static final Comparator< Bag > WIDTH_DESCENDING_ORDER =
     new Comparator< Bag >(){
@@ -51,11 +78,11 @@ public class MainDecomposer{
         }
     };
 
-  public static TreeDecomposition getBestTreeDecompositionSoFar(){
-    return best;
+  public TreeDecomposition getBestTreeDecompositionSoFar(){
+    return best.get();
   }
 
-  private static void commit(){
+  private void commit(){
     if(bags == null){
       return;
     }
@@ -69,22 +96,13 @@ public class MainDecomposer{
       copiedBags[i] = (Bag)bags[i].clone();
     }
 
-    if(bags.length == 1){
+    if(invs == null){
       // trivial tree decomposition
       if(copiedBags[0].nestedBags == null || copiedBags[0].nestedBags.isEmpty()){
         TreeDecomposition trivial =
           new TreeDecomposition(0, copiedBags[0].graph.n - 1, copiedBags[0].graph);
         trivial.addBag(copiedBags[0].graph.all.toArray());
-        if(best == null || trivial.width < best.width){
-          best = trivial;
-          comment("width = " + best.width);
-          printTime();
-		  if(best.width <= print_tw_below-1) {
-			TreeDecomposition result = getBestTreeDecompositionSoFar();
-			result.writeTo(System.out);
-			System.out.print("=\n");
-		  }
-        }
+        offer(trivial);
         return;
       }
 
@@ -92,45 +110,74 @@ public class MainDecomposer{
       TreeDecomposition td = copiedBags[0].toTreeDecomposition();
       setWidth(td);
 
-      if(best == null || td.width < best.width){
-        best = td;
-        comment("width = " + best.width);
-        printTime();
-        if(best.width <= print_tw_below-1) {
-          TreeDecomposition result = getBestTreeDecompositionSoFar();
-          result.writeTo(System.out);
-          System.out.print("=\n");
-        }
-      }
-
+      offer(td);
       return;
     }
 
-    TreeDecomposition td = new TreeDecomposition(0, 0, wholeGraph);
+    TreeDecomposition[] tds = new TreeDecomposition[copiedBags.length];
     for(int i = 0; i < copiedBags.length; i++){
       // trivial tree decomposition
       if(copiedBags[i].nestedBags == null || copiedBags[i].nestedBags.isEmpty()){
-        TreeDecomposition trivial =
+        tds[i] =
           new TreeDecomposition(0, copiedBags[i].graph.n - 1, copiedBags[i].graph);
-        trivial.addBag(copiedBags[i].graph.all.toArray());
-        td.combineWith(trivial, invs[i], null);
+        tds[i].addBag(copiedBags[i].graph.all.toArray());
       }
       else{
         copiedBags[i].flatten();
-        td.combineWith(copiedBags[i].toTreeDecomposition(), invs[i], null);
+        tds[i] = copiedBags[i].toTreeDecomposition();
       }
     }
+
+    TreeDecomposition td = new TreeDecomposition(0, 0, wholeGraph);
+    for(int i = 0; i < invs.length; i++){
+      td.combineWith(tds[bagOf[i]], invs[i], null);
+    }
     setWidth(td);
 
-    if(best == null || td.width < best.width){
-      best = td;
-      comment("width = " + best.width);
+    offer(td);
+  }
+
+  /**
+   * Makes the given decomposition the incumbent if it is narrower.
+   * The incumbent may be shared by several contexts searching in
+   * parallel; it is updated without locking and each improvement
+   * is reported exactly once, by the context that installed it.
+   * A decomposition of the kernel is lifted back to the original
+   * graph first.
+   */
+  private void offer(TreeDecomposition td){
+    td = liftBack(td);
+    TreeDecomposition current = best.get();
+    while(current == null || td.width < current.width){
+      if(best.compareAndSet(current, td)){
+        report(td);
+        return;
+      }
+      current = best.get();
+    }
+  }
+
+  /**
+   * lifts a decomposition of the graph decomposed, which is the
+   * kernel if the input graph has been reduced, back to the
+   * input graph
+   */
+  private TreeDecomposition liftBack(TreeDecomposition td){
+    return reduction == null ? td : reduction.liftBack(td);
+  }
+
+  private void report(TreeDecomposition td){
+    synchronized(out){
+      // skip if already superseded by another context
+      if(best.get() != td){
+        return;
+      }
+      comment("width = " + td.width);
       printTime();
-	  if(best.width <= print_tw_below-1) {
-		TreeDecomposition result = getBestTreeDecompositionSoFar();
-		result.writeTo(System.out);
-		System.out.print("=\n");
-	  }
+      if(td.width <= print_tw_below-1) {
+        td.writeTo(out);
+        out.print("=\n");
+      }
     }
   }
 
@@ -145,26 +192,40 @@ public class MainDecomposer{
     td.width = width;
   }
 
-  private static void comment(String comment){
-    System.out.println("c " + comment);
+  private void comment(String comment){
+    out.println("c " + comment);
   }
 
-  private static void printTime(){
+  private void printTime(){
     comment("time = " + (System.currentTimeMillis() - startTime) + " ms");
   }
 
-  private static void initializeForDecomposition(Graph graph, long seed){
+  private boolean isTimeUp(){
+    return System.currentTimeMillis() >= deadline;
+  }
+
+  private long remainingTimeMS(){
+    return Math.max(0, deadline - System.currentTimeMillis());
+  }
+
+  private void initializeForDecomposition(Graph graph){
     wholeGraph = graph;
-    best = null;
+    reduction = null;
+    lowerBound = 0;
     bags = null;
     invs = null;
+    bagOf = null;
     detectSum = 0;
     random = new Random(seed);
     startTime = System.currentTimeMillis();
+    deadline = timeLimitMS < Long.MAX_VALUE - startTime ?
+      startTime + timeLimitMS : Long.MAX_VALUE;
 
     // trivial tree decomposition
-    best = new TreeDecomposition(0, wholeGraph.n - 1, wholeGraph);
-    best.addBag(wholeGraph.all.toArray());
+    TreeDecomposition trivial =
+      new TreeDecomposition(0, wholeGraph.n - 1, wholeGraph);
+    trivial.addBag(wholeGraph.all.toArray());
+    best.set(trivial);
 
     if(DEBUG){
       comment("seed = " + seed);
@@ -172,11 +233,54 @@ public class MainDecomposer{
   }
 
   public static TreeDecomposition decompose(Graph graph, long seed){
-    initializeForDecomposition(graph, seed);
+    return new MainDecomposer(seed).decompose(graph);
+  }
+
+  public static TreeDecomposition decompose(Graph graph, long seed, long timeMS){
+    MainDecomposer md = new MainDecomposer(seed);
+    md.setTimeLimit(timeMS);
+    return md.decompose(graph);
+  }
+
+  public TreeDecomposition decompose(Graph graph){
+    try{
+      return decomposeInContext(graph);
+    }
+    finally{
+      shutdownPortfolioPool();
+    }
+  }
+
+  private void shutdownPortfolioPool(){
+    if(portfolioPool != null){
+      portfolioPool.shutdownNow();
+      portfolioPool = null;
+    }
+  }
+
+  private TreeDecomposition decomposeInContext(Graph graph){
+    initializeForDecomposition(graph);
 
     if(graph.n == 0){
-      best = new TreeDecomposition(0, -1, graph);
-      return best;
+      best.set(new TreeDecomposition(0, -1, graph));
+      return getBestTreeDecompositionSoFar();
+    }
+
+    Reducer reducer = new Reducer(graph, LowerBound.of(graph));
+    int eliminated = reducer.reduce();
+    lowerBound = reducer.lowerBound();
+    if(eliminated > 0){
+      reduction = reducer;
+      graph = reducer.getKernel();
+      wholeGraph = graph;
+      if(DEBUG){
+        comment(reducer.eliminatedCount() + " vertices eliminated, kernel n = " +
+            graph.n + ", lower bound = " + reducer.lowerBound());
+      }
+      if(graph.n == 0){
+        best.set(liftBack(new TreeDecomposition(0, -1, graph)));
+        return getBestTreeDecompositionSoFar();
+      }
     }
 
     ArrayList< VertexSet > components = graph.getComponents(new VertexSet());
@@ -185,13 +289,15 @@ public class MainDecomposer{
 
     if(nc == 1){
       if(graph.n <= 2){
-        best = new TreeDecomposition(0, graph.n - 1, graph);
-        best.addBag(graph.all.toArray());
-        return best;
+        TreeDecomposition td = new TreeDecomposition(0, graph.n - 1, graph);
+        td.addBag(graph.all.toArray());
+        best.set(liftBack(td));
+        return getBestTreeDecompositionSoFar();
       }
 
       bags = new Bag[1];
       bags[0] = new Bag(graph);
+      computeLowerBounds();
 
       if(decomposeWithSmallCuts(bags[0])){
         commit();
@@ -210,11 +316,7 @@ public class MainDecomposer{
 
       commit();
 
-      while(!bags[0].optimal){
-        improveWithSeparators(bags[0], bags[0].getWidth());
-        commit();
-        bags[0].flatten();
-      }
+      improveAll();
 
       return getBestTreeDecompositionSoFar();
     }
@@ -240,20 +342,44 @@ public class MainDecomposer{
       graphs[i].inheritEdges(graph, conv, invs[i]);
     }
 
-    bags = new Bag[nc];
+    // a component isomorphic to one before it is not decomposed
+    IsomorphismCache< Integer > cache = new IsomorphismCache< >();
+    ArrayList< Bag > list = new ArrayList< >();
+    bagOf = new int[nc];
     for(int i = 0; i < nc; i++){
-      bags[i] = new Bag(graphs[i]);
+      IsomorphismCache.Hit< Integer > hit =
+        reuseIsomorphic ? cache.get(graphs[i]) : null;
+      if(hit != null){
+        bagOf[i] = hit.value;
+        int[] inv = new int[hit.map.length];
+        for(int v = 0; v < inv.length; v++){
+          inv[v] = invs[i][hit.map[v]];
+        }
+        invs[i] = inv;
+      }
+      else{
+        bagOf[i] = list.size();
+        list.add(new Bag(graphs[i]));
+        if(reuseIsomorphic){
+          cache.put(graphs[i], bagOf[i]);
+        }
+      }
+    }
+    bags = list.toArray(new Bag[list.size()]);
+    if(DEBUG && bags.length < nc){
+      comment((nc - bags.length) + " components isomorphic to others");
     }
+    computeLowerBounds();
 
     commit();
 
-    for(int i = 0; i < nc; i++){
+    for(int i = 0; i < bags.length; i++){
       decomposeWithSmallCuts(bags[i]);
     }
 
     commit();
 
-    for(int i = 0; i < nc; i++){
+    for(int i = 0; i < bags.length; i++){
       if(bags[i].countSafeSeparators() == 0){
         decomposeGreedy(bags[i]);
       }
@@ -268,27 +394,103 @@ public class MainDecomposer{
 
     commit();
 
+    improveAll();
+
+    return getBestTreeDecompositionSoFar();
+  }
+
+  /**
+   * Repeatedly improves the bags until all of them are optimal
+   * or the time is up; with more than one thread, runs that many
+   * independently seeded improvement loops on clones of the bags,
+   * all sharing the incumbent of this context.
+   */
+  private void improveAll(){
+    if(threads <= 1){
+      improveBags();
+      return;
+    }
+
+    // the safe separators are detected once for all the searches
+    for(Bag b : bags){
+      if(b.separators != null && b.countSafeSeparators() == 0 &&
+          detectSum < DETECT_TIME_MS){
+        detectSum += b.detectSafeSeparators(DETECT_TIME_MS - detectSum);
+      }
+    }
+
+    Thread[] workers = new Thread[threads];
+    for(int i = 0; i < threads; i++){
+      final MainDecomposer worker = new MainDecomposer(this, seed + i);
+      workers[i] = new Thread(){
+        @Override
+        public void run(){
+          try{
+            worker.improveBags();
+          }
+          finally{
+            worker.shutdownPortfolioPool();
+          }
+        }
+      };
+      workers[i].setDaemon(true);
+      workers[i].start();
+    }
+    for(Thread w : workers){
+      try{
+        w.join();
+      }
+      catch(InterruptedException e){
+        throw new RuntimeException(e);
+      }
+    }
+  }
+
+  /**
+   * Computes the lower bound of each bag of the components and
+   * raises the lower bound of the whole graph to the largest.
+   */
+  private void computeLowerBounds(){
+    for(Bag b : bags){
+      b.lowerBound = LowerBound.of(b.graph);
+      lowerBound = Math.max(lowerBound, b.lowerBound);
+    }
+    if(DEBUG){
+      comment("lower bound = " + lowerBound);
+    }
+  }
+
+  /**
+   * Improves the widest bag repeatedly.  A bag is optimal, and is
+   * dropped, once its width is at most the lower bound of the whole
+   * graph, which no decomposition can go below; when all the bags
+   * are dropped the incumbent is optimal and the search ends without
+   * waiting for the time limit.
+   */
+  private void improveBags(){
     PriorityQueue< Bag > queue =
-      new PriorityQueue< >(nc, WIDTH_DESCENDING_ORDER);
+      new PriorityQueue< >(bags.length, WIDTH_DESCENDING_ORDER);
 
-    for(int i = 0; i < nc; i++){
-      queue.offer(bags[i]);
+    for(int i = 0; i < bags.length; i++){
+      bags[i].optimal = bags[i].getWidth() <= lowerBound;
+      if(!bags[i].optimal){
+        queue.offer(bags[i]);
+      }
     }
 
-    while(!queue.isEmpty()){
+    while(!queue.isEmpty() && !isTimeUp()){
       Bag b = queue.poll();
       improveWithSeparators(b, b.getWidth());
       commit();
       b.flatten();
+      b.optimal = b.getWidth() <= lowerBound;
       if(!b.optimal){
         queue.offer(b);
       }
     }
-
-    return getBestTreeDecompositionSoFar();
   }
 
-  private static void improveWithSeparators(Bag bag, int k){
+  private void improveWithSeparators(Bag bag, int k){
     if(bag.parent != null){
       bag.makeLocalGraph();
     }
@@ -325,7 +527,7 @@ public class MainDecomposer{
     }
   }
 
-  private static boolean improve(Bag bag, int k){
+  private boolean improve(Bag bag, int k){
     if(bag.parent != null){
       bag.makeLocalGraph();
     }
@@ -335,18 +537,22 @@ public class MainDecomposer{
     }
 
     if(bag.nestedBags == null){
-      tryDecomposeExactly(bag, bag.graph.minDegree(), k - 1, k - 1);
+      tryDecomposeExactly(bag, LowerBound.of(bag.graph), k - 1, k - 1);
       return bag.getWidth() <= k - 1;
     }
 
-    while(bag.getWidth() >= k){
+    while(bag.getWidth() >= k && !isTimeUp()){
       Bag maxBag = null;
       for(Bag nb : bag.nestedBags){
         if(maxBag == null || nb.size > maxBag.size){
           maxBag = nb;
         }
       }
-      long timeMS = INITIAL_TIME_MS;
+      long timeMS = Math.min(INITIAL_TIME_MS, remainingTimeMS());
+      if(portfolio){
+        improveInParallel(bag, maxBag, timeMS);
+        continue;
+      }
       int gdVS = maxBag.size, pdVS = maxBag.size, tdVS = maxBag.size;
       int count = 0;
       while(true){
@@ -385,7 +591,98 @@ public class MainDecomposer{
     return true;
   }
 
-  private static void searchBagsToImproveLikeTree(Bag bag, Separator from, int max,
+  /**
+   * Runs the greedy, path and tree decomposition strategies of
+   * {@code improve} at the same time, each on its own clone of
+   * {@code bag}.  The first strategy to reach width k - 1 commits
+   * its clone into {@code bag} via {@code replace} and the others are
+   * cancelled cooperatively; if none succeeds, {@code bag} is
+   * refreshed as in the sequential round.
+   */
+  private void improveInParallel(Bag bag, Bag maxBag, long timeMS){
+    final Mode[] modes = Mode.values();
+    final int[] cycles = {10, 30, 3};
+    final int[] ds = {3, 2, 3};
+    final int[] sizes = new int[modes.length];
+    final AtomicBoolean cancelled = new AtomicBoolean();
+    final AtomicReference< Mode > winner = new AtomicReference< >();
+    int index = bag.nestedBags.indexOf(maxBag);
+
+    ArrayList< Callable< Void > > tasks = new ArrayList< >();
+    for(int i = 0; i < modes.length; i++){
+      final int m = i;
+      final Bag whole = cloneWithGraphs(bag);
+      final Bag max = whole.nestedBags.get(index);
+      final Random r = new Random(random.nextLong());
+      tasks.add(new Callable< Void >(){
+        @Override
+        public Void call(){
+          sizes[m] = tryImproveWith(modes[m], whole, max,
+              timeMS, max.size, cycles[m], ds[m], r, cancelled);
+          if(sizes[m] < 0 && cancelled.compareAndSet(false, true)){
+            winner.set(modes[m]);
+            replace(whole, bag);
+          }
+          return null;
+        }
+      });
+    }
+
+    try{
+      for(Future< Void > f : getPortfolioPool().invokeAll(tasks)){
+        f.get();
+      }
+    }
+    catch(InterruptedException | ExecutionException e){
+      throw new RuntimeException(e);
+    }
+
+    if(winner.get() == null){
+      int vs = Math.max(sizes[0], Math.max(sizes[1], sizes[2]));
+      refresh(bag, maxBag, vs + 30);
+      return;
+    }
+    switch(winner.get()){
+      case greedy : ++countGD; break;
+      case pathDecomposition : ++countPD; break;
+      case treeDecomposition : ++countTD; break;
+    }
+  }
+
+  /**
+   * Clones the bag together with the graphs of the bag and its
+   * nested bags, so that the clone can be worked on by another thread.
+   */
+  private static Bag cloneWithGraphs(Bag bag){
+    Bag result = (Bag)bag.clone();
+    result.graph = result.graph.copy();
+    if(result.nestedBags != null){
+      for(Bag nb : result.nestedBags){
+        if(nb.graph != null){
+          nb.graph = nb.graph.copy();
+        }
+      }
+    }
+    return result;
+  }
+
+  private ExecutorService getPortfolioPool(){
+    if(portfolioPool == null){
+      portfolioPool = Executors.newFixedThreadPool(Mode.values().length,
+          new ThreadFactory(){
+            @Override
+            public Thread newThread(Runnable r){
+              Thread t = new Thread(r);
+              t.setDaemon(true);
+              return t;
+            }
+          });
+    }
+    return portfolioPool;
+  }
+
+  private static void searchBagsToImproveLikeTree(Random random,
+      Bag bag, Separator from, int max,
       int targetWidth, ArrayList< Separator > separatorsToCheck){
     Set< Bag > visitedBags = new HashSet< >();
     VertexSet vs = new VertexSet();
@@ -396,7 +693,7 @@ public class MainDecomposer{
     collectSubsetBags(visitedBags, vs);
 
     while(vs.cardinality() < max){
-      if(!choiceBagAtRandom(visitedBags, vs)){
+      if(!choiceBagAtRandom(random, visitedBags, vs)){
         break;
       }
     }
@@ -405,7 +702,8 @@ public class MainDecomposer{
     collectSeparatorsTocheck(visitedBags, separatorsToCheck);
   }
 
-  private static void searchBagsToImproveLikePath(Bag bag, Separator from, int max,
+  private static void searchBagsToImproveLikePath(Random random,
+      Bag bag, Separator from, int max,
       int targetWidth, ArrayList< Separator > separatorsToCheck){
     Set< Bag > visitedBags = new HashSet< >();
     VertexSet vs = new VertexSet();
@@ -413,10 +711,10 @@ public class MainDecomposer{
     visitedBags.add(bag);
     vs.or(bag.vertexSet);
 
-    collectBagsLikePath(bag, visitedBags, vs, 4 * max / 5);
+    collectBagsLikePath(random, bag, visitedBags, vs, 4 * max / 5);
 
     while(vs.cardinality() < max){
-      if(!choiceBagAtRandom(visitedBags, vs)){
+      if(!choiceBagAtRandom(random, visitedBags, vs)){
         break;
       }
     }
@@ -425,7 +723,7 @@ public class MainDecomposer{
     collectSeparatorsTocheck(visitedBags, separatorsToCheck);
   }
 
-  private static void collectBagsLikePath(
+  private static void collectBagsLikePath(Random random,
       Bag bag, Set< Bag > visitedBags, VertexSet vs, int max){
     Bag s = bag, t = bag;
     while(vs.cardinality() < max){
@@ -469,7 +767,8 @@ public class MainDecomposer{
     collectSubsetBags(visitedBags, vs);
   }
 
-  private static boolean choiceBagAtRandom(Set< Bag > visitedBags, VertexSet vs){
+  private static boolean choiceBagAtRandom(Random random,
+      Set< Bag > visitedBags, VertexSet vs){
     ArrayList< Bag > outers = new ArrayList< >();
     for(Bag b : visitedBags){
       for(Separator is : b.incidentSeparators){
@@ -611,10 +910,10 @@ public class MainDecomposer{
     mfd.decompose();
   }
 
-  private static boolean decomposeWithSmallCuts(Bag bag){
+  private boolean decomposeWithSmallCuts(Bag bag){
     bag.initializeForDecomposition();
     CutDecomposer cd = new CutDecomposer(bag);
-    cd.decompose(CUT_D_TIME_MS);
+    cd.decompose(Math.min(CUT_D_TIME_MS, remainingTimeMS()));
     if(DEBUG){
       comment("finish cut decompose");
     }
@@ -650,7 +949,7 @@ public class MainDecomposer{
   }
   */
 
-  private static void tryDecomposeExactly(Bag bag, int lowerBound, int upperBound, int targetWidth){
+  private void tryDecomposeExactly(Bag bag, int lowerBound, int upperBound, int targetWidth){
     if(lowerBound > upperBound){
       return;
     }
@@ -669,7 +968,8 @@ public class MainDecomposer{
 
     triedBag.initializeForDecomposition();
     MTDecomposerHeuristic mtd = new MTDecomposerHeuristic(
-        triedBag, lowerBound, upperBound, null, null, MAX_TIME);
+        triedBag, lowerBound, upperBound, null, null,
+        Math.min(MAX_TIME, remainingTimeMS()));
     mtd.setMaxMultiplicity(MAX_MULTIPLICITY);
     if(!mtd.decompose()){
       return;
@@ -680,8 +980,23 @@ public class MainDecomposer{
     }
   }
 
-  private static int tryImproveWith(Mode mode,
+  private int tryImproveWith(Mode mode,
       Bag whole, Bag maxBag, long time, int vsSize, int cycle, int d){
+    return tryImproveWith(mode, whole, maxBag, time, vsSize, cycle, d,
+        random, null);
+  }
+
+  /**
+   * Tries to improve {@code whole} by re-decomposing a region
+   * around {@code maxBag} with the given mode.
+   * Gives up when {@code cancelled} becomes true, which is checked
+   * between the attempts.
+   * @return -1 if improved; otherwise the size of the region to be
+   * tried next
+   */
+  private int tryImproveWith(Mode mode,
+      Bag whole, Bag maxBag, long time, int vsSize, int cycle, int d,
+      Random random, AtomicBoolean cancelled){
     if(DEBUG){
       comment("mode = " + mode);
       comment("cycle = " + cycle);
@@ -704,11 +1019,11 @@ public class MainDecomposer{
       ArrayList< Separator > separatorsToCheck = new ArrayList< >();
       switch(mode){
         case greedy : case treeDecomposition :
-          searchBagsToImproveLikeTree(
+          searchBagsToImproveLikeTree(random,
               maxBag, null, targetSize, k - 1, separatorsToCheck);
           break;
         case pathDecomposition :
-          searchBagsToImproveLikePath(
+          searchBagsToImproveLikePath(random,
               maxBag, null, targetSize, k - 1, separatorsToCheck);
           break;
       }
@@ -749,7 +1064,7 @@ public class MainDecomposer{
 
         case pathDecomposition :
           PathDecomposer pd = new PathDecomposer(triedBag, 
-              triedBag.graph.minDegree(), k - 1);
+              Math.min(LowerBound.of(triedBag.graph), k - 1), k - 1);
           if(pd.decompose(time - sum)){
             success = true;
           }
@@ -758,7 +1073,7 @@ public class MainDecomposer{
 
         case treeDecomposition :
           MTDecomposerHeuristic mtd = new MTDecomposerHeuristic(
-              triedBag, triedBag.graph.minDegree(), k - 1, null, null, time - sum);
+              triedBag, LowerBound.of(triedBag.graph), k - 1, null, null, time - sum);
           mtd.setMaxMultiplicity(MAX_MULTIPLICITY);
           if(mtd.decompose()){
             success = true;
@@ -781,7 +1096,8 @@ public class MainDecomposer{
         whole.flatten();
       }
 
-      if(sum >= time){
+      if(sum >= time || isTimeUp() ||
+          (cancelled != null && cancelled.get())){
         break;
       }
 
@@ -795,10 +1111,10 @@ public class MainDecomposer{
     return targetSize;
   }
 
-  private static void refresh(Bag whole, Bag maxBag, int vsSize){
+  private void refresh(Bag whole, Bag maxBag, int vsSize){
     int k = whole.getWidth();
     ArrayList< Separator > separatorsToCheck = new ArrayList< >();
-    searchBagsToImproveLikeTree(
+    searchBagsToImproveLikeTree(random,
         maxBag, null, vsSize, k - 1, separatorsToCheck);
 
     for(Separator s : separatorsToCheck){
@@ -845,20 +1161,157 @@ public class MainDecomposer{
     }
   }
 
-  private MainDecomposer(){}
+  /**
+   * Create a solver context.
+   * Each context owns its random source, time budget and
+   * best decomposition found so far, so that several contexts
+   * can decompose different graphs concurrently in one process.
+   * @param seed the seed of the random source
+   */
+  public MainDecomposer(long seed){
+    this.seed = seed;
+    this.best = new AtomicReference< >();
+  }
+
+  /**
+   * Create a worker context for the parallel search of the parent,
+   * sharing its graph, budget, output and incumbent but having
+   * its own random source and clones of the bags.
+   */
+  private MainDecomposer(MainDecomposer parent, long seed){
+    this.seed = seed;
+    this.best = parent.best;
+    this.print_tw_below = parent.print_tw_below;
+    this.out = parent.out;
+    this.portfolio = parent.portfolio;
+    this.wholeGraph = parent.wholeGraph;
+    this.reduction = parent.reduction;
+    this.lowerBound = parent.lowerBound;
+    this.invs = parent.invs;
+    this.bagOf = parent.bagOf;
+    this.detectSum = parent.detectSum;
+    this.startTime = parent.startTime;
+    this.deadline = parent.deadline;
+    this.random = new Random(seed);
+    this.bags = new Bag[parent.bags.length];
+    for(int i = 0; i < bags.length; i++){
+      bags[i] = cloneWithGraphs(parent.bags[i]);
+    }
+  }
+
+  /**
+   * Set the number of independently seeded improvement loops
+   * run in parallel after the common preprocessing.
+   */
+  public void setThreads(int threads){
+    this.threads = threads;
+  }
+
+  /**
+   * Set the time after which {@code decompose} gives up improving
+   * the best decomposition found so far.
+   * @param timeMS the time limit in milliseconds
+   */
+  public void setTimeLimit(long timeMS){
+    this.timeLimitMS = timeMS;
+  }
+
+  /**
+   * Every improved decomposition of width below the given value
+   * is printed, followed by a line "=".
+   * @param print_tw_below the threshold; -1 for no printing
+   */
+  public void setPrintTwBelow(int print_tw_below){
+    this.print_tw_below = print_tw_below;
+  }
+
+  /**
+   * Set whether a component isomorphic to one before it reuses
+   * the decomposition of that one; on by default.
+   */
+  public void setReuseIsomorphic(boolean reuseIsomorphic){
+    this.reuseIsomorphic = reuseIsomorphic;
+  }
+
+  /**
+   * Run the improvement strategies in parallel rather than
+   * in round-robin.
+   */
+  public void setPortfolio(boolean portfolio){
+    this.portfolio = portfolio;
+  }
+
+  public void setOutput(PrintStream out){
+    this.out = out;
+  }
+
+  /**
+   * The options of the decomposition given on the command line,
+   * which are applied to each solver context created for them,
+   * in the server mode to that of each request.
+   */
+  public static class Options{
+    public int print_tw_below = -1;
+    public boolean portfolio;
+    public boolean reuseIsomorphic = true;
+    public int threads = 1;
+
+    public void applyTo(MainDecomposer md){
+      md.setPrintTwBelow(print_tw_below);
+      md.setPortfolio(portfolio);
+      md.setReuseIsomorphic(reuseIsomorphic);
+      md.setThreads(threads);
+    }
+  }
 
   public static void main(String[] args){
+    long seed = 42;
+    boolean server = false;
+    Options options = new Options();
+    for(int i = 0; i < args.length; i++){
+      if("-s".equals(args[i]) && i + 1 < args.length){
+        seed = Long.parseLong(args[++i]);
+      } else if("-p".equals(args[i]) && i + 1 < args.length){
+        options.print_tw_below = Integer.parseInt(args[++i]);
+      } else if("-server".equals(args[i])){
+        server = true;
+      } else if("-t".equals(args[i]) && i + 1 < args.length){
+        options.threads = Integer.parseInt(args[++i]);
+      } else if("-portfolio".equals(args[i])){
+        options.portfolio = true;
+      } else if("-noiso".equals(args[i])){
+        options.reuseIsomorphic = false;
+      } else if("-fixedbitset".equals(args[i])){
+        VertexSet.setBitSetType(VertexSet.Type.FIXEDBITSET);
+      } else if("-chunkedset".equals(args[i])){
+        VertexSet.setBitSetType(VertexSet.Type.CHUNKEDSET);
+      }
+    }
+
+    if(server){
+      try{
+        new DecompositionServer(System.in, seed, options).serve();
+      }
+      catch(IOException e){
+        e.printStackTrace();
+      }
+      return;
+    }
+
+    final MainDecomposer md = new MainDecomposer(seed);
+    options.applyTo(md);
+
     Runtime.getRuntime().addShutdownHook(new Thread(){
         @Override
         public void run(){
-        TreeDecomposition result = getBestTreeDecompositionSoFar();
+        TreeDecomposition result = md.getBestTreeDecompositionSoFar();
         if(result == null){
-        comment("no solution");
+        md.comment("no solution");
         return;
         }
         //if(result.isValid(System.err)){
-        comment("width = " + result.width);
-        printTime();
+        md.comment("width = " + result.width);
+        md.printTime();
         result.writeTo(System.out);
         //}
         //if(result.isValid(System.err)){
@@ -867,29 +1320,12 @@ public class MainDecomposer{
         }
         });
 
-    long seed = 42;
-	print_tw_below = -1;
-    if(args.length >= 2){
-      if("-s".equals(args[0])){
-        seed = Long.parseLong(args[1]);
-      } else if("-p".equals(args[0])){
-        print_tw_below = Integer.parseInt(args[1]);
-      }
-    }
-    if(args.length >= 4){
-      if("-s".equals(args[2])){
-        seed = Long.parseLong(args[3]);
-      } else if("-p".equals(args[2])){
-        print_tw_below = Integer.parseInt(args[3]);
-      }
-    }
-
     Graph graph = Graph.readGraph(System.in);
 
-    comment("read Graph");
+    md.comment("read Graph");
 
-    decompose(graph, seed);
+    md.decompose(graph);
 
-    printTime();
+    md.printTime();
   }
 }
@@ -4,9 +4,6 @@
 
 package tw.heuristic;
 
-import java.util.Set;
-import java.util.HashSet;
-
 import java.util.Arrays;
 
 public class PathDecomposer{
@@ -16,7 +13,7 @@ public class PathDecomposer{
   private int lowerBound, upperBound;
 
   private int width;
-  private Set< VertexSet > failureTable;
+  private VertexSetMap< Boolean > failureTable;
   private int[] separationSequence;
 
   private static final long STEPS_PER_MS = 1000;
@@ -50,7 +47,7 @@ public class PathDecomposer{
     count = 0;
     TIME_LIMIT = STEPS_PER_MS * timeMS;
 
-    failureTable = new HashSet< >();
+    failureTable = new VertexSetMap< >();
 
     boolean exist = false;
     width = upperBound;
@@ -106,10 +103,17 @@ public class PathDecomposer{
       return true;
     }
 
-    if(failureTable.contains(vs)){
+    if(failureTable.containsKey(vs)){
       return false;
     }
 
+    // vs is the same whenever a vertex is tried below, so the size of
+    // the neighbor set of vs + v is counted from the closed neighbor
+    // set of vs without creating it:
+    // N(vs + v) = (N(vs) - v) + (N(v) - N[vs])
+    VertexSet closed = graph.closedNeighborSet(vs);
+    int ns0 = closed.cardinality() - vs.cardinality();
+
     for(int v = 0; v < n; v++){
       if(abort){
         return false;
@@ -121,9 +125,9 @@ public class PathDecomposer{
       if(vs.get(v)){
         continue;
       }
-      int ns0 = graph.neighborSet(vs).cardinality();
+      int ns = ns0 - (closed.get(v) ? 1 : 0) +
+        graph.neighborSet(v).differenceCardinality(closed);
       vs.set(v);
-      int ns = graph.neighborSet(vs).cardinality();
       if(ns > w){
         vs.clear(v);
         continue;
@@ -137,7 +141,7 @@ public class PathDecomposer{
       vs.clear(v);
     }
 
-    failureTable.add((VertexSet)vs.clone());
+    failureTable.put((VertexSet)vs.clone(), Boolean.TRUE);
     return false;
   }
 
@@ -152,7 +156,7 @@ public class PathDecomposer{
         }
         vs.set(v);
         if(graph.neighborSet(vs).cardinality() <= width
-            && !failureTable.contains(vs)){
+            && !failureTable.containsKey(vs)){
           separationSequence[i] = v;
           break;
         }
@@ -0,0 +1,138 @@
+/*
+ * Copyright (c) 2017, Hiromu Ohtsuka
+*/
+
+package tw.heuristic;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * A per-thread pool of scratch {@code VertexSet}s for the temporary
+ * sets of the hot loops, to be used with the {@code xxxInto} methods
+ * of {@code VertexSet}.
+ * The sets are taken and given back in stack order:
+ * <pre>
+ *   ScratchSets scratch = ScratchSets.get();
+ *   int mark = scratch.mark();
+ *   try{
+ *     VertexSet t = scratch.take(n);
+ *     ...
+ *   }
+ *   finally{
+ *     scratch.release(mark);
+ *   }
+ * </pre>
+ * A taken set is empty and must not be referred to after it is
+ * released; a result that outlives the loop is to be cloned.
+ * The storage of the representations given up by the scratch sets
+ * is kept in the pool for their next change of representation,
+ * so that after warming up the loops allocate nothing for their
+ * temporary sets.
+ */
+public class ScratchSets{
+  private static final ThreadLocal< ScratchSets > pools =
+    new ThreadLocal< ScratchSets >(){
+      @Override
+        protected ScratchSets initialValue(){
+          return new ScratchSets();
+        }
+    };
+
+  private VertexSet[] sets = new VertexSet[16];
+  private int top;
+
+  /**
+   * the storage given up by the scratch sets, by representation
+   */
+  private final ArrayList< ArraySet > arraySets = new ArrayList< >();
+  private final ArrayList< XBitSet > xBitSets = new ArrayList< >();
+  private final ArrayList< FixedBitSet > fixedBitSets = new ArrayList< >();
+  private final ArrayList< ChunkedSet > chunkedSets = new ArrayList< >();
+
+  private ScratchSets(){
+  }
+
+  /**
+   * returns the pool of the current thread
+   */
+  public static ScratchSets get(){
+    return pools.get();
+  }
+
+  /**
+   * returns the current position in the stack of taken sets,
+   * to be given to {@code release}
+   */
+  public int mark(){
+    return top;
+  }
+
+  /**
+   * takes an empty scratch set over {@code n} vertices
+   */
+  public VertexSet take(int n){
+    if(top == sets.length){
+      sets = Arrays.copyOf(sets, 2 * top);
+    }
+    VertexSet set = sets[top];
+    if(set == null){
+      set = new VertexSet(n);
+      sets[top] = set;
+    }
+    set.reset(n);
+    ++top;
+    return set;
+  }
+
+  /**
+   * gives back all the sets taken since the given mark
+   */
+  public void release(int mark){
+    top = mark;
+  }
+
+  /**
+   * keeps the storage of a representation given up by a scratch set
+   */
+  void keep(Object storage){
+    if(storage instanceof ArraySet){
+      arraySets.add((ArraySet)storage);
+    }
+    else if(storage instanceof XBitSet){
+      xBitSets.add((XBitSet)storage);
+    }
+    else if(storage instanceof FixedBitSet){
+      fixedBitSets.add((FixedBitSet)storage);
+    }
+    else if(storage instanceof ChunkedSet){
+      chunkedSets.add((ChunkedSet)storage);
+    }
+  }
+
+  /**
+   * The {@code takeXxx} methods return kept storage of the
+   * representation, with its former contents, or {@code null}
+   * if there is none.
+   */
+  ArraySet takeArraySet(){
+    return takeLast(arraySets);
+  }
+
+  XBitSet takeXBitSet(){
+    return takeLast(xBitSets);
+  }
+
+  FixedBitSet takeFixedBitSet(){
+    return takeLast(fixedBitSets);
+  }
+
+  ChunkedSet takeChunkedSet(){
+    return takeLast(chunkedSets);
+  }
+
+  private static < T > T takeLast(ArrayList< T > list){
+    int size = list.size();
+    return size == 0 ? null : list.remove(size - 1);
+  }
+}
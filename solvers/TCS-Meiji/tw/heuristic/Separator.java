@@ -106,7 +106,7 @@ public class Separator implements Cloneable{
 
 		for (int v = neighborSet.nextSetBit(0); v >= 0;
 				v = neighborSet.nextSetBit(v + 1)) {
-			VertexSet missing = neighborSet.subtract(graph.neighborSet[v]);
+			VertexSet missing = neighborSet.subtract(graph.neighborSet(v));
 
 			for (int w = missing.nextSetBit(0); w >= 0 && w <= v;
 					w = missing.nextSetBit(w + 1)) {
@@ -136,7 +136,7 @@ public class Separator implements Cloneable{
 			for (int u = leaves.nextSetBit(0); u >= 0;
 					u = leaves.nextSetBit(u + 1)) {
 				VertexSet children = 
-					graph.neighborSet[u].intersectWith(union).subtract(reached);
+					graph.neighborSet(u).intersectWith(union).subtract(reached);
 				for (int w = children.nextSetBit(0); w >= 0;
 						w = children.nextSetBit(w + 1)) {
 					reached.set(w);
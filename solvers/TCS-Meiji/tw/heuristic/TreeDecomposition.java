@@ -489,7 +489,7 @@ public class TreeDecomposition {
 	private int[] missingEdge() {
 		for (int i = 0; i < g.n; i++) {
 			for (int j = 0; j < g.degree[i]; j++) {
-				int h = g.neighbor[i][j];
+				int h = g.neighborAt(i, j);
 				if (!appears(i, h)) {
 					return new int[]{i, h};
 				}
@@ -664,7 +664,7 @@ public class TreeDecomposition {
 
 		for (int v = b.nextSetBit(0); v >= 0; 
 				v = b.nextSetBit(v + 1)) {
-			VertexSet ns = g.neighborSet[v].intersectWith(b);
+			VertexSet ns = g.neighborSet(v).intersectWith(b);
 			for (VertexSet sep: seps) {
 				if (sep.get(v)) {
 					ns.or(sep);
@@ -747,7 +747,7 @@ public class TreeDecomposition {
 				v = b.nextSetBit(v + 1)) {
 			for (int w = b.nextSetBit(v + 1); w >= 0; 
 					w = b.nextSetBit(w + 1)) {
-				if (g.neighborSet[v].get(w)) {
+				if (g.neighborSet(v).get(w)) {
 					continue;
 				}
 				boolean covered = false;
@@ -4,174 +4,660 @@
 
 package tw.heuristic;
 
+import java.util.Arrays;
+
 public class VertexSet
 implements Comparable< VertexSet >, Cloneable{
   private int TH1 = 256;
   public static enum Type{
-    ARRAYSET, XBITSET
+    ARRAYSET, XBITSET, FIXEDBITSET, CHUNKEDSET
   };
-  private XBitSet xbitset;
-  private ArraySet arrayset;
+
+  /**
+   * the representation of the sets larger than the threshold,
+   * {@code XBITSET}, {@code FIXEDBITSET} or {@code CHUNKEDSET}
+   */
+  private static Type bitSetType = Type.XBITSET;
+
+  /**
+   * the representation of this set, of the class given by
+   * {@code type}; a single field rather than one per class keeps
+   * the sets small
+   */
+  private Object rep;
   private Type type = Type.ARRAYSET;
 
+  /**
+   * the number of vertices of the graph, from which the
+   * {@code FixedBitSet} representation is sized; 0 if unknown
+   */
+  private int n;
+
+  /**
+   * whether the storage of a representation given up is kept for
+   * reuse, which is the case for the sets of {@code ScratchSets};
+   * the kept storage is held by the pool of the current thread
+   */
+  private boolean retainStorage;
+
+  /**
+   * whether this set is frozen, that is, made immutable, and
+   * its fingerprint, computed when it is frozen
+   */
+  private boolean frozen;
+  private long fingerprint;
+
+  /**
+   * whether the modifying methods check that the set is not frozen;
+   * off except for debugging, so that they cost nothing
+   */
+  private static final boolean CHECK_FROZEN = false;
+
+  /**
+   * Selects the representation of the large vertex sets
+   * created from now on.
+   * @param type {@code Type.XBITSET} for {@code XBitSet}, which is
+   * the default, {@code Type.FIXEDBITSET} for {@code FixedBitSet}
+   * or {@code Type.CHUNKEDSET} for {@code ChunkedSet}
+   */
+  public static void setBitSetType(Type type){
+    if(type == Type.ARRAYSET){
+      throw new IllegalArgumentException("!!Not a bit set type: " + type);
+    }
+    bitSetType = type;
+  }
+
   public VertexSet(){
-    arrayset = new ArraySet();
+    rep = new ArraySet();
   }
 
   public VertexSet(int n){
     this();
     TH1 = n / 100;
+    this.n = n;
   }
 
   public VertexSet(int n, int[] a){
     TH1 = n / 100;
-    if(a.length <= TH1){
-      arrayset = new ArraySet(a);
-    }
-    else{
-      type = Type.XBITSET;
-      xbitset = new XBitSet(a);
-    }
+    this.n = n;
+    initialize(a);
   }
 
   public VertexSet(int[] a){
+    initialize(a);
+  }
+
+  private void initialize(int[] a){
     if(a.length <= TH1){
-      arrayset = new ArraySet(a);
+      rep = new ArraySet(a);
+    }
+    else if(bitSetType == Type.FIXEDBITSET){
+      type = Type.FIXEDBITSET;
+      rep = new FixedBitSet(n, a);
+    }
+    else if(bitSetType == Type.CHUNKEDSET){
+      type = Type.CHUNKEDSET;
+      rep = new ChunkedSet(a);
     }
     else{
       type = Type.XBITSET;
-      xbitset = new XBitSet(a);
+      rep = new XBitSet(a);
     }
   }
 
   private VertexSet(ArraySet as){
-    arrayset = as;
+    rep = as;
     ensureType();
   }
 
   private VertexSet(XBitSet xbs){
-    xbitset = xbs;
+    rep = xbs;
     type = Type.XBITSET;
     ensureType();
   }
 
+  private VertexSet(int n, FixedBitSet fbs){
+    if(n > 0){
+      TH1 = n / 100;
+    }
+    this.n = n;
+    rep = fbs;
+    type = Type.FIXEDBITSET;
+    ensureType();
+  }
+
+  private VertexSet(int n, ChunkedSet cs){
+    if(n > 0){
+      TH1 = n / 100;
+    }
+    this.n = n;
+    rep = cs;
+    type = Type.CHUNKEDSET;
+    ensureType();
+  }
+
+  private ArraySet arrayset(){
+    return (ArraySet)rep;
+  }
+
+  private XBitSet xbitset(){
+    return (XBitSet)rep;
+  }
+
+  private FixedBitSet fixedbitset(){
+    return (FixedBitSet)rep;
+  }
+
+  private ChunkedSet chunkedset(){
+    return (ChunkedSet)rep;
+  }
+
+  /**
+   * returns the pool keeping the storage given up by this set,
+   * or {@code null} if it is not kept
+   */
+  private ScratchSets spares(){
+    return retainStorage ? ScratchSets.get() : null;
+  }
+
+  /**
+   * gives up the current representation, keeping its storage
+   * in the given pool if any
+   */
+  private void retire(ScratchSets spares){
+    if(spares != null){
+      spares.keep(rep);
+    }
+    rep = null;
+  }
+
   private void toArraySet(){
     if(type == Type.ARRAYSET){
       return;
     }
-    arrayset = arraySetOf(xbitset);
+    ScratchSets spares = spares();
+    ArraySet as = spares != null ? spares.takeArraySet() : null;
+    if(as != null){
+      as.clear();
+      for(int i = nextSetBit(0); i >= 0; i = nextSetBit(i + 1)){
+        as.set(i);
+      }
+    }
+    else{
+      as = new ArraySet(toArray());
+    }
+    retire(spares);
+    rep = as;
     type = Type.ARRAYSET;
-    xbitset = null;
   }
 
-  private void toXBitSet(){
-    if(type == Type.XBITSET){
+  private void toBitSet(){
+    toBitSet(bitSetType);
+  }
+
+  private void toBitSet(Type bitSetType){
+    if(type == bitSetType){
       return;
     }
-    xbitset = xBitSetOf(arrayset);
-    type = Type.XBITSET;
-    arrayset = null;
+    ScratchSets spares = spares();
+    if(bitSetType == Type.XBITSET){
+      XBitSet xbs = spares != null ? spares.takeXBitSet() : null;
+      if(xbs != null){
+        xbs.clear();
+        for(int i = nextSetBit(0); i >= 0; i = nextSetBit(i + 1)){
+          xbs.set(i);
+        }
+      }
+      else{
+        xbs = new XBitSet(toArray());
+      }
+      retire(spares);
+      rep = xbs;
+    }
+    else if(bitSetType == Type.CHUNKEDSET){
+      ChunkedSet cs = chunkedSetView();
+      retire(spares);
+      rep = cs;
+    }
+    else{
+      FixedBitSet fbs = spares != null ? spares.takeFixedBitSet() : null;
+      if(fbs != null){
+        fbs.clear();
+        for(int i = nextSetBit(0); i >= 0; i = nextSetBit(i + 1)){
+          fbs.set(i);
+        }
+      }
+      else{
+        fbs = fixedBitSetView();
+      }
+      retire(spares);
+      rep = fbs;
+    }
+    type = bitSetType;
   }
 
-  private static XBitSet xBitSetOf(ArraySet as){
-    return new XBitSet(as.toArray());
+  /**
+   * Makes this set a copy of the given set, reusing the storage of
+   * this set if it is of the same representation.
+   */
+  private void assign(VertexSet set){
+    checkMutable();
+    if(set == this){
+      return;
+    }
+    TH1 = set.TH1;
+    n = set.n;
+    if(set.type == Type.ARRAYSET){
+      clear();
+      arrayset().assign(set.arrayset());
+    }
+    else if(set.type == Type.XBITSET){
+      if(type != Type.XBITSET){
+        ScratchSets spares = spares();
+        XBitSet xbs = spares != null ? spares.takeXBitSet() : null;
+        if(xbs == null){
+          xbs = new XBitSet(n);
+        }
+        retire(spares);
+        rep = xbs;
+        type = Type.XBITSET;
+      }
+      XBitSet.copyInto(xbitset(), set.xbitset());
+    }
+    else if(set.type == Type.CHUNKEDSET){
+      if(type != Type.CHUNKEDSET){
+        ScratchSets spares = spares();
+        ChunkedSet cs = spares != null ? spares.takeChunkedSet() : null;
+        if(cs == null){
+          cs = new ChunkedSet();
+        }
+        retire(spares);
+        rep = cs;
+        type = Type.CHUNKEDSET;
+      }
+      chunkedset().assign(set.chunkedset());
+    }
+    else{
+      if(type != Type.FIXEDBITSET){
+        ScratchSets spares = spares();
+        FixedBitSet fbs = spares != null ? spares.takeFixedBitSet() : null;
+        if(fbs == null){
+          fbs = new FixedBitSet(n);
+        }
+        retire(spares);
+        rep = fbs;
+        type = Type.FIXEDBITSET;
+      }
+      fixedbitset().assign(set.fixedbitset());
+    }
+  }
+
+  /**
+   * Empties this set and prepares it as a scratch set over
+   * {@code n} vertices; used by {@code ScratchSets}.
+   */
+  void reset(int n){
+    checkMutable();
+    retainStorage = true;
+    TH1 = n / 100;
+    this.n = n;
+    clear();
+  }
+
+  /**
+   * Makes {@code dest} a copy of {@code set}, reusing the storage
+   * of {@code dest}.
+   * The {@code xxxInto} methods are the allocation-free counterparts
+   * of {@code clone}, {@code unionWith}, {@code intersectWith} and
+   * {@code subtract}, meant for the temporary sets of hot loops,
+   * typically taken from {@code ScratchSets}.  The destination may
+   * be the same object as any of the operands.
+   * @return {@code dest}
+   */
+  public static VertexSet copyInto(VertexSet dest, VertexSet set){
+    dest.assign(set);
+    return dest;
+  }
+
+  public static VertexSet unionInto(VertexSet dest, VertexSet a, VertexSet b){
+    if(dest == b){
+      dest.or(a);
+    }
+    else{
+      dest.assign(a);
+      dest.or(b);
+    }
+    return dest;
+  }
+
+  public static VertexSet intersectInto(VertexSet dest, VertexSet a, VertexSet b){
+    if(dest == b){
+      dest.and(a);
+    }
+    else{
+      dest.assign(a);
+      dest.and(b);
+    }
+    return dest;
+  }
+
+  public static VertexSet subtractInto(VertexSet dest, VertexSet a, VertexSet b){
+    if(a == b){
+      dest.clear();
+    }
+    else if(dest == b){
+      // (a ^ b) & a = a & ~b
+      dest.xor(a);
+      dest.and(a);
+    }
+    else{
+      dest.assign(a);
+      dest.andNot(b);
+    }
+    return dest;
+  }
+
+  /**
+   * returns this set as a {@code FixedBitSet}, which is the
+   * representation itself if so represented and a new one otherwise
+   */
+  private FixedBitSet fixedBitSetView(){
+    if(type == Type.FIXEDBITSET){
+      return fixedbitset();
+    }
+    return new FixedBitSet(n, toArray());
+  }
+
+  /**
+   * returns this set as a {@code ChunkedSet}, which is the
+   * representation itself if so represented and a new one otherwise
+   */
+  private ChunkedSet chunkedSetView(){
+    if(type == Type.CHUNKEDSET){
+      return chunkedset();
+    }
+    return new ChunkedSet(toArray());
+  }
+
+  /**
+   * Copies this set into the first {@code words} words of the
+   * array, which are to cover its members; for the engines working
+   * on words, such as {@code ComponentFinder}.
+   * A bitset is copied a word at a time and an array set member
+   * by member.
+   */
+  void copyWordsInto(long[] target, int words){
+    if(type == Type.ARRAYSET){
+      Arrays.fill(target, 0, words, 0);
+      ArraySet as = arrayset();
+      for(int i = 0; i < as.size; i++){
+        target[as.a[i] >>> 6] |= 1L << as.a[i];
+      }
+      return;
+    }
+    long[] w = bitSetWords();
+    int m = Math.min(w.length, words);
+    System.arraycopy(w, 0, target, 0, m);
+    Arrays.fill(target, m, words, 0);
   }
 
-  private static ArraySet arraySetOf(XBitSet xbs){
-    return new ArraySet(xbs.toArray());
+  /**
+   * Removes the members of this set from the first {@code words}
+   * words of the array, in the same way as {@code copyWordsInto}.
+   */
+  void clearWordsIn(long[] target, int words){
+    if(type == Type.ARRAYSET){
+      ArraySet as = arrayset();
+      for(int i = 0; i < as.size; i++){
+        target[as.a[i] >>> 6] &= ~(1L << as.a[i]);
+      }
+      return;
+    }
+    long[] w = bitSetWords();
+    int m = Math.min(w.length, words);
+    for(int i = 0; i < m; i++){
+      target[i] &= ~w[i];
+    }
+  }
+
+  /**
+   * returns the words of this set, which is a bitset: those of a
+   * {@code FixedBitSet} are the representation itself, not to be
+   * modified, and may extend beyond the last member
+   */
+  private long[] bitSetWords(){
+    if(type == Type.FIXEDBITSET){
+      return fixedbitset().words();
+    }
+    else if(type == Type.XBITSET){
+      return xbitset().toLongArray();
+    }
+    else{
+      return chunkedset().toLongArray();
+    }
+  }
+
+  private static XBitSet xBitSetOf(ArraySet as){
+    return new XBitSet(as.toArray());
   }
 
   private void ensureType(){
-    int size = (type == Type.ARRAYSET) ?
-      arrayset.cardinality() : xbitset.cardinality();
+    int size = cardinality();
     if(size <= TH1){
       toArraySet();
     }
     else{
-      toXBitSet();
+      toBitSet();
     }
   }
 
   public void and(VertexSet set){
+    checkMutable();
     if(type == Type.ARRAYSET && set.type == Type.ARRAYSET){
-      arrayset.and(set.arrayset);
+      arrayset().and(set.arrayset());
+      ensureType();
+      return;
+    }
+    if(type == Type.CHUNKEDSET || set.type == Type.CHUNKEDSET){
+      toBitSet(Type.CHUNKEDSET);
+      chunkedset().and(set.chunkedSetView());
+      ensureType();
+      return;
+    }
+    if(type == Type.FIXEDBITSET || set.type == Type.FIXEDBITSET){
+      toBitSet(Type.FIXEDBITSET);
+      fixedbitset().and(set.fixedBitSetView());
       ensureType();
       return;
     }
     if(type == Type.XBITSET && set.type == Type.XBITSET){
-      xbitset.and(set.xbitset);
+      xbitset().and(set.xbitset());
       ensureType();
       return;
     }
+    // the argument is left untouched so that shared sets can be
+    // read concurrently
     if(type == Type.ARRAYSET){
-      toXBitSet();
+      toBitSet(Type.XBITSET);
+      xbitset().and(set.xbitset());
     }
     else{
-      set.toXBitSet();
+      xbitset().and(xBitSetOf(set.arrayset()));
     }
-    xbitset.and(set.xbitset);
-    set.ensureType();
     ensureType();
   }
 
   public void andNot(VertexSet set){
+    checkMutable();
     if(type == Type.ARRAYSET && set.type == Type.ARRAYSET){
-      arrayset.andNot(set.arrayset);
+      arrayset().andNot(set.arrayset());
+      ensureType();
+      return;
+    }
+    if(type == Type.CHUNKEDSET || set.type == Type.CHUNKEDSET){
+      toBitSet(Type.CHUNKEDSET);
+      chunkedset().andNot(set.chunkedSetView());
+      ensureType();
+      return;
+    }
+    if(type == Type.FIXEDBITSET || set.type == Type.FIXEDBITSET){
+      toBitSet(Type.FIXEDBITSET);
+      fixedbitset().andNot(set.fixedBitSetView());
       ensureType();
       return;
     }
     if(type == Type.XBITSET && set.type == Type.XBITSET){
-      xbitset.andNot(set.xbitset);
+      xbitset().andNot(set.xbitset());
       ensureType();
       return;
     }
+    // the argument is left untouched so that shared sets can be
+    // read concurrently
     if(type == Type.ARRAYSET){
-      toXBitSet();
+      toBitSet(Type.XBITSET);
+      xbitset().andNot(set.xbitset());
     }
     else{
-      set.toXBitSet();
+      xbitset().andNot(xBitSetOf(set.arrayset()));
     }
-    xbitset.andNot(set.xbitset);
-    set.ensureType();
     ensureType();
   }
 
   public int cardinality(){
     if(type == Type.ARRAYSET){
-      return arrayset.cardinality();
+      return arrayset().cardinality();
+    }
+    else if(type == Type.XBITSET){
+      return xbitset().cardinality();
+    }
+    else if(type == Type.FIXEDBITSET){
+      return fixedbitset().cardinality();
     }
     else{
-      return xbitset.cardinality();
+      return chunkedset().cardinality();
     }
   }
 
+  /**
+   * Returns the cardinality of the intersection with the given set
+   * without creating the intersection.
+   * The {@code xxxCardinality} methods serve for the pruning tests
+   * that reject most of the candidate sets; where the two sets are
+   * of different representations the array set is enumerated.
+   */
+  public int intersectionCardinality(VertexSet set){
+    if(type == Type.ARRAYSET && set.type == Type.ARRAYSET){
+      return arrayset().intersectionCardinality(set.arrayset());
+    }
+    if(type == Type.XBITSET && set.type == Type.XBITSET){
+      return xbitset().intersectionCardinality(set.xbitset());
+    }
+    if(type == Type.FIXEDBITSET && set.type == Type.FIXEDBITSET){
+      return fixedbitset().intersectionCardinality(set.fixedbitset());
+    }
+    if(type == Type.CHUNKEDSET && set.type == Type.CHUNKEDSET){
+      return chunkedset().intersectionCardinality(set.chunkedset());
+    }
+    if(type == Type.ARRAYSET){
+      return countMembersOf(set);
+    }
+    else{
+      return set.countMembersOf(this);
+    }
+  }
+
+  private int countMembersOf(VertexSet set){
+    int count = 0;
+    for(int i = nextSetBit(0); i >= 0; i = nextSetBit(i + 1)){
+      if(set.get(i)){
+        ++count;
+      }
+    }
+    return count;
+  }
+
+  public int differenceCardinality(VertexSet set){
+    if(type == Type.FIXEDBITSET && set.type == Type.FIXEDBITSET){
+      return fixedbitset().differenceCardinality(set.fixedbitset());
+    }
+    return cardinality() - intersectionCardinality(set);
+  }
+
+  public int unionCardinality(VertexSet set){
+    if(type == Type.FIXEDBITSET && set.type == Type.FIXEDBITSET){
+      return fixedbitset().unionCardinality(set.fixedbitset());
+    }
+    return cardinality() + set.cardinality() - intersectionCardinality(set);
+  }
+
+  /**
+   * Returns {@code true} if the union with the given set has more
+   * than {@code k} members, stopping the count as soon as it does.
+   */
+  public boolean unionCardinalityExceeds(VertexSet set, int k){
+    if(type == Type.ARRAYSET && set.type == Type.ARRAYSET){
+      return arrayset().unionCardinalityExceeds(set.arrayset(), k);
+    }
+    if(type == Type.XBITSET && set.type == Type.XBITSET){
+      return xbitset().unionCardinalityExceeds(set.xbitset(), k);
+    }
+    if(type == Type.FIXEDBITSET && set.type == Type.FIXEDBITSET){
+      return fixedbitset().unionCardinalityExceeds(set.fixedbitset(), k);
+    }
+    if(type == Type.CHUNKEDSET && set.type == Type.CHUNKEDSET){
+      return chunkedset().unionCardinalityExceeds(set.chunkedset(), k);
+    }
+    return unionCardinality(set) > k;
+  }
+
   public void clear(){
+    checkMutable();
     if(type == Type.ARRAYSET){
-      arrayset.clear();
+      arrayset().clear();
     }
     else{
+      ScratchSets spares = spares();
+      ArraySet as = spares != null ? spares.takeArraySet() : null;
+      if(as == null){
+        as = new ArraySet();
+      }
+      as.clear();
+      retire(spares);
+      rep = as;
       type = Type.ARRAYSET;
-      xbitset = null;
-      arrayset = new ArraySet();
     }
   }
 
   public void clear(int i){
+    checkMutable();
     if(type == Type.ARRAYSET){
-      arrayset.clear(i);
+      arrayset().clear(i);
+    }
+    else if(type == Type.XBITSET){
+      xbitset().clear(i);
+    }
+    else if(type == Type.FIXEDBITSET){
+      fixedbitset().clear(i);
     }
     else{
-      xbitset.clear(i);
+      chunkedset().clear(i);
     }
     ensureType();
   }
 
   public void clear(int fromIndex, int toIndex){
+    checkMutable();
     if(type == Type.ARRAYSET){
-      arrayset.clear(fromIndex, toIndex);
+      arrayset().clear(fromIndex, toIndex);
+    }
+    else if(type == Type.XBITSET){
+      xbitset().clear(fromIndex, toIndex);
+    }
+    else if(type == Type.FIXEDBITSET){
+      fixedbitset().clear(fromIndex, toIndex);
     }
     else{
-      xbitset.clear(fromIndex, toIndex);
+      chunkedset().clear(fromIndex, toIndex);
     }
     ensureType();
   }
@@ -180,11 +666,20 @@ implements Comparable< VertexSet >, Cloneable{
     public VertexSet clone(){
       try{
         VertexSet result = (VertexSet)super.clone();
+        result.frozen = false;
+        result.fingerprint = 0;
+        result.retainStorage = false;
         if(type == Type.ARRAYSET){
-          result.arrayset = (ArraySet)arrayset.clone();
+          result.rep = (ArraySet)arrayset().clone();
+        }
+        else if(type == Type.XBITSET){
+          result.rep = (XBitSet)xbitset().clone();
+        }
+        else if(type == Type.FIXEDBITSET){
+          result.rep = fixedbitset().clone();
         }
         else{
-          result.xbitset = (XBitSet)xbitset.clone();
+          result.rep = chunkedset().clone();
         }
         return result;
       }
@@ -200,45 +695,71 @@ implements Comparable< VertexSet >, Cloneable{
       }
       VertexSet vs = (VertexSet)obj;
       if(type == Type.ARRAYSET && vs.type == Type.ARRAYSET){
-        return arrayset.equals(vs.arrayset);
+        return arrayset().equals(vs.arrayset());
+      }
+      if(type == Type.CHUNKEDSET || vs.type == Type.CHUNKEDSET){
+        return chunkedSetView().equals(vs.chunkedSetView());
+      }
+      if(type == Type.FIXEDBITSET || vs.type == Type.FIXEDBITSET){
+        return fixedBitSetView().equals(vs.fixedBitSetView());
       }
       if(type == Type.XBITSET && vs.type == Type.XBITSET){
-        return xbitset.equals(vs.xbitset);
+        return xbitset().equals(vs.xbitset());
       }
       if(type == Type.ARRAYSET){
-        return xBitSetOf(arrayset).equals(vs.xbitset);
+        return xBitSetOf(arrayset()).equals(vs.xbitset());
       }
       else{
-        return xbitset.equals(xBitSetOf(vs.arrayset));
+        return xbitset().equals(xBitSetOf(vs.arrayset()));
       }
     }
 
   public void flip(int i){
+    checkMutable();
     if(type == Type.ARRAYSET){
-      arrayset.flip(i);
+      arrayset().flip(i);
+    }
+    else if(type == Type.XBITSET){
+      xbitset().flip(i);
+    }
+    else if(type == Type.FIXEDBITSET){
+      fixedbitset().flip(i);
     }
     else{
-      xbitset.flip(i);
+      chunkedset().flip(i);
     }
     ensureType();
   }
 
   public void flip(int fromIndex, int toIndex){
+    checkMutable();
     if(type == Type.ARRAYSET){
-      arrayset.flip(fromIndex, toIndex);
+      arrayset().flip(fromIndex, toIndex);
+    }
+    else if(type == Type.XBITSET){
+      xbitset().flip(fromIndex, toIndex);
+    }
+    else if(type == Type.FIXEDBITSET){
+      fixedbitset().flip(fromIndex, toIndex);
     }
     else{
-      xbitset.flip(fromIndex, toIndex);
+      chunkedset().flip(fromIndex, toIndex);
     }
     ensureType();
   }
 
   public boolean get(int i){
     if(type == Type.ARRAYSET){
-      return arrayset.get(i);
+      return arrayset().get(i);
+    }
+    else if(type == Type.XBITSET){
+      return xbitset().get(i);
+    }
+    else if(type == Type.FIXEDBITSET){
+      return fixedbitset().get(i);
     }
     else{
-      return xbitset.get(i);
+      return chunkedset().get(i);
     }
   }
 
@@ -248,181 +769,363 @@ implements Comparable< VertexSet >, Cloneable{
 
   @Override
     public int hashCode(){
-      int hash = 1;
       if(type == Type.ARRAYSET){
-        for(int i = 0; i < arrayset.size; i++){
-          hash = 31 * hash + arrayset.a[i];
+        // the same polynomial, maintained by the array set
+        return arrayset().hash;
+      }
+      int hash = 1;
+      for(int i = nextSetBit(0); i >= 0; i = nextSetBit(i + 1)){
+        hash = 31 * hash + i;
+      }
+      return hash;
+    }
+
+  /**
+   * Returns a 64-bit fingerprint of this set, mixing the non-zero
+   * 64-bit words of its members with their indices, so that it does
+   * not depend on the representation.
+   * Equal sets have equal fingerprints; {@code VertexSetMap} keeps
+   * the fingerprints of its keys and compares them before
+   * comparing the sets.
+   * The fingerprint of a frozen set is computed once, when it is
+   * frozen; that of any other set is computed on each call.
+   */
+  public long fingerprint(){
+    if(frozen){
+      return fingerprint;
+    }
+    return computeFingerprint();
+  }
+
+  private long computeFingerprint(){
+    long h = 0;
+    if(type == Type.ARRAYSET){
+      // the members are sorted
+      int[] a = arrayset().a;
+      int index = -1;
+      long word = 0;
+      for(int i = 0; i < arrayset().size; i++){
+        int wi = a[i] >>> 6;
+        if(wi != index){
+          if(index >= 0){
+            h = mixWord(h, index, word);
+          }
+          index = wi;
+          word = 0;
         }
+        word |= 1L << a[i];
       }
-      else{
-        for(int i = xbitset.nextSetBit(0);
-          i >= 0; i = xbitset.nextSetBit(i + 1)){
-          hash = 31 * hash + i;
+      if(index >= 0){
+        h = mixWord(h, index, word);
+      }
+    }
+    else if(type == Type.CHUNKEDSET){
+      int index = -1;
+      long word = 0;
+      for(int i = chunkedset().nextSetBit(0); i >= 0; i = chunkedset().nextSetBit(i + 1)){
+        int wi = i >>> 6;
+        if(wi != index){
+          if(index >= 0){
+            h = mixWord(h, index, word);
+          }
+          index = wi;
+          word = 0;
         }
+        word |= 1L << i;
       }
-      return hash;
+      if(index >= 0){
+        h = mixWord(h, index, word);
+      }
+    }
+    else{
+      long[] words = type == Type.XBITSET ?
+        xbitset().toLongArray() : fixedbitset().words();
+      for(int i = 0; i < words.length; i++){
+        if(words[i] != 0){
+          h = mixWord(h, i, words[i]);
+        }
+      }
+    }
+    h ^= h >>> 33;
+    h *= 0xFF51AFD7ED558CCDL;
+    h ^= h >>> 33;
+    h *= 0xC4CEB9FE1A85EC53L;
+    h ^= h >>> 33;
+    return h;
+  }
+
+  private static long mixWord(long h, int index, long word){
+    return Long.rotateLeft(h ^ (word * 0x9E3779B97F4A7C15L + index), 31) *
+      0xBF58476D1CE4E5B9L;
+  }
+
+  /**
+   * Freezes this set, computing its fingerprint once for all.
+   * A frozen set may not be modified, as its fingerprint would go
+   * stale; with {@code CHECK_FROZEN} on, the modifying methods throw
+   * an exception.  The sets created from it, by {@code clone} for
+   * example, are not frozen.
+   * {@code VertexSetMap} freezes the keys it interns.
+   * @return this set
+   */
+  public VertexSet freeze(){
+    if(!frozen){
+      fingerprint = computeFingerprint();
+      frozen = true;
+    }
+    return this;
+  }
+
+  public boolean isFrozen(){
+    return frozen;
+  }
+
+  private void checkMutable(){
+    if(CHECK_FROZEN && frozen){
+      throw new RuntimeException("!!Frozen set modified: " + this);
     }
+  }
 
   public boolean hasSmaller(VertexSet set){
     if(type == Type.ARRAYSET && set.type == Type.ARRAYSET){
-      return arrayset.hasSmaller(set.arrayset);
+      return arrayset().hasSmaller(set.arrayset());
+    }
+    if(type == Type.CHUNKEDSET || set.type == Type.CHUNKEDSET){
+      return chunkedSetView().hasSmaller(set.chunkedSetView());
+    }
+    if(type == Type.FIXEDBITSET || set.type == Type.FIXEDBITSET){
+      return fixedBitSetView().hasSmaller(set.fixedBitSetView());
     }
     if(type == Type.XBITSET && set.type == Type.XBITSET){
-      return xbitset.hasSmaller(set.xbitset);
+      return xbitset().hasSmaller(set.xbitset());
     }
     if(type == Type.ARRAYSET){
-      return xBitSetOf(arrayset).hasSmaller(set.xbitset);
+      return xBitSetOf(arrayset()).hasSmaller(set.xbitset());
     }
     else{
-      return xbitset.hasSmaller(xBitSetOf(set.arrayset));
+      return xbitset().hasSmaller(xBitSetOf(set.arrayset()));
     }
   }
 
   public boolean hasSmallerVertexThan(VertexSet set){
     if(type == Type.ARRAYSET && set.type == Type.ARRAYSET){
-      return arrayset.hasSmallerVertexThan(set.arrayset);
+      return arrayset().hasSmallerVertexThan(set.arrayset());
+    }
+    if(type == Type.CHUNKEDSET || set.type == Type.CHUNKEDSET){
+      return chunkedSetView().hasSmallerVertexThan(set.chunkedSetView());
+    }
+    if(type == Type.FIXEDBITSET || set.type == Type.FIXEDBITSET){
+      return fixedBitSetView().hasSmallerVertexThan(set.fixedBitSetView());
     }
     if(type == Type.XBITSET && set.type == Type.XBITSET){
-      return xbitset.hasSmallerVertexThan(set.xbitset);
+      return xbitset().hasSmallerVertexThan(set.xbitset());
     }
     if(type == Type.ARRAYSET){
-      return xBitSetOf(arrayset).hasSmallerVertexThan(set.xbitset);
+      return xBitSetOf(arrayset()).hasSmallerVertexThan(set.xbitset());
     }
     else{
-      return xbitset.hasSmallerVertexThan(xBitSetOf(set.arrayset));
+      return xbitset().hasSmallerVertexThan(xBitSetOf(set.arrayset()));
     }
   }
 
   public boolean intersects(VertexSet set){
     if(type == Type.ARRAYSET && set.type == Type.ARRAYSET){
-      return arrayset.intersects(set.arrayset);
+      return arrayset().intersects(set.arrayset());
+    }
+    if(type == Type.CHUNKEDSET || set.type == Type.CHUNKEDSET){
+      return chunkedSetView().intersects(set.chunkedSetView());
+    }
+    if(type == Type.FIXEDBITSET || set.type == Type.FIXEDBITSET){
+      return fixedBitSetView().intersects(set.fixedBitSetView());
     }
     if(type == Type.XBITSET && set.type == Type.XBITSET){
-      return xbitset.intersects(set.xbitset);
+      return xbitset().intersects(set.xbitset());
     }
     if(type == Type.ARRAYSET){
-      return xBitSetOf(arrayset).intersects(set.xbitset);
+      return xBitSetOf(arrayset()).intersects(set.xbitset());
     }
     else{
-      return xbitset.intersects(xBitSetOf(set.arrayset));
+      return xbitset().intersects(xBitSetOf(set.arrayset()));
     }
   }
 
   public VertexSet intersectWith(VertexSet set){
     if(type == Type.ARRAYSET && set.type == Type.ARRAYSET){
-      return new VertexSet(arrayset.intersectWith(set.arrayset));
+      return new VertexSet(arrayset().intersectWith(set.arrayset()));
+    }
+    if(type == Type.CHUNKEDSET || set.type == Type.CHUNKEDSET){
+      return new VertexSet(n, chunkedSetView().intersectWith(set.chunkedSetView()));
+    }
+    if(type == Type.FIXEDBITSET || set.type == Type.FIXEDBITSET){
+      return new VertexSet(n, fixedBitSetView().intersectWith(set.fixedBitSetView()));
     }
     if(type == Type.XBITSET && set.type == Type.XBITSET){
-      return new VertexSet(xbitset.intersectWith(set.xbitset));
+      return new VertexSet(xbitset().intersectWith(set.xbitset()));
     }
     if(type == Type.ARRAYSET){
-      return new VertexSet(xBitSetOf(arrayset).intersectWith(set.xbitset));
+      return new VertexSet(xBitSetOf(arrayset()).intersectWith(set.xbitset()));
     }
     else{
-      return new VertexSet(xbitset.intersectWith(xBitSetOf(set.arrayset)));
+      return new VertexSet(xbitset().intersectWith(xBitSetOf(set.arrayset())));
     }
   }
 
   public boolean isSubset(VertexSet set){
     if(type == Type.ARRAYSET && set.type == Type.ARRAYSET){
-      return arrayset.isSubset(set.arrayset);
+      return arrayset().isSubset(set.arrayset());
+    }
+    if(type == Type.CHUNKEDSET || set.type == Type.CHUNKEDSET){
+      return chunkedSetView().isSubset(set.chunkedSetView());
+    }
+    if(type == Type.FIXEDBITSET || set.type == Type.FIXEDBITSET){
+      return fixedBitSetView().isSubset(set.fixedBitSetView());
     }
     if(type == Type.XBITSET && set.type == Type.XBITSET){
-      return xbitset.isSubset(set.xbitset);
+      return xbitset().isSubset(set.xbitset());
     }
     if(type == Type.ARRAYSET){
-      return xBitSetOf(arrayset).isSubset(set.xbitset);
+      return xBitSetOf(arrayset()).isSubset(set.xbitset());
     }
     else{
-      return xbitset.isSubset(xBitSetOf(set.arrayset));
+      return xbitset().isSubset(xBitSetOf(set.arrayset()));
     }
   }
 
   public boolean isDisjoint(VertexSet set){
     if(type == Type.ARRAYSET && set.type == Type.ARRAYSET){
-      return arrayset.isDisjoint(set.arrayset);
+      return arrayset().isDisjoint(set.arrayset());
+    }
+    if(type == Type.CHUNKEDSET || set.type == Type.CHUNKEDSET){
+      return chunkedSetView().isDisjoint(set.chunkedSetView());
+    }
+    if(type == Type.FIXEDBITSET || set.type == Type.FIXEDBITSET){
+      return fixedBitSetView().isDisjoint(set.fixedBitSetView());
     }
     if(type == Type.XBITSET && set.type == Type.XBITSET){
-      return xbitset.isDisjoint(set.xbitset);
+      return xbitset().isDisjoint(set.xbitset());
     }
     if(type == Type.ARRAYSET){
-      return xBitSetOf(arrayset).isDisjoint(set.xbitset);
+      return xBitSetOf(arrayset()).isDisjoint(set.xbitset());
     }
     else{
-      return xbitset.isDisjoint(xBitSetOf(set.arrayset));
+      return xbitset().isDisjoint(xBitSetOf(set.arrayset()));
     }
   }
 
   public boolean isEmpty(){
     if(type == Type.ARRAYSET){
-      return arrayset.isEmpty();
+      return arrayset().isEmpty();
+    }
+    else if(type == Type.XBITSET){
+      return xbitset().isEmpty();
+    }
+    else if(type == Type.FIXEDBITSET){
+      return fixedbitset().isEmpty();
     }
     else{
-      return xbitset.isEmpty();
+      return chunkedset().isEmpty();
     }
   }
 
   public boolean isSuperset(VertexSet set){
     if(type == Type.ARRAYSET && set.type == Type.ARRAYSET){
-      return arrayset.isSuperset(set.arrayset);
+      return arrayset().isSuperset(set.arrayset());
+    }
+    if(type == Type.CHUNKEDSET || set.type == Type.CHUNKEDSET){
+      return chunkedSetView().isSuperset(set.chunkedSetView());
+    }
+    if(type == Type.FIXEDBITSET || set.type == Type.FIXEDBITSET){
+      return fixedBitSetView().isSuperset(set.fixedBitSetView());
     }
     if(type == Type.XBITSET && set.type == Type.XBITSET){
-      return xbitset.isSuperset(set.xbitset);
+      return xbitset().isSuperset(set.xbitset());
     }
     if(type == Type.ARRAYSET){
-      return xBitSetOf(arrayset).isSuperset(set.xbitset);
+      return xBitSetOf(arrayset()).isSuperset(set.xbitset());
     }
     else{
-      return xbitset.isSuperset(xBitSetOf(set.arrayset));
+      return xbitset().isSuperset(xBitSetOf(set.arrayset()));
     }
   }
 
   public int length(){
     if(type == Type.ARRAYSET){
-      return arrayset.length();
+      return arrayset().length();
+    }
+    else if(type == Type.XBITSET){
+      return xbitset().length();
+    }
+    else if(type == Type.FIXEDBITSET){
+      return fixedbitset().length();
     }
     else{
-      return xbitset.length();
+      return chunkedset().length();
     }
   }
 
   public int nextClearBit(int fromIndex){
     if(type == Type.ARRAYSET){
-      return arrayset.nextClearBit(fromIndex);
+      return arrayset().nextClearBit(fromIndex);
+    }
+    else if(type == Type.XBITSET){
+      return xbitset().nextClearBit(fromIndex);
+    }
+    else if(type == Type.FIXEDBITSET){
+      return fixedbitset().nextClearBit(fromIndex);
     }
     else{
-      return xbitset.nextClearBit(fromIndex);
+      return chunkedset().nextClearBit(fromIndex);
     }
   }
 
   public int nextSetBit(int fromIndex){
     if(type == Type.ARRAYSET){
-      return arrayset.nextSetBit(fromIndex);
+      return arrayset().nextSetBit(fromIndex);
+    }
+    else if(type == Type.XBITSET){
+      return xbitset().nextSetBit(fromIndex);
+    }
+    else if(type == Type.FIXEDBITSET){
+      return fixedbitset().nextSetBit(fromIndex);
     }
     else{
-      return xbitset.nextSetBit(fromIndex);
+      return chunkedset().nextSetBit(fromIndex);
     }
   }
 
   public void or(VertexSet set){
+    checkMutable();
     if(type == Type.ARRAYSET && set.type == Type.ARRAYSET){
-      arrayset.or(set.arrayset);
+      arrayset().or(set.arrayset());
+      ensureType();
+      return;
+    }
+    if(type == Type.CHUNKEDSET || set.type == Type.CHUNKEDSET){
+      toBitSet(Type.CHUNKEDSET);
+      chunkedset().or(set.chunkedSetView());
+      ensureType();
+      return;
+    }
+    if(type == Type.FIXEDBITSET || set.type == Type.FIXEDBITSET){
+      toBitSet(Type.FIXEDBITSET);
+      fixedbitset().or(set.fixedBitSetView());
       ensureType();
       return;
     }
     if(type == Type.XBITSET && set.type == Type.XBITSET){
-      xbitset.or(set.xbitset);
+      xbitset().or(set.xbitset());
       ensureType();
       return;
     }
+    // the argument is left untouched so that shared sets can be
+    // read concurrently
     if(type == Type.ARRAYSET){
-      toXBitSet();
+      toBitSet(Type.XBITSET);
+      xbitset().or(set.xbitset());
     }
     else{
-      set.toXBitSet();
+      xbitset().or(xBitSetOf(set.arrayset()));
     }
-    xbitset.or(set.xbitset);
-    set.ensureType();
     ensureType();
   }
 
@@ -435,41 +1138,71 @@ implements Comparable< VertexSet >, Cloneable{
   }
 
   public void set(int i){
+    checkMutable();
     if(type == Type.ARRAYSET){
-      arrayset.set(i);
+      arrayset().set(i);
+      ensureType();
+    }
+    // adding a member keeps a bitset above the threshold, so that
+    // the bitsets are not counted on every call
+    else if(type == Type.XBITSET){
+      xbitset().set(i);
+    }
+    else if(type == Type.FIXEDBITSET){
+      fixedbitset().set(i);
     }
     else{
-      xbitset.set(i);
+      chunkedset().set(i);
     }
-    ensureType();
   }
 
   public void set(int i, boolean value){
+    checkMutable();
     if(type == Type.ARRAYSET){
-      arrayset.set(i, value);
+      arrayset().set(i, value);
+    }
+    else if(type == Type.XBITSET){
+      xbitset().set(i, value);
+    }
+    else if(type == Type.FIXEDBITSET){
+      fixedbitset().set(i, value);
     }
     else{
-      xbitset.set(i, value);
+      chunkedset().set(i, value);
     }
     ensureType();
   }
 
   public void set(int fromIndex, int toIndex){
+    checkMutable();
     if(type == Type.ARRAYSET){
-      arrayset.set(fromIndex, toIndex);
+      arrayset().set(fromIndex, toIndex);
+    }
+    else if(type == Type.XBITSET){
+      xbitset().set(fromIndex, toIndex);
+    }
+    else if(type == Type.FIXEDBITSET){
+      fixedbitset().set(fromIndex, toIndex);
     }
     else{
-      xbitset.set(fromIndex, toIndex);
+      chunkedset().set(fromIndex, toIndex);
     }
     ensureType();
   }
 
   public void set(int fromIndex, int toIndex, boolean value){
+    checkMutable();
     if(type == Type.ARRAYSET){
-      arrayset.set(fromIndex, toIndex, value);
+      arrayset().set(fromIndex, toIndex, value);
+    }
+    else if(type == Type.XBITSET){
+      xbitset().set(fromIndex, toIndex, value);
+    }
+    else if(type == Type.FIXEDBITSET){
+      fixedbitset().set(fromIndex, toIndex, value);
     }
     else{
-      xbitset.set(fromIndex, toIndex, value);
+      chunkedset().set(fromIndex, toIndex, value);
     }
     ensureType();
   }
@@ -480,68 +1213,104 @@ implements Comparable< VertexSet >, Cloneable{
 
   public VertexSet subtract(VertexSet set){
     if(type == Type.ARRAYSET && set.type == Type.ARRAYSET){
-      return new VertexSet(arrayset.subtract(set.arrayset));
+      return new VertexSet(arrayset().subtract(set.arrayset()));
+    }
+    if(type == Type.CHUNKEDSET || set.type == Type.CHUNKEDSET){
+      return new VertexSet(n, chunkedSetView().subtract(set.chunkedSetView()));
+    }
+    if(type == Type.FIXEDBITSET || set.type == Type.FIXEDBITSET){
+      return new VertexSet(n, fixedBitSetView().subtract(set.fixedBitSetView()));
     }
     if(type == Type.XBITSET && set.type == Type.XBITSET){
-      return new VertexSet(xbitset.subtract(set.xbitset));
+      return new VertexSet(xbitset().subtract(set.xbitset()));
     }
     if(type == Type.ARRAYSET){
-      return new VertexSet(xBitSetOf(arrayset).subtract(set.xbitset));
+      return new VertexSet(xBitSetOf(arrayset()).subtract(set.xbitset()));
     }
     else{
-      return new VertexSet(xbitset.subtract(xBitSetOf(set.arrayset)));
+      return new VertexSet(xbitset().subtract(xBitSetOf(set.arrayset())));
     }
   }
 
   public int[] toArray(){
     if(type == Type.ARRAYSET){
-      return arrayset.toArray();
+      return arrayset().toArray();
+    }
+    else if(type == Type.XBITSET){
+      return xbitset().toArray();
+    }
+    else if(type == Type.FIXEDBITSET){
+      return fixedbitset().toArray();
     }
     else{
-      return xbitset.toArray();
+      return chunkedset().toArray();
     }
   }
 
   public byte[] toByteArray(){
     if(type == Type.ARRAYSET){
-      return arrayset.toByteArray();
+      return arrayset().toByteArray();
+    }
+    else if(type == Type.XBITSET){
+      return xbitset().toByteArray();
+    }
+    else if(type == Type.FIXEDBITSET){
+      return fixedbitset().toByteArray();
     }
     else{
-      return xbitset.toByteArray();
+      return chunkedset().toByteArray();
     }
   }
 
   public long[] toLongArray(){
     if(type == Type.ARRAYSET){
-      return arrayset.toLongArray();
+      return arrayset().toLongArray();
+    }
+    else if(type == Type.XBITSET){
+      return xbitset().toLongArray();
+    }
+    else if(type == Type.FIXEDBITSET){
+      return fixedbitset().toLongArray();
     }
     else{
-      return xbitset.toLongArray();
+      return chunkedset().toLongArray();
     }
   }
 
   @Override
     public String toString(){
       if(type == Type.ARRAYSET){
-        return arrayset.toString();
+        return arrayset().toString();
+      }
+      else if(type == Type.XBITSET){
+        return xbitset().toString();
+      }
+      else if(type == Type.FIXEDBITSET){
+        return fixedbitset().toString();
       }
       else{
-        return xbitset.toString();
+        return chunkedset().toString();
       }
     }
 
   public VertexSet unionWith(VertexSet set){
     if(type == Type.ARRAYSET && set.type == Type.ARRAYSET){
-      return new VertexSet(arrayset.unionWith(set.arrayset));
+      return new VertexSet(arrayset().unionWith(set.arrayset()));
+    }
+    if(type == Type.CHUNKEDSET || set.type == Type.CHUNKEDSET){
+      return new VertexSet(n, chunkedSetView().unionWith(set.chunkedSetView()));
+    }
+    if(type == Type.FIXEDBITSET || set.type == Type.FIXEDBITSET){
+      return new VertexSet(n, fixedBitSetView().unionWith(set.fixedBitSetView()));
     }
     if(type == Type.XBITSET && set.type == Type.XBITSET){
-      return new VertexSet(xbitset.unionWith(set.xbitset));
+      return new VertexSet(xbitset().unionWith(set.xbitset()));
     }
     if(type == Type.ARRAYSET){
-      return new VertexSet(xBitSetOf(arrayset).unionWith(set.xbitset));
+      return new VertexSet(xBitSetOf(arrayset()).unionWith(set.xbitset()));
     }
     else{
-      return new VertexSet(xbitset.unionWith(xBitSetOf(set.arrayset)));
+      return new VertexSet(xbitset().unionWith(xBitSetOf(set.arrayset())));
     }
   }
 
@@ -554,53 +1323,79 @@ implements Comparable< VertexSet >, Cloneable{
   }
 
   public void xor(VertexSet set){
+    checkMutable();
     if(type == Type.ARRAYSET && set.type == Type.ARRAYSET){
-      arrayset.xor(set.arrayset);
+      arrayset().xor(set.arrayset());
+      ensureType();
+      return;
+    }
+    if(type == Type.CHUNKEDSET || set.type == Type.CHUNKEDSET){
+      toBitSet(Type.CHUNKEDSET);
+      chunkedset().xor(set.chunkedSetView());
+      ensureType();
+      return;
+    }
+    if(type == Type.FIXEDBITSET || set.type == Type.FIXEDBITSET){
+      toBitSet(Type.FIXEDBITSET);
+      fixedbitset().xor(set.fixedBitSetView());
       ensureType();
       return;
     }
     if(type == Type.XBITSET && set.type == Type.XBITSET){
-      xbitset.xor(set.xbitset);
+      xbitset().xor(set.xbitset());
       ensureType();
       return;
     }
+    // the argument is left untouched so that shared sets can be
+    // read concurrently
     if(type == Type.ARRAYSET){
-      toXBitSet();
+      toBitSet(Type.XBITSET);
+      xbitset().xor(set.xbitset());
     }
     else{
-      set.toXBitSet();
+      xbitset().xor(xBitSetOf(set.arrayset()));
     }
-    xbitset.xor(set.xbitset);
-    set.ensureType();
     ensureType();
   }
 
   @Override
     public int compareTo(VertexSet vs){
       if(type == Type.ARRAYSET && vs.type == Type.ARRAYSET){
-        return arrayset.compareTo(vs.arrayset);
+        return arrayset().compareTo(vs.arrayset());
+      }
+      if(type == Type.CHUNKEDSET || vs.type == Type.CHUNKEDSET){
+        return chunkedSetView().compareTo(vs.chunkedSetView());
+      }
+      if(type == Type.FIXEDBITSET || vs.type == Type.FIXEDBITSET){
+        return fixedBitSetView().compareTo(vs.fixedBitSetView());
       }
       if(type == Type.XBITSET && vs.type == Type.XBITSET){
-        return xbitset.compareTo(vs.xbitset);
+        return xbitset().compareTo(vs.xbitset());
       }
       if(type == Type.ARRAYSET){
-        return xBitSetOf(arrayset).compareTo(vs.xbitset);
+        return xBitSetOf(arrayset()).compareTo(vs.xbitset());
       }
       else{
-        return xbitset.compareTo(xBitSetOf(vs.arrayset));
+        return xbitset().compareTo(xBitSetOf(vs.arrayset()));
       }
     }
 
   public void checkTypeValidity(){
     if(type == Type.ARRAYSET){
-      assert(arrayset != null);
-      assert(xbitset == null);
-      assert(arrayset.cardinality() <= TH1);
+      assert(rep instanceof ArraySet);
+      assert(arrayset().cardinality() <= TH1);
+    }
+    else if(type == Type.XBITSET){
+      assert(rep instanceof XBitSet);
+      assert(xbitset().cardinality() > TH1);
+    }
+    else if(type == Type.FIXEDBITSET){
+      assert(rep instanceof FixedBitSet);
+      assert(fixedbitset().cardinality() > TH1);
     }
     else{
-      assert(xbitset != null);
-      assert(arrayset == null);
-      assert(xbitset.cardinality() > TH1);
+      assert(rep instanceof ChunkedSet);
+      assert(chunkedset().cardinality() > TH1);
     }
   }
 }
@@ -0,0 +1,126 @@
+/*
+ * Copyright (c) 2017, Hiromu Ohtsuka
+*/
+
+package tw.heuristic;
+
+import java.util.ArrayList;
+
+/**
+ * Open-addressing hash map keyed by {@code VertexSet}s, for the block
+ * caches of {@code MTDecomposerHeuristic} and the failure table of
+ * {@code PathDecomposer}.
+ * The 64-bit fingerprint of each key (see
+ * {@link VertexSet#fingerprint()}) is kept in a flat array next to
+ * the key, so that a probe compares fingerprints first and compares
+ * the sets themselves only when the fingerprints match; no entry
+ * object is created.
+ * The keys are interned as given and are frozen (see
+ * {@link VertexSet#freeze()}) when they are put, so that they cannot
+ * be modified afterwards and their fingerprints are computed only
+ * once; a lookup with a frozen set, such as a key taken from a block,
+ * does not compute the fingerprint either.
+ * Entries are never removed.
+ */
+public class VertexSetMap< V >{
+  private static final int INITIAL_CAPACITY = 64;
+
+  private long[] fingerprints;
+  private VertexSet[] keys;
+  private Object[] values;
+  private int size;
+
+  public VertexSetMap(){
+    fingerprints = new long[INITIAL_CAPACITY];
+    keys = new VertexSet[INITIAL_CAPACITY];
+    values = new Object[INITIAL_CAPACITY];
+  }
+
+  /**
+   * returns the slot of the key, or the empty slot where
+   * it is to be put
+   */
+  private int slotOf(VertexSet key, long fp){
+    int mask = keys.length - 1;
+    int i = (int)fp & mask;
+    while(keys[i] != null){
+      if(fingerprints[i] == fp && keys[i].equals(key)){
+        return i;
+      }
+      i = (i + 1) & mask;
+    }
+    return i;
+  }
+
+  @SuppressWarnings("unchecked")
+  public V get(VertexSet key){
+    int i = slotOf(key, key.fingerprint());
+    return keys[i] == null ? null : (V)values[i];
+  }
+
+  public boolean containsKey(VertexSet key){
+    return keys[slotOf(key, key.fingerprint())] != null;
+  }
+
+  /**
+   * associates the value with the key and returns the value
+   * previously associated with it, or null if there was none
+   */
+  @SuppressWarnings("unchecked")
+  public V put(VertexSet key, V value){
+    long fp = key.freeze().fingerprint();
+    int i = slotOf(key, fp);
+    if(keys[i] != null){
+      V old = (V)values[i];
+      values[i] = value;
+      return old;
+    }
+    fingerprints[i] = fp;
+    keys[i] = key;
+    values[i] = value;
+    if(++size * 2 > keys.length){
+      grow();
+    }
+    return null;
+  }
+
+  private void grow(){
+    long[] oldFingerprints = fingerprints;
+    VertexSet[] oldKeys = keys;
+    Object[] oldValues = values;
+    int capacity = 2 * oldKeys.length;
+    fingerprints = new long[capacity];
+    keys = new VertexSet[capacity];
+    values = new Object[capacity];
+    int mask = capacity - 1;
+    for(int j = 0; j < oldKeys.length; j++){
+      if(oldKeys[j] != null){
+        int i = (int)oldFingerprints[j] & mask;
+        while(keys[i] != null){
+          i = (i + 1) & mask;
+        }
+        fingerprints[i] = oldFingerprints[j];
+        keys[i] = oldKeys[j];
+        values[i] = oldValues[j];
+      }
+    }
+  }
+
+  public int size(){
+    return size;
+  }
+
+  /**
+   * returns the values in the map in a new list
+   */
+  @SuppressWarnings("unchecked")
+  public ArrayList< V > values(){
+    ArrayList< V > result = new ArrayList< >(size);
+    for(int i = 0; i < keys.length; i++){
+      if(keys[i] != null){
+        result.add((V)values[i]);
+      }
+    }
+    return result;
+  }
+}
@@ -20,6 +20,24 @@ import java.util.Comparator;
 public class XBitSet extends BitSet 
 implements Comparable<XBitSet>{
 
+	/**
+	 * the number of members of the smaller side that {@code isSubset}
+	 * and {@code isSuperset} test one by one before falling back to
+	 * the word-wise test
+	 */
+	private static final int DIRECT_TESTS = 16;
+
+	/**
+	 * per-thread scratch vector for the word-wise subset test
+	 */
+	private static final ThreadLocal<BitSet> scratch =
+			new ThreadLocal<BitSet>() {
+		@Override
+		protected BitSet initialValue() {
+			return new BitSet();
+		}
+	};
+
 	/**
 	 * Creates an empty {@code XBitSet}.
 	 */
@@ -77,8 +95,33 @@ implements Comparable<XBitSet>{
 	 *         of the argument {@code XBitSet}
 	 */
 	public boolean isSubset(XBitSet set) {
-		BitSet tmp = (BitSet) this.clone();
-		tmp.andNot(set);
+		return isSubset(this, set);
+	}
+
+	/**
+	 * Tests whether {@code a} is a subset of {@code b} without
+	 * allocating: a longer {@code a} is rejected at once, a small
+	 * {@code a} is tested member by member, and otherwise the
+	 * difference is taken in a per-thread scratch vector.
+	 */
+	private static boolean isSubset(BitSet a, BitSet b) {
+		if (a.length() > b.length()) {
+			return false;
+		}
+		int v = a.nextSetBit(0);
+		for (int i = 0; i < DIRECT_TESTS && v >= 0; i++) {
+			if (!b.get(v)) {
+				return false;
+			}
+			v = a.nextSetBit(v + 1);
+		}
+		if (v < 0) {
+			return true;
+		}
+		BitSet tmp = scratch.get();
+		tmp.clear();
+		tmp.or(a);
+		tmp.andNot(b);
 		return tmp.isEmpty();
 	}
 
@@ -91,9 +134,7 @@ implements Comparable<XBitSet>{
 	 *  disjoint from the argument {@code XBitSet}
 	 */
 	public boolean isDisjoint(XBitSet set) {
-		BitSet tmp = (BitSet) this.clone();
-		tmp.and(set);
-		return tmp.isEmpty();
+		return !super.intersects(set);
 	}
 
 	/**
@@ -118,9 +159,7 @@ implements Comparable<XBitSet>{
 	 *  of the argument {@code XBitSet}
 	 */
 	public boolean isSuperset(XBitSet set) {
-		BitSet tmp = (BitSet) set.clone();
-		tmp.andNot(this);
-		return tmp.isEmpty();
+		return isSubset(set, this);
 	}
 
 	/**
@@ -162,6 +201,156 @@ implements Comparable<XBitSet>{
 		return result;
 	}
 
+	/**
+	 * Returns the cardinality of the intersection of this target
+	 * {@code XBitSet} and the argument {@code XBitSet} without creating
+	 * the intersection.
+	 * The members of the target are enumerated, so this method is
+	 * best invoked on the smaller of the two sets.
+	 * The {@code xxxCardinality} methods below serve for the pruning
+	 * tests that reject most of the candidate sets.
+	 *
+	 * @param  set an {@code XBitSet}
+	 * @return the number of common members
+	 */
+	public int intersectionCardinality(XBitSet set) {
+		if (set == this) {
+			return cardinality();
+		}
+		int count = 0;
+		for (int i = nextSetBit(0); i >= 0; i = nextSetBit(i + 1)) {
+			if (set.get(i)) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Returns the number of the members of this target {@code XBitSet}
+	 * that are not in the argument {@code XBitSet}, without creating
+	 * the difference.
+	 *
+	 * @param  set an {@code XBitSet}
+	 * @return the cardinality of the difference
+	 */
+	public int differenceCardinality(XBitSet set) {
+		return cardinality() - intersectionCardinality(set);
+	}
+
+	/**
+	 * Returns the cardinality of the union of this target
+	 * {@code XBitSet} and the argument {@code XBitSet} without creating
+	 * the union.
+	 *
+	 * @param  set an {@code XBitSet}
+	 * @return the cardinality of the union
+	 */
+	public int unionCardinality(XBitSet set) {
+		return set.cardinality() + differenceCardinality(set);
+	}
+
+	/**
+	 * Returns {@code true} if the union of this target {@code XBitSet}
+	 * and the argument {@code XBitSet} has more than {@code k} members.
+	 * The enumeration of the target stops as soon as the bound
+	 * is exceeded.
+	 *
+	 * @param  set an {@code XBitSet}
+	 * @param  k the bound on the cardinality
+	 * @return {@code true} if the union has more than {@code k} members
+	 */
+	public boolean unionCardinalityExceeds(XBitSet set, int k) {
+		int count = set.cardinality();
+		if (count > k) {
+			return true;
+		}
+		for (int i = nextSetBit(0); i >= 0; i = nextSetBit(i + 1)) {
+			if (!set.get(i) && ++count > k) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Makes the destination {@code XBitSet} a copy of the source
+	 * {@code XBitSet}, reusing the words of the destination.
+	 * The {@code xxxInto} methods below are the allocation-free
+	 * counterparts of {@code clone}, {@code unionWith},
+	 * {@code intersectWith} and {@code subtract}; the destination
+	 * may be the same object as any of the operands.
+	 * @param  dest the {@code XBitSet} to hold the result
+	 * @param  a an {@code XBitSet}
+	 * @return {@code dest}
+	 */
+	public static XBitSet copyInto(XBitSet dest, XBitSet a) {
+		if (dest != a) {
+			dest.clear();
+			dest.or(a);
+		}
+		return dest;
+	}
+
+	/**
+	 * Stores the union of the two {@code XBitSet}s into
+	 * the destination {@code XBitSet}.
+	 * @param  dest the {@code XBitSet} to hold the result
+	 * @param  a an {@code XBitSet}
+	 * @param  b an {@code XBitSet}
+	 * @return {@code dest}
+	 */
+	public static XBitSet unionInto(XBitSet dest, XBitSet a, XBitSet b) {
+		if (dest == b) {
+			dest.or(a);
+		}
+		else {
+			copyInto(dest, a);
+			dest.or(b);
+		}
+		return dest;
+	}
+
+	/**
+	 * Stores the intersection of the two {@code XBitSet}s into
+	 * the destination {@code XBitSet}.
+	 * @param  dest the {@code XBitSet} to hold the result
+	 * @param  a an {@code XBitSet}
+	 * @param  b an {@code XBitSet}
+	 * @return {@code dest}
+	 */
+	public static XBitSet intersectInto(XBitSet dest, XBitSet a, XBitSet b) {
+		if (dest == b) {
+			dest.and(a);
+		}
+		else {
+			copyInto(dest, a);
+			dest.and(b);
+		}
+		return dest;
+	}
+
+	/**
+	 * Stores the members of {@code a} that are not in {@code b} into
+	 * the destination {@code XBitSet}.
+	 * @param  dest the {@code XBitSet} to hold the result
+	 * @param  a an {@code XBitSet}
+	 * @param  b an {@code XBitSet}
+	 * @return {@code dest}
+	 */
+	public static XBitSet subtractInto(XBitSet dest, XBitSet a, XBitSet b) {
+		if (dest == b) {
+			// (a ^ b) & a = a & ~b
+			dest.xor(a);
+			dest.and(a);
+		}
+		else {
+			copyInto(dest, a);
+			dest.andNot(b);
+		}
+		return dest;
+	}
+
 	/**
 	 * Returns {@code true} if the target {@code XBitSet} has a member 
 	 * that is smaller than the smallest member of the argument {@code XBitSet}.